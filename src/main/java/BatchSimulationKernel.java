@@ -0,0 +1,409 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.stream.IntStream;
+
+/**
+ * The BatchSimulationKernel runs the simulation of SimulationKernel for several order up to levels (policies)
+ * at once. The demand of each week is drawn once and used by every policy, and the inventory of all
+ * policies is updated together. The arrays have the policy as the last index: the order up to level of
+ * week w, product k and policy p is at (w * nProducts + k) * nPolicies + p, and its inventory at
+ * k * nPolicies + p. So the inner loops run over the policies of one product with the same demand, price and
+ * relevance, on consecutive elements, which the JIT compiler can turn into vector instructions. Evaluating
+ * many policies (for example a sweep over service levels) then costs little more than evaluating one, since
+ * drawing the demand takes most of the time of a replication.
+ *
+ * The results of each policy are exactly the same as those of a SimulationKernel with the same sampler.
+ * Like a SimulationKernel, a kernel can only be used by one thread at a time; use copy() for another thread.
+ *
+ * With the chunkPartitions setting, the chunks of one replication are split over a number of parts that run
+ * in parallel. The ordering and selling of different chunks are independent, so each part runs all weeks for
+ * its own chunks and keeps its own sums of each week. The sums of the parts are added at the end of each
+ * week, in the order of the parts. This is meant for a few long simulations of a very large catalog, where
+ * the replications alone can not keep all processors busy. Each part draws its demand with its own sampler,
+ * split from the sampler of the replication in the order of the parts, so the results only depend on the
+ * sampler and the number of parts, not on the number of threads. With 1 part (the default) the results are
+ * those of a SimulationKernel.
+ */
+public class BatchSimulationKernel {
+	private int firstWeek;
+	private int nWeeks;
+	private int nProducts;
+	private int nPolicies;
+	private DemandModel demandModel;
+	private boolean printSimulationResults;
+	private ProductStore store;
+
+	// Data of the products, shared by all copies
+	private Product[] products;
+	// The products of chunk i are firstOfChunk[i] till firstOfChunk[i + 1]
+	private int[] firstOfChunk;
+	private double[] averageAverageM3;
+	private double[] relevanceScore;
+	// The price of week w (counted from the first week) of product k is at w * nProducts + k
+	private double[] price;
+	// The order up to level of week w, product k and policy p is at (w * nProducts + k) * nPolicies + p
+	private int[] orderUpToLevel;
+	// The number of parts of the chunks that run in parallel within one replication
+	private int nPartitions;
+
+	// The state of a replication
+	private int[] storage;
+	private int[] demand;
+	// The parts of the chunks, with the sums of each week of their chunks
+	private ChunkPartition[] partitions;
+	// The totals of each policy
+	private int[] totalOrdered;
+	private int[] totalThrewAway;
+	private double[] revenue;
+	private int[] productsSold;
+
+	/**
+	 * Constructor for the BatchSimulationKernel
+	 * @param T Array with start and end week of the period
+	 * @param store All the data on the products
+	 * @param policies The ordering up to levels of each policy
+	 * @param parameters The settings of the simulation (usePlusXInSales, usePoisson and printSimulationResults)
+	 */
+	public BatchSimulationKernel(int[] T, ProductStore store, ArrayList<int[][][]> policies, HashMap<String, Object> parameters) {
+		this(T, store, policies, SimulationConfig.fromParameters(parameters));
+	}
+
+	/**
+	 * Constructor for the BatchSimulationKernel
+	 * @param T Array with start and end week of the period
+	 * @param store All the data on the products
+	 * @param policies The ordering up to levels of each policy
+	 * @param config The settings of the simulation (the DemandModel and printSimulationResults)
+	 */
+	public BatchSimulationKernel(int[] T, ProductStore store, ArrayList<int[][][]> policies, SimulationConfig config) {
+		this.firstWeek = T[0];
+		this.nWeeks = T[1] - T[0];
+		this.nPolicies = policies.size();
+		this.store = store;
+		this.demandModel = config.getDemandModel();
+		this.printSimulationResults = config.isPrintSimulationResults();
+		this.nPartitions = config.getChunkPartitions();
+
+		int n = store.getNChunks();
+		int size = store.getNSizes();
+		firstOfChunk = new int[n + 1];
+		nProducts = 0;
+		for (int i = 0; i < n; i++) {
+			firstOfChunk[i] = nProducts;
+			for (int s = 0; s < size; s++) {
+				if (store.isPresent(i, s)) {
+					nProducts++;
+				}
+			}
+		}
+		firstOfChunk[n] = nProducts;
+
+		products = new Product[nProducts];
+		averageAverageM3 = new double[nProducts];
+		relevanceScore = new double[nProducts];
+		price = new double[nWeeks * nProducts];
+		orderUpToLevel = new int[nWeeks * nProducts * nPolicies];
+		int k = 0;
+		for (int i = 0; i < n; i++) {
+			for (int s = 0; s < size; s++) {
+				if (!store.isPresent(i, s)) {
+					continue;
+				}
+				products[k] = store.product(i, s);
+				averageAverageM3[k] = store.getAverageAverageM3(i, s);
+				relevanceScore[k] = store.getRelevanceScore(i, s);
+				for (int w = 0; w < nWeeks; w++) {
+					price[w * nProducts + k] = store.getAveragePrice(i, s, firstWeek + w);
+					for (int p = 0; p < nPolicies; p++) {
+						orderUpToLevel[(w * nProducts + k) * nPolicies + p] = policies.get(p)[firstWeek + w][i][s];
+					}
+				}
+				k++;
+			}
+		}
+		allocateState();
+	}
+
+	private BatchSimulationKernel() {
+	}
+
+
+	/**
+	 * This method creates a kernel for another thread. It shares the data of the products and the policies
+	 * with this kernel, but has its own state.
+	 * @return
+	 */
+	public BatchSimulationKernel copy() {
+		BatchSimulationKernel copy = new BatchSimulationKernel();
+		copy.firstWeek = firstWeek;
+		copy.nWeeks = nWeeks;
+		copy.nProducts = nProducts;
+		copy.nPolicies = nPolicies;
+		copy.demandModel = demandModel;
+		copy.printSimulationResults = printSimulationResults;
+		copy.nPartitions = nPartitions;
+		copy.store = store;
+		copy.products = products;
+		copy.firstOfChunk = firstOfChunk;
+		copy.averageAverageM3 = averageAverageM3;
+		copy.relevanceScore = relevanceScore;
+		copy.price = price;
+		copy.orderUpToLevel = orderUpToLevel;
+		copy.allocateState();
+		return copy;
+	}
+
+	private void allocateState() {
+		storage = new int[nProducts * nPolicies];
+		demand = new int[nProducts];
+		totalOrdered = new int[nPolicies];
+		totalThrewAway = new int[nPolicies];
+		revenue = new double[nPolicies];
+		productsSold = new int[nPolicies];
+
+		// Parts with about the same number of products
+		int n = firstOfChunk.length - 1;
+		int parts = Math.max(1, Math.min(nPartitions, n));
+		partitions = new ChunkPartition[parts];
+		int chunk = 0;
+		for (int j = 0; j < parts; j++) {
+			int firstChunk = chunk;
+			long target = (long) (j + 1) * nProducts / parts;
+			while (chunk < n && (j == parts - 1 || firstOfChunk[chunk + 1] <= target)) {
+				chunk++;
+			}
+			partitions[j] = new ChunkPartition(firstOfChunk[firstChunk], firstOfChunk[chunk], nWeeks, nPolicies);
+		}
+	}
+
+	/**
+	 * @return the length of the results of a replication of one policy, 4 + 4 * the number of weeks
+	 */
+	public int getResultSize() {
+		return 4 + 4 * nWeeks;
+	}
+
+	public int getNPolicies() {
+		return nPolicies;
+	}
+
+	/**
+	 * This method calculates a hash of the prices, order up to levels and settings of the kernel, so a
+	 * checkpoint is only used for the same policies
+	 * @return
+	 */
+	public long getPolicyHash() {
+		long hash = 31L * Arrays.hashCode(orderUpToLevel) + Arrays.hashCode(price);
+		hash = 31 * hash + Arrays.hashCode(averageAverageM3);
+		hash = 31 * hash + Arrays.hashCode(relevanceScore);
+		hash = 31 * hash + demandModel.ordinal();
+		return 31 * hash + firstWeek * 1000 + nWeeks;
+	}
+
+	/**
+	 * @return the number of products that are present
+	 */
+	public int getNProducts() {
+		return nProducts;
+	}
+
+
+	/**
+	 * Runs 1 simulation of every policy, with the demand of each week drawn once by the DemandSampler
+	 * @param sampler
+	 * @param results the arrays to write the results of each policy to, in the layout of SimulationKernel
+	 */
+	public void run(DemandSampler sampler, double[][] results) {
+		run(sampler, null, 0, results);
+	}
+
+	/**
+	 * Runs 1 simulation of every policy, with the demand of a scenario of a ScenarioStore
+	 * @param scenarios the scenarios, of the same period and products as this kernel
+	 * @param scenario the index of the scenario
+	 * @param results the arrays to write the results of each policy to, in the layout of SimulationKernel
+	 */
+	public void run(ScenarioStore scenarios, int scenario, double[][] results) {
+		run(null, scenarios, scenario, results);
+	}
+
+	private void run(DemandSampler sampler, ScenarioStore scenarios, int scenario, double[][] results) {
+		int K = nPolicies;
+		if (partitions.length == 1) {
+			runPartition(partitions[0], sampler, scenarios, scenario);
+		} else {
+			DemandSampler[] samplers = new DemandSampler[partitions.length];
+			for (int j = 0; j < partitions.length; j++) {
+				samplers[j] = sampler == null ? null : sampler.split();
+			}
+			IntStream.range(0, partitions.length).parallel().forEach(j -> runPartition(partitions[j], samplers[j], scenarios, scenario));
+		}
+
+		// Adding the sums of the parts, in the order of the parts
+		ChunkPartition firstPart = partitions[0];
+		int totalDemand = 0;
+		for (int p = 0; p < K; p++) {
+			totalOrdered[p] = firstPart.totalOrdered[p];
+			totalThrewAway[p] = firstPart.totalThrewAway[p];
+			revenue[p] = firstPart.revenue[p];
+			productsSold[p] = 0;
+			for (int j = 1; j < partitions.length; j++) {
+				totalOrdered[p] += partitions[j].totalOrdered[p];
+				totalThrewAway[p] += partitions[j].totalThrewAway[p];
+				revenue[p] += partitions[j].revenue[p];
+			}
+		}
+		for (int w = 0; w < nWeeks; w++) {
+			int demandWeek = 0;
+			for (ChunkPartition partition : partitions) {
+				demandWeek += partition.demandWeek[w];
+			}
+			totalDemand += demandWeek;
+			for (int p = 0; p < K; p++) {
+				int sums = w * K + p;
+				int salesWeek = firstPart.salesWeek[sums];
+				double revenueWeek = firstPart.revenueWeek[sums];
+				double capacityWeek = firstPart.capacityWeek[sums];
+				double relevanceScoreWeek = firstPart.relevanceScoreWeek[sums];
+				for (int j = 1; j < partitions.length; j++) {
+					salesWeek += partitions[j].salesWeek[sums];
+					revenueWeek += partitions[j].revenueWeek[sums];
+					capacityWeek += partitions[j].capacityWeek[sums];
+					relevanceScoreWeek += partitions[j].relevanceScoreWeek[sums];
+				}
+				productsSold[p] += salesWeek;
+				results[p][4 + w] = ((double) salesWeek) / demandWeek;
+				results[p][4 + nWeeks + w] = revenueWeek;
+				results[p][4 + 2 * nWeeks + w] = capacityWeek;
+				results[p][4 + 3 * nWeeks + w] = relevanceScoreWeek;
+			}
+		}
+
+		for (int p = 0; p < K; p++) {
+			if (printSimulationResults) {
+				System.out.println("Policy " + p + ":");
+				System.out.println("The revenue for this period is: " + revenue[p]);
+				System.out.println("There are " + totalOrdered[p] + " products ordered and " + totalThrewAway[p] + " products thown away");
+				System.out.println("The amount of products sold is: " + productsSold[p]);
+				System.out.println("The amount of products demanded is: " + totalDemand);
+				System.out.println("The service level is: " + ((double) productsSold[p] / totalDemand));
+				System.out.println();
+			}
+			results[p][0] = revenue[p];
+			results[p][1] = productsSold[p];
+			results[p][2] = totalDemand;
+			results[p][3] = (double) productsSold[p] / totalDemand;
+		}
+	}
+
+	/**
+	 * Runs all weeks of the products of one part for every policy, and keeps the sums of each week in the part
+	 * @param partition
+	 * @param sampler the sampler of this part, or null if the demand is read from the scenarios
+	 * @param scenarios
+	 * @param scenario
+	 */
+	private void runPartition(ChunkPartition partition, DemandSampler sampler, ScenarioStore scenarios, int scenario) {
+		int K = nPolicies;
+		int first = partition.first;
+		int end = partition.end;
+		for (int p = 0; p < K; p++) {
+			partition.totalOrdered[p] = 0;
+			partition.totalThrewAway[p] = 0;
+			partition.revenue[p] = 0;
+		}
+		for (int j = first * K; j < end * K; j++) {
+			storage[j] = 0;
+		}
+
+		for (int w = 0; w < nWeeks; w++) {
+			int t = firstWeek + w;
+			int demandWeek = 0;
+			// The sums of policy p of this week are at sums + p
+			int sums = w * K;
+			for (int p = 0; p < K; p++) {
+				partition.salesWeek[sums + p] = 0;
+				partition.revenueWeek[sums + p] = 0;
+				partition.capacityWeek[sums + p] = 0;
+				partition.relevanceScoreWeek[sums + p] = 0;
+			}
+
+			/** Ordering the new products, the inventory of every policy is brought to its order up to level */
+			for (int k = first; k < end; k++) {
+				int levels = (w * nProducts + k) * K;
+				double m3 = averageAverageM3[k];
+				double relevance = relevanceScore[k];
+				if (printSimulationResults) {
+					for (int p = 0; p < K; p++) {
+						partition.totalOrdered[p] += Math.max(orderUpToLevel[levels + p] - storage[k * K + p], 0);
+						partition.totalThrewAway[p] += Math.max(storage[k * K + p] - orderUpToLevel[levels + p], 0);
+					}
+				}
+				for (int p = 0; p < K; p++) {
+					int z = orderUpToLevel[levels + p];
+					storage[k * K + p] = z;
+					partition.capacityWeek[sums + p] += z * m3;
+					partition.relevanceScoreWeek[sums + p] += z * relevance;
+				}
+			}
+
+			/** Drawing the demand once for all policies, in the order of the products */
+			if (scenarios != null) {
+				scenarios.readWeek(scenario, w, demand, first, end);
+			} else {
+				for (int k = first; k < end; k++) {
+					demand[k] = demandModel.draw(products[k], t, sampler);
+				}
+			}
+
+			/** Selling products */
+			for (int k = first; k < end; k++) {
+				double priceWeek = price[w * nProducts + k];
+				int demandProduct = demand[k];
+				demandWeek += demandProduct;
+				for (int p = 0; p < K; p++) {
+					int stored = storage[k * K + p];
+					// The products that can be sold
+					int sold = Math.min(demandProduct, stored);
+					partition.revenue[p] += priceWeek * sold;
+					partition.revenueWeek[sums + p] += priceWeek * sold;
+					partition.salesWeek[sums + p] += sold;
+					storage[k * K + p] = stored - sold;
+				}
+			}
+			partition.demandWeek[w] = demandWeek;
+		}
+	}
+
+	/**
+	 * A ChunkPartition is a part of the chunks of a replication, with the sums of each week of its products.
+	 * The sums of week w and policy p are at w * nPolicies + p.
+	 */
+	private static class ChunkPartition {
+		// The products first till end
+		private final int first;
+		private final int end;
+		private final int[] demandWeek;
+		private final int[] salesWeek;
+		private final double[] revenueWeek;
+		private final double[] capacityWeek;
+		private final double[] relevanceScoreWeek;
+		private final double[] revenue;
+		private final int[] totalOrdered;
+		private final int[] totalThrewAway;
+
+		private ChunkPartition(int first, int end, int nWeeks, int nPolicies) {
+			this.first = first;
+			this.end = end;
+			demandWeek = new int[nWeeks];
+			salesWeek = new int[nWeeks * nPolicies];
+			revenueWeek = new double[nWeeks * nPolicies];
+			capacityWeek = new double[nWeeks * nPolicies];
+			relevanceScoreWeek = new double[nWeeks * nPolicies];
+			revenue = new double[nPolicies];
+			totalOrdered = new int[nPolicies];
+			totalThrewAway = new int[nPolicies];
+		}
+	}
+}
@@ -0,0 +1,164 @@
+import org.apache.poi.ss.usermodel.Cell;
+import org.apache.poi.ss.usermodel.CellType;
+import org.apache.poi.ss.usermodel.Row;
+
+/**
+ * The CellDecoder reads the values of cells with the type that the caller needs (int, double or String).
+ * Numeric cells are read as a number directly, and numbers that are stored as text are parsed once.
+ * Converting every cell to a String first (like String.valueOf(cell.getNumericCellValue())) creates a lot
+ * of short lived objects, and gives "2018.0" for a numeric year, which Integer.parseInt can not read.
+ *
+ * The decoder remembers the type of each column, since all cells in a column of a sheet normally have the
+ * same type. Use one decoder per sheet, and do not share it between threads.
+ */
+public class CellDecoder {
+	// The type that was found last in each column
+	private CellType[] columnTypes;
+
+	/**
+	 * Constructor for the CellDecoder
+	 * @param nColumns the number of columns of the sheet
+	 */
+	public CellDecoder(int nColumns) {
+		this.columnTypes = new CellType[nColumns];
+	}
+
+
+	/**
+	 * This method checks whether all the given cells of a row contain a value
+	 * @param row
+	 * @param columns
+	 * @return false if one of the cells is missing or blank
+	 */
+	public boolean hasValues(Row row, int... columns) {
+		for(int c : columns) {
+			Cell cell = row.getCell(c);
+			if(cell == null || cell.getCellType() == CellType.BLANK) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * This method reads a cell as a double
+	 * @param row
+	 * @param c the column index
+	 * @return
+	 * @throws IllegalStateException if the cell is empty or does not contain a number
+	 */
+	public double getDouble(Row row, int c) throws IllegalStateException {
+		Cell cell = requireCell(row, c);
+		if(columnTypes[c] == CellType.NUMERIC) {
+			try {
+				return cell.getNumericCellValue();
+			} catch (IllegalStateException e) {
+				// The type of this cell is different from the previous cells in this column
+			}
+		} else if(columnTypes[c] == CellType.STRING && cell.getCellType() == CellType.STRING) {
+			return Double.parseDouble(cell.getStringCellValue());
+		}
+		columnTypes[c] = cell.getCellType();
+		switch (columnTypes[c]) {
+		case NUMERIC:
+			return cell.getNumericCellValue();
+		case STRING:
+			return Double.parseDouble(cell.getStringCellValue());
+		case FORMULA:
+			return cell.getNumericCellValue();
+		default:
+			throw new IllegalStateException("Cell " + cell.getAddress() + " does not contain a number");
+		}
+	}
+
+	/**
+	 * This method reads a cell as an int. Numbers with decimals are rounded down.
+	 * @param row
+	 * @param c the column index
+	 * @return
+	 * @throws IllegalStateException if the cell is empty or does not contain a number
+	 */
+	public int getInt(Row row, int c) throws IllegalStateException {
+		Cell cell = requireCell(row, c);
+		if(columnTypes[c] == CellType.STRING && cell.getCellType() == CellType.STRING) {
+			return parseInt(cell.getStringCellValue());
+		}
+		return (int) getDouble(row, c);
+	}
+
+	/**
+	 * This method reads a cell as a String. Numbers are converted in the same way as excel shows them,
+	 * so 2018 instead of "2018.0".
+	 * @param row
+	 * @param c the column index
+	 * @return the value, or null if the cell is missing
+	 */
+	public String getString(Row row, int c) {
+		Cell cell = row.getCell(c);
+		if(cell == null) {
+			return null;
+		}
+		CellType type = columnTypes[c] != null ? columnTypes[c] : cell.getCellType();
+		if(type == CellType.STRING) {
+			try {
+				return cell.getStringCellValue();
+			} catch (IllegalStateException e) {
+				// The type of this cell is different from the previous cells in this column
+			}
+		}
+		columnTypes[c] = cell.getCellType();
+		switch (columnTypes[c]) {
+		case NUMERIC:
+			double value = cell.getNumericCellValue();
+			if(value == Math.rint(value) && Math.abs(value) < Long.MAX_VALUE) {
+				return String.valueOf((long) value);
+			}
+			return String.valueOf(value);
+		case BOOLEAN:
+			return cell.getBooleanCellValue() ? "TRUE" : "FALSE";
+		default:
+			return cell.getStringCellValue();
+		}
+	}
+
+	private static Cell requireCell(Row row, int c) throws IllegalStateException {
+		Cell cell = row.getCell(c);
+		if(cell == null) {
+			throw new IllegalStateException("Cell " + c + " of line " + (row.getRowNum() + 1) + " is empty");
+		}
+		return cell;
+	}
+
+
+	/**
+	 * This method parses a number that is stored as text to an int. Whole numbers (like "2018") are parsed
+	 * without going through Double.parseDouble, other numbers (like "2018.0") are rounded down.
+	 * @param text
+	 * @return
+	 * @throws NumberFormatException if the text is not a number
+	 */
+	public static int parseInt(String text) throws NumberFormatException {
+		int n = text.length();
+		if(n == 0 || n > 9) {
+			return (int) Double.parseDouble(text);
+		}
+		int i = 0;
+		boolean negative = text.charAt(0) == '-';
+		if(negative) {
+			i++;
+			if(n == 1) {
+				throw new NumberFormatException("For input string: \"" + text + "\"");
+			}
+		}
+		int result = 0;
+		for(; i < n; i++) {
+			int digit = text.charAt(i) - '0';
+			if(digit < 0 || digit > 9) {
+				// Decimals, exponents or spaces
+				return (int) Double.parseDouble(text);
+			}
+			result = result * 10 + digit;
+		}
+		return negative ? -result : result;
+	}
+}
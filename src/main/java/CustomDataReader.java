@@ -2,13 +2,23 @@ import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.LongAdder;
 
 import javax.swing.plaf.synth.SynthOptionPaneUI;
 
-import org.apache.poi.ss.usermodel.Cell;
 import org.apache.poi.ss.usermodel.CellType;
 import org.apache.poi.ss.usermodel.Row;
 import org.apache.poi.ss.usermodel.Sheet;
@@ -17,8 +27,18 @@ import org.apache.poi.ss.usermodel.WorkbookFactory;
 
 public class CustomDataReader {
 	private Workbook dataSetWb;
-	private Workbook relevanceFactorWb;
-	private Workbook sizeGroupCostsWb;
+	private File relevanceFactorFile;
+	private File sizeGroupCostsFile;
+	// The relevance scores and size group costs are small tables that every reader needs. They are only read
+	// once per file, also when multiple readers are used (like for the data sets of different years).
+	private static final HashMap<String, HashMap<String, Double>> lookupTables = new HashMap<String, HashMap<String, Double>>();
+	// In streaming mode the big data file is never opened as a workbook, but read row by row
+	private File dataSetFile;
+	private boolean streaming;
+	// If a pool is set, the lines of the big data file are handled in parallel
+	private ForkJoinPool pool;
+	// The number of lines that one worker handles at once when reading in parallel
+	private static final int BLOCK_SIZE = 8192;
 	
 
 	public static void main(String[] args) {
@@ -44,14 +64,15 @@ public class CustomDataReader {
 		
 		
 		try {
-			CustomDataReader cdm = new CustomDataReader(data, relevanceScore, warehouseCost);
+			CustomDataReader cdm = new CustomDataReader(data, relevanceScore, warehouseCost, true);
 			ArrayList<Integer> years = new ArrayList<Integer>();
 			years.add(2018);
 			years.add(2019);
-			ArrayList<HashMap<String, HashMap<String, Product>>> result = cdm.readData(years);
+			// The data of both years and the combined data, read in one pass
+			ArrayList<HashMap<String, HashMap<String, Product>>> result = cdm.readDataUnified(years, 2018, 104);
 			
 			int year = 0;
-			for(HashMap<String, HashMap<String, Product>> yearlyData : result) {
+			for(HashMap<String, HashMap<String, Product>> yearlyData : result.subList(0, years.size())) {
 				int totalProducts = 0;
 				for(String chunk : yearlyData.keySet()) {
 					totalProducts += yearlyData.get(chunk).keySet().size();
@@ -79,12 +100,42 @@ public class CustomDataReader {
 	 * @throws FileNotFoundException whenever one of the files can not be found
 	 */
 	public CustomDataReader(File dataSet, File relevanceFactor, File sizeGroupCosts) throws FileNotFoundException {
+		this(dataSet, relevanceFactor, sizeGroupCosts, false);
+	}
+	
+	
+	/**
+	 * This is a constructor for the CustomDataReader in which you can choose to stream the big data file.
+	 * When streaming, the data set is not loaded as a workbook. Instead, its rows are read one at a time
+	 * directly from the xlsx file when readData or readDataCombined is called. This keeps memory usage
+	 * flat no matter the size of the data set and avoids the time spent on creating the workbook.
+	 * @param dataSet this File contains the majority of the data. Must be an xlsx file when streaming
+	 * @param relevanceFactor this File contains the relevance Factors for each chunk
+	 * @param sizeGroupCosts this File contains the warehouseCosts for each groupSize
+	 * @param streaming whether or not the data set should be streamed
+	 * @throws FileNotFoundException whenever one of the files can not be found
+	 */
+	public CustomDataReader(File dataSet, File relevanceFactor, File sizeGroupCosts, boolean streaming) throws FileNotFoundException {
+		this.streaming = streaming;
+		this.dataSetFile = dataSet;
 		// Try to safe workbooks for each file. A workbook is a collection of the different sheets in an excel.
 		try {
 			long tic = System.currentTimeMillis();
-			dataSetWb = WorkbookFactory.create(new FileInputStream(dataSet));
-			relevanceFactorWb = WorkbookFactory.create(new FileInputStream(relevanceFactor));
-			sizeGroupCostsWb = WorkbookFactory.create(new FileInputStream(sizeGroupCosts));
+			if(streaming) {
+				if(!dataSet.exists()) {
+					throw new FileNotFoundException(dataSet.getPath());
+				}
+			} else {
+				dataSetWb = WorkbookFactory.create(new FileInputStream(dataSet));
+			}
+			// The other two files are opened when they are needed for the first time
+			for(File file : new File[] {relevanceFactor, sizeGroupCosts}) {
+				if(!file.exists()) {
+					throw new FileNotFoundException(file.getPath());
+				}
+			}
+			relevanceFactorFile = relevanceFactor;
+			sizeGroupCostsFile = sizeGroupCosts;
 			long tac = System.currentTimeMillis();
 			System.out.println("Time spent creating workbooks: " + (tac - tic)/1000 + " s");
 		} catch (IOException e) {
@@ -92,6 +143,16 @@ public class CustomDataReader {
 		}
 	}
 	
+	/**
+	 * Basic setter method. If a pool is set, the lines of the big data file are converted and stored in
+	 * parallel by the workers of the pool. The resulting data is exactly the same as when reading sequentially.
+	 * The products are always cleaned and fitted in parallel, by this pool or else by the common pool.
+	 * @param pool the pool to use, or null to read sequentially
+	 */
+	public void setPool(ForkJoinPool pool) {
+		this.pool = pool;
+	}
+	
 	/**
 	 * This method reads the data from the files provided to the object. The data is stored in the following structure:
 	 * First, for each chunk a separate HashMap is created containing groupSize as a key and a Product object as its
@@ -118,157 +179,24 @@ public class CustomDataReader {
 		for(int i = 0; i < years.size(); i++) {
 			result.add(new HashMap<String, HashMap<String,Product>>());
 		}
-		// Retrieve the data sheets
-		Sheet dataSheet = dataSetWb.getSheetAt(0);
-		Sheet relevanceSheet = relevanceFactorWb.getSheetAt(0);
-		Sheet sizeGroupCostSheet = sizeGroupCostsWb.getSheetAt(0);
-		
 		// First import the relevance score data and sizeGroup cost data, because the records in the big data set point
 		// to values in these data sets
-		HashMap<String, Double> relevanceData = new HashMap<String, Double>();
-		int i = 0;
-		for(Row row : relevanceSheet) {
-			// Skip the header of the table
-			// At the and of the excel file a chunk name disappeared, so don't read this row
-			if(i != 0 && !(row.getCell(0) == null || row.getCell(0).getCellType() == CellType.BLANK)) {
-				try {
-					String chunk = row.getCell(0).getStringCellValue();
-					Double score = row.getCell(1).getNumericCellValue();
-					relevanceData.put(chunk, score);
-				} catch (Exception e) {
-					throw new IllegalStateException("Cell values are not as expected");
-				}
-			}
-			i++;
-		}
+		HashMap<String, Double> relevanceData = readRelevanceData();
 		System.out.println("relevanceData size: " + relevanceData.size());
 		
 		// Second import the sizeGroup costs
-		HashMap<String, Double> sizeGroupCost = new HashMap<String, Double>();
-		i = 0;
-		for(Row row : sizeGroupCostSheet) {
-			// Skip the header of the table
-			if(i != 0) {
-				try {
-					String sizeGroup = row.getCell(0).getStringCellValue();
-					sizeGroup = convertSizeFormat(sizeGroup);
-					Double cost = row.getCell(1).getNumericCellValue();
-					sizeGroupCost.put(sizeGroup, cost);
-				} catch (Exception e) {
-					throw new IllegalStateException("Cell values are not as expected");
-				}
-			}
-			i++;
-		}
+		HashMap<String, Double> sizeGroupCost = readSizeGroupCosts();
 		System.out.println("sizeGroupData size: " + sizeGroupCost.size());
 		
 		// Now start creating all the products and save them in results
-		
-		// ------------------------------------
-		// HEADER NAMES WITH COLUMN INDEX
-		// YEAR 0
-		// WEEK 1
-		// QTY_SALES 2
-		// PRODUCT_GROUP 3
-		// SHOP 4
-		// CHUNK_NAME 5
-		// SIZE_GROUP 6
-		// AVERAGE_M3 7
-		// AVERAGE_PRICE 8
-		// ------------------------------------
-		
-		i = 0;
-		for(Row row : dataSheet) {
-			// Skip the header of the table
-			
-			if(i != 0) {
-				try {
-					
-					// TODO Check whether the data from the excel is valid, e.g. no negative demand
-					
-					// Find all primary necessary data to find out whether we need to add a new
-					// product or that we just need to add time series data.
-					// Since all values in the xlsx file are of type text, we need to convert them
-					int year = Integer.parseInt(getCellValueAsString(row.getCell(0)));
-					int week = Integer.parseInt(getCellValueAsString(row.getCell(1)));
-					int qtySales = (int) Math.max(Double.parseDouble(getCellValueAsString(row.getCell(2))),0);
-					String productGroup = getCellValueAsString(row.getCell(3));
-					String chunk = getCellValueAsString(row.getCell(5));
-					String sizeGroup = getCellValueAsString(row.getCell(6));
-					sizeGroup = convertSizeFormat(sizeGroup);
-					double averageM3 = Math.max(Double.parseDouble(getCellValueAsString(row.getCell(7))),0);
-					double averagePrice;
-					if (row.getCell(8) != null) {
-						averagePrice = Math.max(Double.parseDouble(getCellValueAsString(row.getCell(8))),0);
-					}else {
-						averagePrice = 0; 
-					}
-					
-					// Since there are chunks that are named the same, but belong to different product groups,
-					// we differentiate between all chunks based on a chunk_productGroup key
-					String chunkKey = chunk + "_" + productGroup;
-					
-					// Check whether or not the Product already exists in the result data structure.
-					// If it does, just add the time series data to the product.
-					// If it does not, create a new Product object and add it to results
-					int index = years.indexOf(year);
-					if(index >= 0) {
-						// In this case, a year is found that is specified when this method was called, so we read
-						// the data and safe it.
-						if(result.get(index).containsKey(chunkKey)) {
-							if(result.get(index).get(chunkKey).containsKey(sizeGroup)) {
-								// In this case, we only need to add time series data to an already existing
-								// product
-								result.get(index).get(chunkKey).get(sizeGroup).addSale(week, qtySales);
-								result.get(index).get(chunkKey).get(sizeGroup).addAverageM3(week, averageM3);
-								result.get(index).get(chunkKey).get(sizeGroup).addAveragePrice(week, averagePrice);
-							} else {
-								// In this case, we only need to add the product to the chunk HashMap
-								// Find secondary data in order to create a new product
-								String shop = getCellValueAsString(row.getCell(4));
-								double warehouseCost = sizeGroupCost.get(sizeGroup);
-								double relevance = relevanceData.get(chunk);
-								Product product = new Product(shop, productGroup, chunk, sizeGroup, year, warehouseCost, relevance);
-								// Add time series data
-								product.addSale(week, qtySales);
-								product.addAverageM3(week, averageM3);
-								product.addAveragePrice(week, averagePrice);
-								// Add the new object to the result
-								result.get(index).get(chunkKey).put(sizeGroup, product);
-							}
-						} else {
-							// In this case, we need to add the chunk to the big HashMap and the product
-							// to a new chunk HashMap
-							// Find secondary data in order to create a new product
-							String shop = getCellValueAsString(row.getCell(4));
-							double warehouseCost = sizeGroupCost.get(sizeGroup);
-							double relevance = relevanceData.get(chunk);
-							Product product = new Product(shop, productGroup, chunk, sizeGroup, year, warehouseCost, relevance);
-							// Add time series data
-							product.addSale(week, qtySales);
-							product.addAverageM3(week, averageM3);
-							product.addAveragePrice(week, averagePrice);
-							// Add the product to a new chunk HashMap and that add it to the big HashMap
-							HashMap<String, Product> chunkMap = new HashMap<String, Product>();
-							chunkMap.put(sizeGroup, product);
-							result.get(index).put(chunkKey, chunkMap);
-						}
-					}
-				} catch (NullPointerException n) {
-					if(n.getMessage().contentEquals("Cannot invoke \"org.apache.poi.ss.usermodel.Cell.getCellType()\" because \"cell\" is null")) {
-						// In this case, probably a cell is empty. We just skip the line in the database
-						System.err.println("In line " + (i + 1) + " is a missing value. Did not insert this line in the data set.");
-					} else {
-						// In this case something else is wrong
-						n.printStackTrace();
-					}
-				} catch (Exception e) {
-					e.printStackTrace();
-					throw new IllegalStateException("Something went wrong reading the big data file in line " + (i + 1));
-				}
+		readDataSheet(result, (record, target) -> {
+			int index = years.indexOf(record.year);
+			if(index >= 0) {
+				// In this case, a year is found that is specified when this method was called, so we read
+				// the data and safe it.
+				storeRecord(target.get(index), record, relevanceData, sizeGroupCost, 0);
 			}
-			i++;
-		}
+		});
 		
 		// This part cleans the data in a more sophisticated way. Can be disabled without any problems
 //		int[] cleaningResults = new int[3];
@@ -301,23 +229,417 @@ public class CustomDataReader {
 	
 	
 	public HashMap<String, HashMap<String, Product>> readDataCombined() {
+		return readDataCombined(2018, 104);
+	}
+	
+	
+	/**
+	 * This method reads the data of consecutive years into one Product per size group of each chunk.
+	 * Week 1 of the base year is the first week of each Product. Lines outside the nWeeks weeks from the
+	 * base year are skipped.
+	 * @param baseYear the first year to read
+	 * @param nWeeks the number of weeks to read, starting from week 1 of the base year
+	 * @return the cleaned products with their distribution properties
+	 */
+	public HashMap<String, HashMap<String, Product>> readDataCombined(int baseYear, int nWeeks) {
 		
 		HashMap<String, HashMap<String, Product>> data = new HashMap<String, HashMap<String, Product>>();
 		
-		// Open excel sheets
+		// First import the relevance score data and sizeGroup cost data, because the records in the big data set point
+		// to values in these data sets
 		long tic = System.currentTimeMillis();
-		Sheet dataSheet = dataSetWb.getSheetAt(0);
-		Sheet relevanceSheet = relevanceFactorWb.getSheetAt(0);
-		Sheet sizeGroupCostSheet = sizeGroupCostsWb.getSheetAt(0);
+		HashMap<String, Double> relevanceData = readRelevanceData();
+		System.out.println("Relevance data size: " + relevanceData.size());
+		
+		// Second import the sizeGroup costs
+		HashMap<String, Double> sizeGroupCost = readSizeGroupCosts();
+		System.out.println("Storagecost data size: " + sizeGroupCost.size());
 		long toc = System.currentTimeMillis();
 		System.out.println("Opened sheets in " + (toc - tic)/1000 + " s");
 		
 		
-		// First import the relevance score data and sizeGroup cost data, because the records in the big data set point
-		// to values in these data sets
+		tic = System.currentTimeMillis();
+		ArrayList<HashMap<String, HashMap<String, Product>>> result = new ArrayList<HashMap<String, HashMap<String, Product>>>();
+		result.add(data);
+		readDataSheet(result, (record, target) -> {
+			int week = (record.year - baseYear) * 52 + record.week;
+			if(week >= 1 && week <= nWeeks) {
+				record.week = week;
+				storeRecord(target.get(0), record, relevanceData, sizeGroupCost, nWeeks);
+			}
+		});
+		toc = System.currentTimeMillis();
+		System.out.println("Saved data in " + (toc - tic)/1000 + " s");
+		
+		
+		ArrayList<Product> products = new ArrayList<Product>();
+		for(HashMap<String,Product> chunk : data.values()) {
+			products.addAll(chunk.values());
+		}
+		int[] cleaningResults = cleanProducts(products);
+		System.out.println("Sales: " + cleaningResults[0]);
+		System.out.println("Volume: " + cleaningResults[1]);
+		System.out.println("Prices: " + cleaningResults[2]);
+		
+		
+		//-------------------------------------
+		// This code is used to calculate the distribution properties
+		//-------------------------------------
+		
+		fitProducts(products);
+		
+		return data;
+	}
+	
+	
+	/**
+	 * This method reads the data of the given years and the combined data of consecutive years in one pass
+	 * over the data file, so the files only have to be read once when both are needed.
+	 * The products of a year that lies in the combined weeks are year views of the combined products: they
+	 * share the weekly arrays with the combined product, so every week is only kept in memory once. The
+	 * combined products are cleaned and fitted like in readDataCombined, which does not change the values
+	 * of the year views, since cleaning writes to copies of the arrays. The products of the other years are
+	 * read like in readData.
+	 * @param years the years that you want the data of
+	 * @param baseYear the first year of the combined data
+	 * @param nWeeks the number of weeks of the combined data, starting from week 1 of the base year
+	 * @return an ArrayList with a HashMap for each year in the same order as the years were provided,
+	 * followed by the HashMap with the combined data
+	 * @throws IllegalStateException if a cell holds a data type that is not expected
+	 */
+	public ArrayList<HashMap<String, HashMap<String, Product>>> readDataUnified(ArrayList<Integer> years, int baseYear, int nWeeks) throws IllegalStateException {
+		long tic = System.currentTimeMillis();
+		HashMap<String, Double> relevanceData = readRelevanceData();
+		HashMap<String, Double> sizeGroupCost = readSizeGroupCosts();
+		
+		ArrayList<HashMap<String, HashMap<String, Product>>> result = new ArrayList<HashMap<String, HashMap<String, Product>>>(years.size() + 1);
+		for(int i = 0; i <= years.size(); i++) {
+			result.add(new HashMap<String, HashMap<String,Product>>());
+		}
+		int combined = years.size();
+		SymbolTable symbols = Product.getSymbolTable();
+		readDataSheet(result, (record, target) -> {
+			int year = record.year;
+			int index = years.indexOf(year);
+			int week = (year - baseYear) * 52 + record.week;
+			if(week >= 1 && week <= nWeeks) {
+				record.week = week;
+				Product product = storeRecord(target.get(combined), record, relevanceData, sizeGroupCost, nWeeks);
+				if(index >= 0) {
+					// The year view is added when the product is found for the first time in this year,
+					// so the HashMap of the year is filled in the same order as with readData
+					String chunkKey = symbols.chunkKey(record.chunk, record.productGroup);
+					HashMap<String, Product> chunkMap = target.get(index).get(chunkKey);
+					if(chunkMap == null) {
+						chunkMap = new HashMap<String, Product>();
+						target.get(index).put(chunkKey, chunkMap);
+					}
+					String sizeGroup = symbols.name(record.sizeGroup);
+					if(!chunkMap.containsKey(sizeGroup)) {
+						chunkMap.put(sizeGroup, product.createYearView(year, (year - baseYear) * 52));
+					}
+				}
+			} else if(index >= 0) {
+				storeRecord(target.get(index), record, relevanceData, sizeGroupCost, 0);
+			}
+		});
+		long toc = System.currentTimeMillis();
+		System.out.println("Saved data in " + (toc - tic)/1000 + " s");
+		
+		ArrayList<Product> products = new ArrayList<Product>();
+		for(HashMap<String,Product> chunk : result.get(combined).values()) {
+			products.addAll(chunk.values());
+		}
+		cleanProducts(products);
+		fitProducts(products);
+		
+		for(int j = 0; j < years.size(); j++) {
+			System.out.println("Data size for year " + years.get(j) + ": " + result.get(j).size() + " chunks");
+		}
+		return result;
+	}
+	
+	
+	/**
+	 * This method adds the lines of the data file of this reader (typically a small file with only the latest
+	 * week) to products that were read before with readDataCombined, so the data does not have to be read
+	 * again completely. If the lines go beyond the last week of the products, all products are extended to
+	 * the new last week, since the forecasts start after the last week.
+	 * Only the products that received new lines are cleaned again. Cleaning always starts from the values as
+	 * read, so the result is the same as reading all data at once. The distribution properties are calculated
+	 * again for all products that changed. This only takes a pass over the weeks of each product.
+	 * @param data the combined data, which is updated in place
+	 * @param baseYear the base year that was used to read the data
+	 * @return the products that received new lines
+	 */
+	public ArrayList<Product> appendWeeks(HashMap<String, HashMap<String, Product>> data, int baseYear) {
+		long tic = System.currentTimeMillis();
+		HashMap<String, Double> relevanceData = readRelevanceData();
+		HashMap<String, Double> sizeGroupCost = readSizeGroupCosts();
+		
+		// The new lines are collected first, since the new number of weeks is only known afterwards.
+		// There are only a few lines, so they are read by this thread in the order of the file.
+		ArrayList<SalesRecord> records = new ArrayList<SalesRecord>();
+		ArrayList<HashMap<String, HashMap<String, Product>>> target = new ArrayList<HashMap<String, HashMap<String, Product>>>();
+		target.add(data);
+		readDataSheetSequential(target, (record, t) -> {
+			record.week = (record.year - baseYear) * 52 + record.week;
+			if(record.week >= 1) {
+				records.add(record.copy());
+			}
+		});
+		
+		int oldWeeks = 0;
+		for(HashMap<String, Product> chunk : data.values()) {
+			for(Product product : chunk.values()) {
+				oldWeeks = Math.max(oldWeeks, product.getWeeklySales().length);
+			}
+		}
+		int nWeeks = oldWeeks;
+		for(SalesRecord record : records) {
+			nWeeks = Math.max(nWeeks, record.week);
+		}
+		if(nWeeks > oldWeeks) {
+			for(HashMap<String, Product> chunk : data.values()) {
+				for(Product product : chunk.values()) {
+					product.extendWeeks(nWeeks);
+				}
+			}
+		}
+		
+		// Add the lines, new products are created with the new number of weeks
+		LinkedHashSet<Product> changed = new LinkedHashSet<Product>();
+		for(SalesRecord record : records) {
+			changed.add(storeRecord(data, record, relevanceData, sizeGroupCost, nWeeks));
+		}
+		cleanProducts(new ArrayList<Product>(changed));
+		
+		// If the number of weeks changed, the forecasts of all products have to be calculated again
+		ArrayList<Product> update = new ArrayList<Product>();
+		for(HashMap<String, Product> chunk : data.values()) {
+			for(Product product : chunk.values()) {
+				if(nWeeks > oldWeeks || changed.contains(product)) {
+					update.add(product);
+				}
+			}
+		}
+		fitProducts(update);
+		long toc = System.currentTimeMillis();
+		System.out.println("Appended " + records.size() + " lines to " + changed.size() + " products and updated " + update.size()
+				+ " products in " + (toc - tic) + " ms");
+		return new ArrayList<Product>(changed);
+	}
+		
+
+	
+	/**
+	 * This method cleans the time series data of the products. The products are cleaned in parallel by the
+	 * workers of the pool, or of the common pool if no pool is set. Each product is cleaned on its own, so
+	 * the result is the same as cleaning them one after the other.
+	 * @param products
+	 * @return the number of cleaned sales, volumes and prices
+	 */
+	private int[] cleanProducts(ArrayList<Product> products) {
+		long tic = System.currentTimeMillis();
+		LongAdder[] modCounts = {new LongAdder(), new LongAdder(), new LongAdder()};
+		fittingPool().invoke(new FitTask(products, 0, products.size(), true, modCounts));
+		long toc = System.currentTimeMillis();
+		System.out.println("Cleaned " + products.size() + " products in " + (toc - tic) + " ms");
+		return new int[] {modCounts[0].intValue(), modCounts[1].intValue(), modCounts[2].intValue()};
+	}
+	
+	
+	/**
+	 * This method calculates the distribution properties of the products in parallel, in the same way as
+	 * cleanProducts
+	 * @param products
+	 */
+	private void fitProducts(ArrayList<Product> products) {
+		long tic = System.currentTimeMillis();
+		fittingPool().invoke(new FitTask(products, 0, products.size(), false, null));
+		long toc = System.currentTimeMillis();
+		System.out.println("Calculated distribution properties of " + products.size() + " products in " + (toc - tic) + " ms");
+	}
+	
+	
+	private ForkJoinPool fittingPool() {
+		return pool != null ? pool : ForkJoinPool.commonPool();
+	}
+	
+	
+	/**
+	 * This task cleans or fits a range of products. Large ranges are split in two halves that are handled in
+	 * parallel. The number of cleaned values is added to modCounts.
+	 */
+	private static class FitTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+		// Below this number of products, the products are handled by one worker
+		private static final int THRESHOLD = 64;
+		private ArrayList<Product> products;
+		private int lb;
+		private int ub;
+		private boolean clean;
+		private LongAdder[] modCounts;
+		
+		FitTask(ArrayList<Product> products, int lb, int ub, boolean clean, LongAdder[] modCounts) {
+			this.products = products;
+			this.lb = lb;
+			this.ub = ub;
+			this.clean = clean;
+			this.modCounts = modCounts;
+		}
+		
+		@Override
+		protected void compute() {
+			if(ub - lb > THRESHOLD) {
+				int mid = (lb + ub) >>> 1;
+				invokeAll(new FitTask(products, lb, mid, clean, modCounts), new FitTask(products, mid, ub, clean, modCounts));
+				return;
+			}
+			int[] total = new int[3];
+			for(int i = lb; i < ub; i++) {
+				if(clean) {
+					int[] modCount = products.get(i).cleanTimeSeriesData();
+					total[0] += modCount[0];
+					total[1] += modCount[1];
+					total[2] += modCount[2];
+				} else {
+					products.get(i).calculateDistributionProperties();
+				}
+			}
+			if(clean) {
+				for(int j = 0; j < 3; j++) {
+					modCounts[j].add(total[j]);
+				}
+			}
+		}
+	}
+	
+	
+	/**
+	 * This method gives the same result as readDataCombined, but keeps a snapshot of the cleaned and fitted
+	 * products next to the data set. As long as none of the three files change, the snapshot is loaded
+	 * instead of reading the excel files and fitting all products again.
+	 * @param dataSet this File contains the majority of the data
+	 * @param relevanceFactor this File contains the relevance Factors for each chunk
+	 * @param sizeGroupCosts this File contains the warehouseCosts for each groupSize
+	 * @return the combined data
+	 * @throws FileNotFoundException whenever one of the files can not be found
+	 */
+	public static HashMap<String, HashMap<String, Product>> readDataCombinedCached(File dataSet, File relevanceFactor,
+			File sizeGroupCosts) throws FileNotFoundException {
+		File cacheFile = new File(dataSet.getPath() + ".combined.snapshot");
+		ProductCatalogCache cache = new ProductCatalogCache(cacheFile, "combined", dataSet, relevanceFactor, sizeGroupCosts);
+		ArrayList<HashMap<String, HashMap<String, Product>>> result = cache.load();
+		if(result == null) {
+			CustomDataReader cdm = new CustomDataReader(dataSet, relevanceFactor, sizeGroupCosts, true);
+			cdm.setPool(ForkJoinPool.commonPool());
+			result = new ArrayList<HashMap<String, HashMap<String, Product>>>();
+			result.add(cdm.readDataCombined());
+			writeSnapshot(cache, result);
+		}
+		return result.get(0);
+	}
+	
+	
+	/**
+	 * This method gives the same result as readData, but keeps a snapshot of the products next to the data set.
+	 * As long as none of the three files change, the snapshot is loaded instead of reading the excel files.
+	 * @param dataSet this File contains the majority of the data
+	 * @param relevanceFactor this File contains the relevance Factors for each chunk
+	 * @param sizeGroupCosts this File contains the warehouseCosts for each groupSize
+	 * @param years an integer array list with all the years that you want the data of.
+	 * @return the data for each year
+	 * @throws FileNotFoundException whenever one of the files can not be found
+	 */
+	public static ArrayList<HashMap<String, HashMap<String, Product>>> readDataCached(File dataSet, File relevanceFactor,
+			File sizeGroupCosts, ArrayList<Integer> years) throws FileNotFoundException {
+		String tag = "years";
+		for(int year : years) {
+			tag += "-" + year;
+		}
+		File cacheFile = new File(dataSet.getPath() + "." + tag + ".snapshot");
+		ProductCatalogCache cache = new ProductCatalogCache(cacheFile, tag, dataSet, relevanceFactor, sizeGroupCosts);
+		ArrayList<HashMap<String, HashMap<String, Product>>> result = cache.load();
+		if(result == null) {
+			CustomDataReader cdm = new CustomDataReader(dataSet, relevanceFactor, sizeGroupCosts, true);
+			cdm.setPool(ForkJoinPool.commonPool());
+			result = cdm.readData(years);
+			writeSnapshot(cache, result);
+		}
+		return result;
+	}
+	
+	
+	/**
+	 * Failing to write a snapshot is not a reason to stop, since the data is already read.
+	 * @param cache
+	 * @param data
+	 */
+	private static void writeSnapshot(ProductCatalogCache cache, ArrayList<HashMap<String, HashMap<String, Product>>> data) {
+		try {
+			cache.write(data);
+		} catch (IOException e) {
+			System.err.println("Could not write snapshot: " + e.getMessage());
+		}
+	}
+	
+	
+	/**
+	 * This method imports the relevance score for each chunk. The HashMap is shared by all readers that use
+	 * the same file, so it should not be changed.
+	 * @return a HashMap with the chunk name as key and the relevance score as value
+	 * @throws IllegalStateException if a cell holds a data type that is not expected
+	 */
+	private HashMap<String, Double> readRelevanceData() throws IllegalStateException {
+		return lookupTable(relevanceFactorFile, false);
+	}
+	
+	
+	/**
+	 * This method imports the storage cost for each sizeGroup. The HashMap is shared by all readers that use
+	 * the same file, so it should not be changed.
+	 * @return a HashMap with the sizeGroup in XXS format as key and the cost as value
+	 * @throws IllegalStateException if a cell holds a data type that is not expected
+	 */
+	private HashMap<String, Double> readSizeGroupCosts() throws IllegalStateException {
+		return lookupTable(sizeGroupCostsFile, true);
+	}
+	
+	
+	/**
+	 * This method reads the relevance scores or size group costs from a file, unless the same file was read
+	 * before and has not changed since.
+	 * @param file
+	 * @param sizeGroups true for the size group costs, false for the relevance scores
+	 * @return
+	 * @throws IllegalStateException if the file can not be read
+	 */
+	private static synchronized HashMap<String, Double> lookupTable(File file, boolean sizeGroups) throws IllegalStateException {
+		String key = file.getAbsolutePath() + "|" + file.length() + "|" + file.lastModified();
+		HashMap<String, Double> table = lookupTables.get(key);
+		if(table == null) {
+			try (Workbook wb = WorkbookFactory.create(new FileInputStream(file))) {
+				table = sizeGroups ? parseSizeGroupCosts(wb.getSheetAt(0)) : parseRelevanceData(wb.getSheetAt(0));
+			} catch (IOException e) {
+				throw new IllegalStateException("Could not open " + file.getName(), e);
+			}
+			lookupTables.put(key, table);
+		}
+		return table;
+	}
+	
+	
+	/**
+	 * This method imports the relevance score for each chunk
+	 * @param sheet
+	 * @return a HashMap with the chunk name as key and the relevance score as value
+	 * @throws IllegalStateException if a cell holds a data type that is not expected
+	 */
+	private static HashMap<String, Double> parseRelevanceData(Sheet sheet) throws IllegalStateException {
 		HashMap<String, Double> relevanceData = new HashMap<String, Double>();
 		int i = 0;
-		for(Row row : relevanceSheet) {
+		for(Row row : sheet) {
 			// Skip the header of the table
 			// At the and of the excel file a chunk name disappeared, so don't read this row
 			if(i != 0 && !(row.getCell(0) == null || row.getCell(0).getCellType() == CellType.BLANK)) {
@@ -331,12 +653,20 @@ public class CustomDataReader {
 			}
 			i++;
 		}
-		System.out.println("Relevance data size: " + relevanceData.size());
-		
-		// Second import the sizeGroup costs
+		return relevanceData;
+	}
+	
+	
+	/**
+	 * This method imports the storage cost for each sizeGroup
+	 * @param sheet
+	 * @return a HashMap with the sizeGroup in XXS format as key and the cost as value
+	 * @throws IllegalStateException if a cell holds a data type that is not expected
+	 */
+	private static HashMap<String, Double> parseSizeGroupCosts(Sheet sheet) throws IllegalStateException {
 		HashMap<String, Double> sizeGroupCost = new HashMap<String, Double>();
-		i = 0;
-		for(Row row : sizeGroupCostSheet) {
+		int i = 0;
+		for(Row row : sheet) {
 			// Skip the header of the table
 			if(i != 0) {
 				try {
@@ -350,147 +680,487 @@ public class CustomDataReader {
 			}
 			i++;
 		}
-		System.out.println("Storagecost data size: " + sizeGroupCost.size());
-		
-		
-		tic = System.currentTimeMillis();
-		int baseYear = 2018;
-		int nWeeks = 104;
-		data = new HashMap<String,HashMap<String,Product>>();
-		i = 0;
-		for(Row row : dataSheet) {
-			if(i != 0) {
-				try {
-					// Find all primary necessary data to find out whether we need to add a new
-					// product or that we just need to add time series data.
-					// Since all values in the xlsx file are of type text, we need to convert them
-					int year = Integer.parseInt(getCellValueAsString(row.getCell(0)));
-					int week = Integer.parseInt(getCellValueAsString(row.getCell(1)));
-					week = (year - baseYear) * 52 + week;
-					int qtySales = (int) Math.max(Double.parseDouble(getCellValueAsString(row.getCell(2))),0);
-					String productGroup = getCellValueAsString(row.getCell(3));
-					String chunk = getCellValueAsString(row.getCell(5));
-					String sizeGroup = getCellValueAsString(row.getCell(6));
-					sizeGroup = convertSizeFormat(sizeGroup);
-					double averageM3 = Math.max(Double.parseDouble(getCellValueAsString(row.getCell(7))),0);
-					double averagePrice;
-					if (row.getCell(8) != null) {
-						averagePrice = Math.max(Double.parseDouble(getCellValueAsString(row.getCell(8))),0);
-					}else {
-						averagePrice = 0; 
+		return sizeGroupCost;
+	}
+	
+	
+	/**
+	 * This method goes over all records in the big data file and passes them one by one to the consumer.
+	 * Depending on the mode of this reader, the records come from the workbook or are streamed from the file.
+	 * The same SalesRecord object is reused for every line, so the consumer should copy what it needs.
+	 * 
+	 * ------------------------------------
+	 * HEADER NAMES WITH COLUMN INDEX
+	 * YEAR 0
+	 * WEEK 1
+	 * QTY_SALES 2
+	 * PRODUCT_GROUP 3
+	 * SHOP 4
+	 * CHUNK_NAME 5
+	 * SIZE_GROUP 6
+	 * AVERAGE_M3 7
+	 * AVERAGE_PRICE 8
+	 * ------------------------------------
+	 * 
+	 * @param target the chunk HashMaps in which the consumer stores the records
+	 * @param consumer
+	 * @throws IllegalStateException if a line of the data file can not be read
+	 */
+	private void readDataSheet(ArrayList<HashMap<String, HashMap<String, Product>>> target, RecordConsumer consumer) throws IllegalStateException {
+		if(pool != null) {
+			readDataSheetParallel(target, consumer);
+		} else {
+			readDataSheetSequential(target, consumer);
+		}
+	}
+	
+	
+	/**
+	 * This method does the same as readDataSheet, but always handles the lines one by one in the calling thread
+	 * @param target
+	 * @param consumer
+	 * @throws IllegalStateException if a line of the data file can not be read
+	 */
+	private void readDataSheetSequential(ArrayList<HashMap<String, HashMap<String, Product>>> target, RecordConsumer consumer) throws IllegalStateException {
+		SalesRecord record = new SalesRecord();
+		if(streaming) {
+			StreamingSheetReader reader = new StreamingSheetReader(dataSetFile, 9);
+			try {
+				reader.read((rowNum, values) -> {
+					// Skip the header of the table
+					if(rowNum != 0) {
+						handleLine(values, rowNum, record, target, consumer);
 					}
-
-					// Since there are chunks that are named the same, but belong to different product groups,
-					// we differentiate between all chunks based on a chunk_productGroup key
-					String chunkKey = chunk + "_" + productGroup;
-
-					// Check whether or not the Product already exists in the result data structure.
-					// If it does, just add the time series data to the product.
-					// If it does not, create a new Product object and add it to results
-
-					if(year != 2020) {
-						if(data.containsKey(chunkKey)) {
-							if(data.get(chunkKey).containsKey(sizeGroup)) {
-								// In this case, we only need to add time series data to an already existing
-								// product
-								data.get(chunkKey).get(sizeGroup).addSale(week, qtySales);
-								data.get(chunkKey).get(sizeGroup).addAverageM3(week, averageM3);
-								data.get(chunkKey).get(sizeGroup).addAveragePrice(week, averagePrice);
-							} else {
-								// In this case, we only need to add the product to the chunk HashMap
-								// Find secondary data in order to create a new product
-								String shop = getCellValueAsString(row.getCell(4));
-								double storageCost = sizeGroupCost.get(sizeGroup);
-								double relevance = relevanceData.get(chunk);
-								Product product = new Product(shop, productGroup, chunk, sizeGroup, storageCost, relevance, nWeeks);
-								// Add time series data
-								product.addSale(week, qtySales);
-								product.addAverageM3(week, averageM3);
-								product.addAveragePrice(week, averagePrice);
-								// Add the new object to the result
-								data.get(chunkKey).put(sizeGroup, product);
-							}
-						} else {
-							// In this case, we need to add the chunk to the big HashMap and the product
-							// to a new chunk HashMap
-							// Find secondary data in order to create a new product
-							String shop = getCellValueAsString(row.getCell(4));
-							double storageCost = sizeGroupCost.get(sizeGroup);
-							double relevance = relevanceData.get(chunk);
-							Product product = new Product(shop, productGroup, chunk, sizeGroup, storageCost, relevance, nWeeks);
-							// Add time series data
-							product.addSale(week, qtySales);
-							product.addAverageM3(week, averageM3);
-							product.addAveragePrice(week, averagePrice);
-							// Add the product to a new chunk HashMap and that add it to the big HashMap
-							HashMap<String, Product> chunkMap = new HashMap<String, Product>();
-							chunkMap.put(sizeGroup, product);
-							data.put(chunkKey, chunkMap);
+				});
+			} catch (IOException e) {
+				throw new IllegalStateException("Could not stream the big data file", e);
+			}
+		} else {
+			CellDecoder decoder = new CellDecoder(9);
+			int i = 0;
+			for(Row row : dataSetWb.getSheetAt(0)) {
+				// Skip the header of the table
+				if(i != 0) {
+					handleLine(row, i, decoder, record, target, consumer);
+				}
+				i++;
+			}
+		}
+	}
+	
+	
+	/**
+	 * This method does the same as readDataSheet, but divides the lines of the data file in blocks that are
+	 * handled by the workers of the pool. Each block is stored in its own chunk HashMaps. These are merged
+	 * in the order of the lines, so that the result is exactly the same as when the lines are read one by one.
+	 * When streaming, the file itself is still parsed by the calling thread, while the workers convert and
+	 * store the lines that have been parsed so far.
+	 * @param target
+	 * @param consumer
+	 */
+	private void readDataSheetParallel(ArrayList<HashMap<String, HashMap<String, Product>>> target, RecordConsumer consumer) {
+		int nMaps = target.size();
+		if(streaming) {
+			// The blocks that are handed to the pool, in the order of the lines
+			ArrayDeque<ForkJoinTask<ArrayList<HashMap<String, HashMap<String, Product>>>>> pending = new ArrayDeque<ForkJoinTask<ArrayList<HashMap<String, HashMap<String, Product>>>>>();
+			int maxPending = 4 * pool.getParallelism();
+			String[][][] block = {new String[BLOCK_SIZE][]};
+			int[][] rowNums = {new int[BLOCK_SIZE]};
+			int[] size = {0};
+			StreamingSheetReader reader = new StreamingSheetReader(dataSetFile, 9);
+			try {
+				reader.read((rowNum, values) -> {
+					// Skip the header of the table
+					if(rowNum == 0) {
+						return;
+					}
+					// The values array is reused by the reader, so it has to be copied
+					block[0][size[0]] = values.clone();
+					rowNums[0][size[0]] = rowNum;
+					size[0]++;
+					if(size[0] == BLOCK_SIZE) {
+						pending.add(pool.submit(new LineBlockTask(block[0], rowNums[0], size[0], nMaps, consumer)));
+						block[0] = new String[BLOCK_SIZE][];
+						rowNums[0] = new int[BLOCK_SIZE];
+						size[0] = 0;
+						// Merge the blocks that are done, and wait if too many blocks are waiting, so that
+						// the lines that are parsed but not stored yet do not fill up the memory
+						while(!pending.isEmpty() && (pending.peek().isDone() || pending.size() > maxPending)) {
+							mergeShard(target, pending.poll().join());
 						}
 					}
-
-				} catch (NullPointerException n) {
-					if(n.getMessage().contentEquals("Cannot invoke \"org.apache.poi.ss.usermodel.Cell.getCellType()\" because \"cell\" is null")) {
-						// In this case, probably a cell is empty. We just skip the line in the database
-						System.err.println("In line " + (i + 1) + " is a missing value. Did not insert this line in the data set.");
+				});
+			} catch (IOException e) {
+				throw new IllegalStateException("Could not stream the big data file", e);
+			}
+			pending.add(pool.submit(new LineBlockTask(block[0], rowNums[0], size[0], nMaps, consumer)));
+			while(!pending.isEmpty()) {
+				mergeShard(target, pending.poll().join());
+			}
+		} else {
+			Sheet sheet = dataSetWb.getSheetAt(0);
+			// Skip the header of the table
+			int first = sheet.getFirstRowNum() + 1;
+			int last = sheet.getLastRowNum();
+			if(last >= first) {
+				mergeShard(target, pool.invoke(new RowRangeTask(sheet, first, last + 1, nMaps, consumer)));
+			}
+		}
+	}
+	
+	
+	/**
+	 * This method adds the products of a shard to the target. Chunks and products that are not in the target
+	 * yet are added in the order in which they were found in the data file. For products that are already in
+	 * the target, the weeks of the shard are copied, since these come from later lines in the data file.
+	 * Year views (see readDataUnified) always belong to a product of the last HashMap, so that one is merged
+	 * first. A year view that is new to the target is recreated on the product it was merged into.
+	 * @param target
+	 * @param shard
+	 */
+	private static void mergeShard(ArrayList<HashMap<String, HashMap<String, Product>>> target,
+			ArrayList<HashMap<String, HashMap<String, Product>>> shard) {
+		// The products of the shard that were merged into a product of the target
+		IdentityHashMap<Product, Product> mergedInto = new IdentityHashMap<Product, Product>();
+		for(int m = target.size() - 1; m >= 0; m--) {
+			HashMap<String, HashMap<String, Product>> data = target.get(m);
+			for(Map.Entry<String, HashMap<String, Product>> chunk : shard.get(m).entrySet()) {
+				HashMap<String, Product> chunkMap = data.get(chunk.getKey());
+				if(chunkMap == null) {
+					// Products are added one by one, so the HashMap grows the same way as when reading sequentially
+					chunkMap = new HashMap<String, Product>();
+					data.put(chunk.getKey(), chunkMap);
+				}
+				for(Map.Entry<String, Product> product : chunk.getValue().entrySet()) {
+					Product existing = chunkMap.get(product.getKey());
+					Product source = product.getValue().getSource();
+					if(source != null) {
+						// The weeks of a year view are merged together with its combined product
+						if(existing == null) {
+							Product newSource = mergedInto.get(source);
+							chunkMap.put(product.getKey(), newSource == null ? product.getValue()
+									: newSource.createYearView(product.getValue().getYear(), product.getValue().getOffset()));
+						}
+					} else if(existing == null) {
+						chunkMap.put(product.getKey(), product.getValue());
 					} else {
-						// In this case something else is wrong
-						n.printStackTrace();
+						existing.mergeData(product.getValue());
+						mergedInto.put(product.getValue(), existing);
 					}
-				} catch (Exception e) {
-					e.printStackTrace();
-					throw new IllegalStateException("Something went wrong reading the big data file in line " + (i + 1));
 				}
 			}
-			i++;
 		}
-		toc = System.currentTimeMillis();
-		System.out.println("Saved data in " + (toc - tic)/1000 + " s");
+	}
+	
+	
+	/**
+	 * This method creates empty chunk HashMaps for a shard. A LinkedHashMap keeps the order in which the chunks
+	 * and products were found, which is needed to merge the shards in the same order as reading sequentially.
+	 * @param nMaps
+	 * @return
+	 */
+	private static ArrayList<HashMap<String, HashMap<String, Product>>> newShard(int nMaps) {
+		ArrayList<HashMap<String, HashMap<String, Product>>> shard = new ArrayList<HashMap<String, HashMap<String, Product>>>(nMaps);
+		for(int m = 0; m < nMaps; m++) {
+			shard.add(new LinkedHashMap<String, HashMap<String, Product>>());
+		}
+		return shard;
+	}
+	
+	
+	/**
+	 * This task reads a range of rows of the workbook. Large ranges are split in two halves that are read in
+	 * parallel, after which the second half is merged into the first half.
+	 */
+	private class RowRangeTask extends RecursiveTask<ArrayList<HashMap<String, HashMap<String, Product>>>> {
+		private static final long serialVersionUID = 1L;
+		private Sheet sheet;
+		private int lb;
+		private int ub;
+		private int nMaps;
+		private RecordConsumer consumer;
 		
+		RowRangeTask(Sheet sheet, int lb, int ub, int nMaps, RecordConsumer consumer) {
+			this.sheet = sheet;
+			this.lb = lb;
+			this.ub = ub;
+			this.nMaps = nMaps;
+			this.consumer = consumer;
+		}
 		
-		tic = System.currentTimeMillis();
-		int[] cleaningResults = new int[3];
-		for(HashMap<String,Product> chunk : data.values()) {
-			for(Product product : chunk.values()) {
-				int[] modCount = product.cleanTimeSeriesData();
-				cleaningResults[0] += modCount[0];
-				cleaningResults[1] += modCount[1];
-				cleaningResults[2] += modCount[2];
+		@Override
+		protected ArrayList<HashMap<String, HashMap<String, Product>>> compute() {
+			if(ub - lb <= BLOCK_SIZE) {
+				ArrayList<HashMap<String, HashMap<String, Product>>> shard = newShard(nMaps);
+				CellDecoder decoder = new CellDecoder(9);
+				SalesRecord record = new SalesRecord();
+				for(int r = lb; r < ub; r++) {
+					Row row = sheet.getRow(r);
+					if(row != null) {
+						handleLine(row, r, decoder, record, shard, consumer);
+					}
+				}
+				return shard;
 			}
+			int mid = (lb + ub) >>> 1;
+			RowRangeTask first = new RowRangeTask(sheet, lb, mid, nMaps, consumer);
+			first.fork();
+			ArrayList<HashMap<String, HashMap<String, Product>>> second = new RowRangeTask(sheet, mid, ub, nMaps, consumer).compute();
+			ArrayList<HashMap<String, HashMap<String, Product>>> result = first.join();
+			mergeShard(result, second);
+			return result;
 		}
-		toc = System.currentTimeMillis();
-		System.out.println("Data cleaned in " + (toc - tic)/1000 + " s");
-		System.out.println("Sales: " + cleaningResults[0]);
-		System.out.println("Volume: " + cleaningResults[1]);
-		System.out.println("Prices: " + cleaningResults[2]);
-		
+	}
+	
+	
+	/**
+	 * This task stores a block of streamed lines in a new shard
+	 */
+	private class LineBlockTask implements Callable<ArrayList<HashMap<String, HashMap<String, Product>>>> {
+		private String[][] lines;
+		private int[] rowNums;
+		private int size;
+		private int nMaps;
+		private RecordConsumer consumer;
 		
-		//-------------------------------------
-		// This code is used to calculate the distribution properties
-		//-------------------------------------
+		LineBlockTask(String[][] lines, int[] rowNums, int size, int nMaps, RecordConsumer consumer) {
+			this.lines = lines;
+			this.rowNums = rowNums;
+			this.size = size;
+			this.nMaps = nMaps;
+			this.consumer = consumer;
+		}
 		
-		int count = 0;
-		tic = System.currentTimeMillis();
-		for(HashMap<String,Product> chunk : data.values()) {
-			for(Product product : chunk.values()) {
-				count++;
-				product.calculateDistributionProperties();
+		@Override
+		public ArrayList<HashMap<String, HashMap<String, Product>>> call() {
+			ArrayList<HashMap<String, HashMap<String, Product>>> shard = newShard(nMaps);
+			SalesRecord record = new SalesRecord();
+			for(int i = 0; i < size; i++) {
+				handleLine(lines[i], rowNums[i], record, shard, consumer);
 			}
+			return shard;
 		}
-		toc = System.currentTimeMillis();
-		System.out.println("Calculated distribution properties of " + count +" products in " + (toc - tic) + " ms");
+	}
+	
+	
+	/**
+	 * This method handles one line of the workbook
+	 * @param row
+	 * @param i the index of the line in the data file
+	 * @param decoder the decoder of the sheet
+	 * @param record
+	 * @param target
+	 * @param consumer
+	 * @throws IllegalStateException if the line can not be read
+	 */
+	private void handleLine(Row row, int i, CellDecoder decoder, SalesRecord record, ArrayList<HashMap<String, HashMap<String, Product>>> target,
+			RecordConsumer consumer) throws IllegalStateException {
+		try {
+			if(fillRecord(row, decoder, record)) {
+				consumer.accept(record, target);
+			} else {
+				// In this case, a cell is empty. We just skip the line in the database
+				System.err.println("In line " + (i + 1) + " is a missing value. Did not insert this line in the data set.");
+			}
+		} catch (NullPointerException n) {
+			// In this case something else is missing, like the relevance score of the chunk
+			n.printStackTrace();
+		} catch (Exception e) {
+			e.printStackTrace();
+			throw new IllegalStateException("Something went wrong reading the big data file in line " + (i + 1));
+		}
+	}
+	
+	
+	/**
+	 * This method handles one streamed line
+	 * @param values the raw cell values of the line
+	 * @param rowNum the index of the line in the data file
+	 * @param record
+	 * @param target
+	 * @param consumer
+	 * @throws IllegalStateException if the line can not be read
+	 */
+	private void handleLine(String[] values, int rowNum, SalesRecord record, ArrayList<HashMap<String, HashMap<String, Product>>> target,
+			RecordConsumer consumer) throws IllegalStateException {
+		try {
+			if(fillRecord(values, record)) {
+				consumer.accept(record, target);
+			} else {
+				// In this case, a cell is empty. We just skip the line in the database
+				System.err.println("In line " + (rowNum + 1) + " is a missing value. Did not insert this line in the data set.");
+			}
+		} catch (NullPointerException n) {
+			// In this case something else is missing, like the relevance score of the chunk
+			n.printStackTrace();
+		} catch (Exception e) {
+			e.printStackTrace();
+			throw new IllegalStateException("Something went wrong reading the big data file in line " + (rowNum + 1));
+		}
+	}
+	
+	
+	/**
+	 * This method reads one line of the workbook into the given record
+	 * @param row
+	 * @param decoder the decoder of the sheet
+	 * @param record
+	 * @return false if one of the required values is missing
+	 */
+	private boolean fillRecord(Row row, CellDecoder decoder, SalesRecord record) {
+		// All columns except the shop and the price are required
+		if(!decoder.hasValues(row, 0, 1, 2, 3, 5, 6, 7)) {
+			return false;
+		}
+		// Numbers can be stored as text or as numeric cells, the decoder reads both
+		record.year = decoder.getInt(row, 0);
+		record.week = decoder.getInt(row, 1);
+		record.qtySales = (int) Math.max(decoder.getDouble(row, 2),0);
+		// The names are replaced by their codes, so that the Strings of the line can be thrown away
+		SymbolTable symbols = Product.getSymbolTable();
+		record.productGroup = symbols.code(decoder.getString(row, 3));
+		// The shop is only needed when a new product is created
+		record.shop = symbols.code(decoder.getString(row, 4));
+		record.chunk = symbols.code(decoder.getString(row, 5));
+		record.sizeGroup = symbols.code(convertSizeFormat(decoder.getString(row, 6)));
+		record.averageM3 = Math.max(decoder.getDouble(row, 7),0);
+		if (decoder.hasValues(row, 8)) {
+			record.averagePrice = Math.max(decoder.getDouble(row, 8),0);
+		}else {
+			record.averagePrice = 0; 
+		}
+		return true;
+	}
+	
+	
+	/**
+	 * This method reads one streamed line into the given record
+	 * @param values the raw cell values of the line
+	 * @param record
+	 * @return false if one of the required values is missing
+	 */
+	private boolean fillRecord(String[] values, SalesRecord record) {
+		// All columns except the shop and the price are required
+		for(int c = 0; c < 8; c++) {
+			if(c != 4 && values[c] == null) {
+				return false;
+			}
+		}
+		// Numeric values are stored as text, so a year can either be 2018 or 2018.0
+		record.year = CellDecoder.parseInt(values[0]);
+		record.week = CellDecoder.parseInt(values[1]);
+		record.qtySales = (int) Math.max(Double.parseDouble(values[2]),0);
+		SymbolTable symbols = Product.getSymbolTable();
+		record.productGroup = symbols.code(values[3]);
+		record.shop = symbols.code(values[4]);
+		record.chunk = symbols.code(values[5]);
+		record.sizeGroup = symbols.code(convertSizeFormat(values[6]));
+		record.averageM3 = Math.max(Double.parseDouble(values[7]),0);
+		if (values[8] != null) {
+			record.averagePrice = Math.max(Double.parseDouble(values[8]),0);
+		}else {
+			record.averagePrice = 0; 
+		}
+		return true;
+	}
+	
+	
+	/**
+	 * This method adds the time series data of a record to the right Product in the given data structure.
+	 * If the Product does not exist yet, it is created first.
+	 * @param target the chunk HashMaps for one year or for the combined years
+	 * @param record
+	 * @param relevanceData
+	 * @param sizeGroupCost
+	 * @param nWeeks the number of weeks of a combined Product. Use 0 to create Products that hold one year
+	 * @return the Product to which the record was added
+	 */
+	private Product storeRecord(HashMap<String, HashMap<String, Product>> target, SalesRecord record,
+			HashMap<String, Double> relevanceData, HashMap<String, Double> sizeGroupCost, int nWeeks) {
+		// Since there are chunks that are named the same, but belong to different product groups,
+		// we differentiate between all chunks based on a chunk_productGroup key
+		SymbolTable symbols = Product.getSymbolTable();
+		String chunkKey = symbols.chunkKey(record.chunk, record.productGroup);
+		String sizeGroup = symbols.name(record.sizeGroup);
 		
-		return data;
+		// Check whether or not the Product already exists in the result data structure.
+		// If it does, just add the time series data to the product.
+		// If it does not, create a new Product object and add it to results
+		HashMap<String, Product> chunkMap = target.get(chunkKey);
+		Product product = chunkMap != null ? chunkMap.get(sizeGroup) : null;
+		if(product == null) {
+			// Find secondary data in order to create a new product
+			double storageCost = sizeGroupCost.get(sizeGroup);
+			double relevance = relevanceData.get(symbols.name(record.chunk));
+			if(nWeeks > 0) {
+				product = new Product(record.shop, record.productGroup, record.chunk, record.sizeGroup, storageCost, relevance, nWeeks);
+			} else {
+				product = new Product(record.shop, record.productGroup, record.chunk, record.sizeGroup, record.year, storageCost, relevance);
+			}
+			if(chunkMap == null) {
+				// In this case, we also need to add the chunk to the big HashMap
+				chunkMap = new HashMap<String, Product>();
+				target.put(chunkKey, chunkMap);
+			}
+			chunkMap.put(sizeGroup, product);
+		}
+		// Add time series data
+		product.addSale(record.week, record.qtySales);
+		product.addAverageM3(record.week, record.averageM3);
+		product.addAveragePrice(record.week, record.averagePrice);
+		return product;
 	}
+	
+	
+	/**
+	 * This class holds the values of one line of the big data file. The names are stored as codes of the
+	 * SymbolTable of the Product class.
+	 */
+	private static class SalesRecord {
+		int year;
+		int week;
+		int qtySales;
+		int productGroup;
+		int shop;
+		int chunk;
+		int sizeGroup;
+		double averageM3;
+		double averagePrice;
 		
-
+		SalesRecord copy() {
+			SalesRecord copy = new SalesRecord();
+			copy.year = year;
+			copy.week = week;
+			copy.qtySales = qtySales;
+			copy.productGroup = productGroup;
+			copy.shop = shop;
+			copy.chunk = chunk;
+			copy.sizeGroup = sizeGroup;
+			copy.averageM3 = averageM3;
+			copy.averagePrice = averagePrice;
+			return copy;
+		}
+	}
+	
+	
+	/**
+	 * A RecordConsumer decides where each line of the big data file is stored
+	 */
+	private interface RecordConsumer {
+		/**
+		 * @param record the line
+		 * @param target the chunk HashMaps in which the line can be stored
+		 */
+		void accept(SalesRecord record, ArrayList<HashMap<String, HashMap<String, Product>>> target);
+	}
+	
 	
 	/**
 	 * Since sometimes the size is denoted as 2XS and sometimes as XXS, we convert everything to XXS format
 	 * @param size
 	 * @return
 	 */
-	private String convertSizeFormat(String size) {
+	private static String convertSizeFormat(String size) {
 		String result = "";
 		// First check if the size begins with a digit
 		if(Character.isDigit(size.charAt(0))) {
@@ -509,27 +1179,4 @@ public class CustomDataReader {
 		return result;
 	}
 	
-	
-	
-	/**
-	 * Since not all values in the data set are of the expected type, this method converts them all to String
-	 * @param cell
-	 * @return String representation of the cell
-	 */
-	private String getCellValueAsString(Cell cell) {
-		String result;
-		switch (cell.getCellType()) {
-		case STRING:
-			result = cell.getStringCellValue();
-			break;
-		case NUMERIC:
-			result = String.valueOf(cell.getNumericCellValue());
-			break;
-		default:
-			result = cell.getStringCellValue();
-			break;
-		}
-		return result;
-	}
-	
 }
@@ -0,0 +1,120 @@
+import java.util.Random;
+
+/**
+ * The DemandModel is the distribution of the random demand of the simulation. It is chosen once, when the
+ * SimulationConfig is made, so the loops over the products call the draw method of one model instead of
+ * checking usePlusXInSales and usePoisson for every product in every week.
+ */
+public enum DemandModel {
+	/** The normal distribution around the forecast, pullRandomSales */
+	NORMAL("normal") {
+		@Override
+		public int draw(Product product, int week, DemandSampler sampler) {
+			return product.pullRandomSales(week, sampler);
+		}
+
+		@Override
+		public int draw(Product product, int week, Random r) {
+			return product.pullRandomSales(week, r);
+		}
+	},
+	/** The old option of the normal distribution plus the mean of the data, pullRandomSalesFloris */
+	PLUS_X("plusx") {
+		@Override
+		public int draw(Product product, int week, DemandSampler sampler) {
+			return product.pullRandomSalesFloris(week, sampler);
+		}
+
+		@Override
+		public int draw(Product product, int week, Random r) {
+			return product.pullRandomSalesFloris(week, r);
+		}
+	},
+	/** The Poisson distribution with the forecast as rate, pullRandomSalesPoisson */
+	POISSON("poisson") {
+		@Override
+		public int draw(Product product, int week, DemandSampler sampler) {
+			return product.pullRandomSalesPoisson(week, sampler);
+		}
+
+		@Override
+		public int draw(Product product, int week, Random r) {
+			return product.pullRandomSalesPoisson(week, r);
+		}
+	};
+
+	private final String name;
+
+	private DemandModel(String name) {
+		this.name = name;
+	}
+
+	/**
+	 * This method gives the model of the old settings, usePlusXInSales goes before usePoisson
+	 * @param usePlusXInSales
+	 * @param usePoisson
+	 * @return
+	 */
+	public static DemandModel of(boolean usePlusXInSales, boolean usePoisson) {
+		if (usePlusXInSales) {
+			return PLUS_X;
+		}
+		return usePoisson ? POISSON : NORMAL;
+	}
+
+	/**
+	 * This method draws the demand of a product for one week
+	 * @param product
+	 * @param week the week after the data, so week 0 means week 1 of 2020
+	 * @param sampler
+	 * @return
+	 */
+	public abstract int draw(Product product, int week, DemandSampler sampler);
+
+	/**
+	 * This method draws the demand of a product for one week with a Random object
+	 * @param product
+	 * @param week the week after the data, so week 0 means week 1 of 2020
+	 * @param r
+	 * @return
+	 */
+	public abstract int draw(Product product, int week, Random r);
+
+	/**
+	 * This method draws the demand of all products of the store for one week, in the order of the store.
+	 * The demand of product (i, s) is written to demand[store.index(i, s)]. Products that are not present
+	 * get a demand of 0 and do not use any random numbers.
+	 * @param store
+	 * @param week the week after the data, so week 0 means week 1 of 2020
+	 * @param sampler
+	 * @param demand the array to fill, with a length of at least nChunks * nSizes
+	 */
+	public void fillDemand(ProductStore store, int week, DemandSampler sampler, int[] demand) {
+		int n = store.getNChunks();
+		int size = store.getNSizes();
+		for (int i = 0; i < n; i++) {
+			for (int s = 0; s < size; s++) {
+				int p = store.index(i, s);
+				demand[p] = store.isPresent(i, s) ? draw(store.product(i, s), week, sampler) : 0;
+			}
+		}
+	}
+
+	/**
+	 * This method calculates the expected value of the random demand of a product for one week, see
+	 * Product.expectedSales
+	 * @param product
+	 * @param week the week after the data, so week 0 means week 1 of 2020
+	 * @return
+	 */
+	public double expectedSales(Product product, int week) {
+		return product.expectedSales(week, this == PLUS_X, this == POISSON);
+	}
+
+	/**
+	 * @return the name of the model, as used in the names of files
+	 */
+	public String getName() {
+		return name;
+	}
+}
@@ -0,0 +1,183 @@
+import java.util.SplittableRandom;
+import java.util.function.DoubleSupplier;
+
+/**
+ * The DemandSampler draws the random demand of the simulation. It is built on a SplittableRandom instead of
+ * java.util.Random: Random.nextGaussian is synchronized and uses the polar method, which needs on average
+ * 2.5 uniform numbers and a logarithm and square root per value. This class draws normal values with the
+ * ziggurat method of Marsaglia and Tsang (2000), which needs one 64 bit number, one comparison and one
+ * multiplication for about 99% of the values.
+ *
+ * A sampler is meant to be used by one thread. For parallel simulations, split() gives a new sampler with
+ * its own independent stream of numbers. Since splitting is deterministic, the numbers of every stream only
+ * depend on the seed of the first sampler and on the order of the splits, not on the order in which the
+ * threads run.
+ *
+ * For antithetic variates, antitheticPair gives two samplers with the same stream of numbers, of which the
+ * second mirrors the first: its normal values are negated and its uniform numbers are 1 - u. Both draw
+ * their Poisson values by inversion, so a high value of the first sampler goes with a low value of the
+ * second. Splitting a sampler of a pair gives a sampler of the same kind, so the k-th splits of the two
+ * samplers are again a pair.
+ */
+public class DemandSampler {
+	// The number of layers of the ziggurat
+	private static final int LAYERS = 128;
+	// The start of the tail of the normal distribution, the right edge of the lowest layer
+	private static final double R = 3.442619855899;
+	// The area of each layer
+	private static final double V = 9.91256303526217e-3;
+	// 2^31, the values of the layers are scaled to 32 bit integers
+	private static final double M = 2147483648.0;
+	// A value of layer i is accepted immediately if its absolute value is below k[i]
+	private static final long[] K = new long[LAYERS];
+	// Multiplying a 32 bit integer with w[i] gives a value in layer i
+	private static final double[] W = new double[LAYERS];
+	// The density at the upper edge of each layer
+	private static final double[] F = new double[LAYERS];
+
+	static {
+		double dn = R;
+		double tn = dn;
+		double q = V / Math.exp(-0.5 * dn * dn);
+		K[0] = (long) ((dn / q) * M);
+		K[1] = 0;
+		W[0] = q / M;
+		W[LAYERS - 1] = dn / M;
+		F[0] = 1.0;
+		F[LAYERS - 1] = Math.exp(-0.5 * dn * dn);
+		for(int i = LAYERS - 2; i >= 1; i--) {
+			dn = Math.sqrt(-2.0 * Math.log(V / dn + Math.exp(-0.5 * dn * dn)));
+			K[i + 1] = (long) ((dn / tn) * M);
+			tn = dn;
+			F[i] = Math.exp(-0.5 * dn * dn);
+			W[i] = dn / M;
+		}
+	}
+
+	private SplittableRandom random;
+	// The uniform numbers for the PoissonSampler
+	private DoubleSupplier uniform;
+	// Draw the Poisson values by inversion
+	private boolean inversion = false;
+	// Mirror the values, for the second sampler of an antithetic pair
+	private boolean antithetic = false;
+
+	/**
+	 * Constructor for the DemandSampler
+	 * @param seed
+	 */
+	public DemandSampler(long seed) {
+		this(new SplittableRandom(seed));
+	}
+
+	private DemandSampler(SplittableRandom random) {
+		this.random = random;
+		this.uniform = random::nextDouble;
+	}
+
+	/**
+	 * This method creates a pair of samplers for antithetic variates, see the description of the class
+	 * @param seed
+	 * @return the sampler and its mirrored sampler
+	 */
+	public static DemandSampler[] antitheticPair(long seed) {
+		DemandSampler[] pair = {new DemandSampler(seed), new DemandSampler(seed)};
+		pair[0].inversion = true;
+		pair[1].inversion = true;
+		pair[1].antithetic = true;
+		return pair;
+	}
+
+
+	/**
+	 * This method creates a new sampler with its own stream of numbers, for example for another thread or
+	 * another replication of the simulation
+	 * @return
+	 */
+	public DemandSampler split() {
+		DemandSampler sampler = new DemandSampler(random.split());
+		sampler.inversion = inversion;
+		sampler.antithetic = antithetic;
+		return sampler;
+	}
+
+	/**
+	 * This method draws a value of the standard normal distribution with the ziggurat method
+	 * @return
+	 */
+	public double nextGaussian() {
+		long bits = random.nextLong();
+		// The lowest 7 bits choose the layer, the highest 32 bits give the value with its sign
+		int i = (int) (bits & (LAYERS - 1));
+		long hz = bits >> 32;
+		double x = Math.abs(hz) < K[i] ? hz * W[i] : gaussianSlow(hz, i);
+		// The distribution is symmetric, so the mirrored value has the same distribution
+		return antithetic ? -x : x;
+	}
+
+	/**
+	 * This method handles the values that are not inside the rectangle of their layer: they are either in
+	 * the tail of the distribution (layer 0) or in the part of the layer that lies above the density
+	 * @param hz
+	 * @param i
+	 * @return
+	 */
+	private double gaussianSlow(long hz, int i) {
+		while(true) {
+			double x = hz * W[i];
+			if(i == 0) {
+				// Draw from the tail beyond R with the method of Marsaglia (1964)
+				double y;
+				do {
+					x = -Math.log(1.0 - random.nextDouble()) / R;
+					y = -Math.log(1.0 - random.nextDouble());
+				} while(y + y < x * x);
+				return hz > 0 ? R + x : -R - x;
+			}
+			if(F[i] + random.nextDouble() * (F[i - 1] - F[i]) < Math.exp(-0.5 * x * x)) {
+				return x;
+			}
+			long bits = random.nextLong();
+			i = (int) (bits & (LAYERS - 1));
+			hz = bits >> 32;
+			if(Math.abs(hz) < K[i]) {
+				return hz * W[i];
+			}
+		}
+	}
+
+	/**
+	 * @return a uniform number between 0 (inclusive) and 1 (exclusive), or between 0 (exclusive) and 1
+	 * (inclusive) for a mirrored sampler
+	 */
+	public double nextDouble() {
+		double u = random.nextDouble();
+		return antithetic ? 1.0 - u : u;
+	}
+
+	/**
+	 * This method draws a value of the Poisson distribution with the PoissonSampler
+	 * @param mean
+	 * @return
+	 */
+	public int nextPoisson(double mean) {
+		if(inversion) {
+			return PoissonSampler.inverse(mean, nextDouble());
+		}
+		return PoissonSampler.sample(mean, uniform);
+	}
+
+
+	/**
+	 * This method draws the demand of all products of the store for one week with the DemandModel of the
+	 * settings, see DemandModel.fillDemand
+	 * @param store
+	 * @param week the week after the data, so week 0 means week 1 of 2020
+	 * @param usePlusXInSales use pullRandomSalesFloris
+	 * @param usePoisson use pullRandomSalesPoisson (if usePlusXInSales is false)
+	 * @param demand the array to fill, with a length of at least nChunks * nSizes
+	 */
+	public void fillDemand(ProductStore store, int week, boolean usePlusXInSales, boolean usePoisson, int[] demand) {
+		DemandModel.of(usePlusXInSales, usePoisson).fillDemand(store, week, this, demand);
+	}
+}
@@ -0,0 +1,125 @@
+/**
+ * The ForecastTable holds the forecast of a fitted Product for each week after its data. Week 0 is the first
+ * week after the last week of data (so week 1 of 2020 for the combined data of 2018 and 2019). The table
+ * contains the values that getPredictedDemand and the pullRandomSales methods of the Product would otherwise
+ * calculate again for every call:
+ * - the mean: (level + (nWeeks + week) * trend) * seasonalIndex, the expected sales of the week
+ * - the predicted demand: the rounded mean, at least 0
+ * - the Poisson rate: cleanedMean * (level + (nWeeks + week) * trend), the rate of pullRandomSalesPoisson
+ * - the normal location and scale: mean * cleanedMean and mean * cleanedStdev, the normal distribution of the
+ *   sales of pullRandomSales before rounding and truncating at 0
+ *
+ * The values are calculated in exactly the same way as the methods of the Product did, so using the table
+ * does not change any results. The arrays can be read directly by loops over many products, but should
+ * not be changed. A table never changes after it is created, so it can be used by multiple threads.
+ */
+public class ForecastTable {
+	private final int horizon;
+	private final double[] mean;
+	private final int[] predictedDemand;
+	private final double[] poissonRate;
+	private final double[] normalLocation;
+	private final double[] normalScale;
+
+	/**
+	 * Constructor for the ForecastTable
+	 * @param level the level of the fitted product
+	 * @param trend the trend of the fitted product
+	 * @param seasonalIndices the seasonal index of each season
+	 * @param nWeeks the number of weeks of data of the product
+	 * @param cleanedMean the mean of the cleaned sales
+	 * @param cleanedStdev the standard deviation of the cleaned sales
+	 * @param horizon the number of weeks of the table
+	 */
+	public ForecastTable(double level, double trend, double[] seasonalIndices, int nWeeks, double cleanedMean,
+			double cleanedStdev, int horizon) {
+		this.horizon = horizon;
+		int nSeasons = seasonalIndices.length;
+		mean = new double[horizon];
+		predictedDemand = new int[horizon];
+		poissonRate = new double[horizon];
+		normalLocation = new double[horizon];
+		normalScale = new double[horizon];
+		for(int week = 0; week < horizon; week++) {
+			double levelAndTrend = level + (nWeeks + week) * trend;
+			mean[week] = levelAndTrend * seasonalIndices[(nWeeks + week) % nSeasons];
+			predictedDemand[week] = Math.max(0, (int) Math.round(mean[week]));
+			poissonRate[week] = cleanedMean * levelAndTrend;
+			normalLocation[week] = mean[week] * cleanedMean;
+			normalScale[week] = mean[week] * cleanedStdev;
+		}
+	}
+
+
+	/**
+	 * @param week
+	 * @return true if the table contains the week
+	 */
+	public boolean contains(int week) {
+		return week >= 0 && week < horizon;
+	}
+
+	/**
+	 * @param week goes from 0 to horizon - 1
+	 * @return the expected sales of the week
+	 */
+	public double getMean(int week) {
+		return mean[week];
+	}
+
+	/**
+	 * @param week goes from 0 to horizon - 1
+	 * @return the expected sales of the week rounded to an integer, at least 0
+	 */
+	public int getPredictedDemand(int week) {
+		return predictedDemand[week];
+	}
+
+	/**
+	 * @param week goes from 0 to horizon - 1
+	 * @return the rate of the Poisson distributed sales of the week
+	 */
+	public double getPoissonRate(int week) {
+		return poissonRate[week];
+	}
+
+	/**
+	 * @param week goes from 0 to horizon - 1
+	 * @return the mean of the normal distributed sales of the week
+	 */
+	public double getNormalLocation(int week) {
+		return normalLocation[week];
+	}
+
+	/**
+	 * @param week goes from 0 to horizon - 1
+	 * @return the standard deviation of the normal distributed sales of the week
+	 */
+	public double getNormalScale(int week) {
+		return normalScale[week];
+	}
+
+	public int getHorizon() {
+		return horizon;
+	}
+
+	public double[] getMeans() {
+		return mean;
+	}
+
+	public int[] getPredictedDemands() {
+		return predictedDemand;
+	}
+
+	public double[] getPoissonRates() {
+		return poissonRate;
+	}
+
+	public double[] getNormalLocations() {
+		return normalLocation;
+	}
+
+	public double[] getNormalScales() {
+		return normalScale;
+	}
+}
@@ -0,0 +1,181 @@
+import java.util.Random;
+import java.util.function.DoubleSupplier;
+
+/**
+ * The PoissonSampler draws Poisson distributed values. Multiplying uniform numbers until the product drops
+ * below exp(-mean) (the method of Knuth) needs mean + 1 uniform numbers per value, and always gives 0 once
+ * exp(-mean) is rounded to 0, which happens for a mean above about 745. Instead, this class uses:
+ * - inversion for a mean below 10: the cumulative probabilities are added until they pass one uniform number
+ * - transformed rejection with squeeze (PTRS, Hormann 1993) for larger means: on average about 1.1 pairs of
+ *   uniform numbers per value, whatever the mean
+ *
+ * The uniform numbers come from a DoubleSupplier, so any generator can be used (like Random::nextDouble or
+ * SplittableRandom::nextDouble). The methods are static and can be used by multiple threads, as long as each
+ * thread uses its own generator.
+ */
+public class PoissonSampler {
+	// From this mean on, transformed rejection is used
+	private static final double PTRS_THRESHOLD = 10.0;
+	private static final double LOG_SQRT_2PI = 0.5 * Math.log(2 * Math.PI);
+	// Coefficients of the Stirling series of log(gamma(x))
+	private static final double[] STIRLING = {8.333333333333333e-02, -2.777777777777778e-03, 7.936507936507937e-04,
+			-5.952380952380952e-04, 8.417508417508418e-04, -1.917526917526918e-03, 6.410256410256410e-03,
+			-2.955065359477124e-02, 1.796443723688307e-01, -1.39243221690590e+00};
+
+	/**
+	 * This method draws a Poisson distributed value
+	 * @param mean the mean of the distribution. A mean of 0 or less (or NaN) always gives 0
+	 * @param r the generator of the uniform numbers
+	 * @return
+	 */
+	public static int sample(double mean, Random r) {
+		return sample(mean, (DoubleSupplier) r::nextDouble);
+	}
+
+	/**
+	 * This method draws a Poisson distributed value
+	 * @param mean the mean of the distribution. A mean of 0 or less (or NaN) always gives 0
+	 * @param uniform gives uniform numbers between 0 (inclusive) and 1 (exclusive)
+	 * @return
+	 */
+	public static int sample(double mean, DoubleSupplier uniform) {
+		if(!(mean > 0)) {
+			return 0;
+		}
+		if(mean < PTRS_THRESHOLD) {
+			return inversion(mean, uniform);
+		}
+		return transformedRejection(mean, uniform);
+	}
+
+
+	/**
+	 * This method draws a value by searching the cumulative distribution from 0 upwards. This takes about
+	 * mean + 1 steps, but only one uniform number.
+	 * @param mean
+	 * @param uniform
+	 * @return
+	 */
+	private static int inversion(double mean, DoubleSupplier uniform) {
+		return inversion(mean, uniform.getAsDouble());
+	}
+
+	private static int inversion(double mean, double u) {
+		double p = Math.exp(-mean);
+		double cumulative = p;
+		int k = 0;
+		// Because of rounding, the cumulative probability can stay just below u. The loop then ends when p is 0.
+		while(u > cumulative && p > 0) {
+			k++;
+			p *= mean / k;
+			cumulative += p;
+		}
+		return k;
+	}
+
+	/**
+	 * This method calculates the value of the Poisson distribution that belongs to a uniform number: the
+	 * smallest k with P(X <= k) >= u. A larger u never gives a smaller value, so u and 1 - u give antithetic
+	 * values. For a mean of at least 10, the search starts at the mode instead of at 0, so it takes about
+	 * 10 times the square root of the mean steps instead of the mean.
+	 * @param mean the mean of the distribution. A mean of 0 or less (or NaN) always gives 0
+	 * @param u between 0 and 1
+	 * @return
+	 */
+	public static int inverse(double mean, double u) {
+		if(!(mean > 0)) {
+			return 0;
+		}
+		if(mean < PTRS_THRESHOLD) {
+			return inversion(mean, u);
+		}
+		int mode = (int) Math.floor(mean);
+		double pMode = Math.exp(-mean + mode * Math.log(mean) - logGamma(mode + 1));
+		// P(X <= mode), the probabilities below the mode are added until they are negligible
+		double cumulative = pMode;
+		double p = pMode;
+		for(int k = mode; k > 0 && p > 1e-17 * cumulative; k--) {
+			p *= k / mean;
+			cumulative += p;
+		}
+		int k = mode;
+		p = pMode;
+		if(u <= cumulative) {
+			// Search downwards, while P(X <= k - 1) is still at least u
+			while(k > 0 && u <= cumulative - p) {
+				cumulative -= p;
+				p *= k / mean;
+				k--;
+			}
+			return k;
+		}
+		while(u > cumulative && p > 0) {
+			k++;
+			p *= mean / k;
+			cumulative += p;
+		}
+		return k;
+	}
+
+	/**
+	 * This method draws a value with the PTRS algorithm of W. Hormann, "The transformed rejection method for
+	 * generating Poisson random variables" (1993). Only use it for a mean of at least 10.
+	 * @param mean
+	 * @param uniform
+	 * @return
+	 */
+	private static int transformedRejection(double mean, DoubleSupplier uniform) {
+		double sqrtMean = Math.sqrt(mean);
+		double logMean = Math.log(mean);
+		double b = 0.931 + 2.53 * sqrtMean;
+		double a = -0.059 + 0.02483 * b;
+		double logInvAlpha = Math.log(1.1239 + 1.1328 / (b - 3.4));
+		double vr = 0.9277 - 3.6224 / (b - 2);
+		while(true) {
+			double u = uniform.getAsDouble() - 0.5;
+			double v = uniform.getAsDouble();
+			double us = 0.5 - Math.abs(u);
+			double k = Math.floor((2 * a / us + b) * u + mean + 0.43);
+			// Quick acceptance, which holds for most pairs
+			if(us >= 0.07 && v <= vr) {
+				return (int) k;
+			}
+			if(k < 0 || (us < 0.013 && v > us)) {
+				continue;
+			}
+			if(Math.log(v) + logInvAlpha - Math.log(a / (us * us) + b) <= -mean + k * logMean - logGamma(k + 1)) {
+				return (int) k;
+			}
+		}
+	}
+
+
+	/**
+	 * This method calculates log(gamma(x)) for x > 0 with a Stirling series. For x below 7 the series is
+	 * calculated for x + n, and log(x + n - 1) ... log(x) is subtracted afterwards.
+	 * @param x
+	 * @return
+	 */
+	static double logGamma(double x) {
+		if(x == 1.0 || x == 2.0) {
+			return 0.0;
+		}
+		int n = 0;
+		double x0 = x;
+		if(x < 7.0) {
+			n = (int) (7 - x);
+			x0 = x + n;
+		}
+		double x2 = 1.0 / (x0 * x0);
+		double series = STIRLING[9];
+		for(int k = 8; k >= 0; k--) {
+			series = series * x2 + STIRLING[k];
+		}
+		double result = series / x0 + LOG_SQRT_2PI + (x0 - 0.5) * Math.log(x0) - x0;
+		for(int k = 1; k <= n; k++) {
+			x0 -= 1.0;
+			result -= Math.log(x0);
+		}
+		return result;
+	}
+}
@@ -1,4 +1,9 @@
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 import java.util.Arrays;
+import java.util.HashMap;
 import java.util.Random;
 import java.util.stream.IntStream;
 
@@ -16,15 +21,40 @@ import java.util.stream.IntStream;
  * @relevanceScore is a positive double between zero and one representing the relevance of the
  * product
  * @year the year in which the data was obtained
+ * The names (shop, productGroup, chunk and sizeGroup) are stored as codes of the SymbolTable of the
+ * Product class, so that every name is only kept in memory once.
  */
 public class Product {
 	private int[] weeklySales;
 	private double[] weeklyAverageM3;
 	private double[] weeklyAveragePrice;
-	private String shop;
-	private String productGroup;
-	private String chunk;
-	private String sizeGroup;
+	// The values as they were read, before cleaning. These are null until the product is cleaned.
+	private int[] rawSales;
+	private double[] rawAverageM3;
+	private double[] rawAveragePrice;
+	// A view shares the arrays of the combined product it was created from (a year view) or of a ProductStore.
+	// Its viewWeeks weeks start at offset; viewWeeks is 0 if the product has its own arrays.
+	private Product source;
+	private int offset = 0;
+	private int viewWeeks = 0;
+	// The averages over all weeks, which are only calculated again when the weekly data has changed.
+	// modifications counts the changes of the weekly data, averagesVersion is its value for the averages.
+	private int modifications = 0;
+	private int averagesVersion = -1;
+	private double averageAverageM3;
+	private double averageAveragePrice;
+	// The forecast of the weeks after the data, created when the product is fitted
+	private ForecastTable forecast;
+	// The number of weeks of the forecast table, one year
+	public static final int FORECAST_WEEKS = 52;
+	// The names shared by all products
+	private static final SymbolTable symbols = new SymbolTable();
+	private static final int GENERAL_TOYS = symbols.code("General Toys");
+	
+	private int shop;
+	private int productGroup;
+	private int chunk;
+	private int sizeGroup;
 	private double unitStorageCost;
 	private double relevanceScore;
 	private int year;
@@ -36,6 +66,9 @@ public class Product {
 	
 	private int nWeeks;
 	private double[] seasonalIndices;
+	// The seasonal indices of a product in a ProductStore start at seasonalOffset in the array of the store
+	private int seasonalOffset = 0;
+	private boolean sharedSeasonalIndices = false;
 	private double[] cleanedSales;
 	private final int nSeasons = 52;
 	private double cleanedMean;
@@ -56,6 +89,17 @@ public class Product {
 	 */
 	public Product(String shop, String productGroup, String chunk, String sizeGroup, int year,
 			double unitStorageCost, double relevanceScore) {
+		this(symbols.code(shop), symbols.code(productGroup), symbols.code(chunk), symbols.code(sizeGroup), year,
+				unitStorageCost, relevanceScore);
+	}
+	
+	
+	/**
+	 * This constructor does the same as the constructor above, but takes the codes of the names in the
+	 * SymbolTable of the Product class.
+	 */
+	public Product(int shop, int productGroup, int chunk, int sizeGroup, int year,
+			double unitStorageCost, double relevanceScore) {
 		// Initialize all variables and arrays
 		this.chunk = chunk;
 		this.sizeGroup = sizeGroup;
@@ -90,6 +134,17 @@ public class Product {
 	 */
 	public Product(String shop, String productGroup, String chunk, String sizeGroup,
 			double unitStorageCost, double relevanceScore, int nWeeks) {
+		this(symbols.code(shop), symbols.code(productGroup), symbols.code(chunk), symbols.code(sizeGroup),
+				unitStorageCost, relevanceScore, nWeeks);
+	}
+	
+	
+	/**
+	 * This constructor does the same as the constructor above, but takes the codes of the names in the
+	 * SymbolTable of the Product class.
+	 */
+	public Product(int shop, int productGroup, int chunk, int sizeGroup,
+			double unitStorageCost, double relevanceScore, int nWeeks) {
 		this.chunk = chunk;
 		this.sizeGroup = sizeGroup;
 		this.shop = shop;
@@ -110,6 +165,13 @@ public class Product {
 		Arrays.fill(weeklyAveragePrice, 0.0);
 	}
 	
+	
+	/**
+	 * This constructor is only used to restore a product from a snapshot
+	 */
+	private Product() {
+	}
+	
 	/**
 	 * This method computes the variance between two sales data points. It assumes that
 	 * it is just a sample, so it divides by n-1 instead of n. 2020 is not taken into
@@ -138,6 +200,7 @@ public class Product {
 	 * of the Poisson distribution for the cleaned data
 	 */
 	public void calculateDistributionProperties() {
+		detach();
 		// Find the seasonal indices for each season
 		findSeasonalIndices();
 		// Deseasonalize the data
@@ -151,6 +214,7 @@ public class Product {
 		// calculate the mean of the cleaned data
 		cleanedMean = mean(cleanedSales);
 		cleanedStdev = stdev(cleanedSales, cleanedMean);
+		forecast = new ForecastTable(level, trend, seasonalIndices, nWeeks, cleanedMean, cleanedStdev, FORECAST_WEEKS);
 	}
 	
 	
@@ -162,9 +226,25 @@ public class Product {
 	 * - Secondly, take the average of the different seasonal indices found for the same periods. So
 	 * if both 2019 and 2018 data is present, there are two weeks 0. The final seasonal index for week
 	 * 0 is the average of them.
+	 * The moving averages are calculated from running totals of the sales and of the number of weeks with
+	 * data, so each week only takes a subtraction instead of a pass over the window. The sales are whole
+	 * numbers, so the totals are exact and the averages are the same as summing each window.
 	 */
 	private void findSeasonalIndices() {
 		seasonalIndices = new double[nSeasons];
+		seasonalOffset = 0;
+		sharedSeasonalIndices = false;
+		// Running totals: weeks 0 till i - 1 have totalSales[i] sales and totalPresent[i] weeks with data
+		long[] totalSales = new long[nWeeks + 1];
+		int[] totalPresent = new int[nWeeks + 1];
+		for(int i = 0; i < nWeeks; i++) {
+			totalSales[i + 1] = totalSales[i];
+			totalPresent[i + 1] = totalPresent[i];
+			if(dataPresent[i]) {
+				totalSales[i + 1] += weeklySales[i];
+				totalPresent[i + 1]++;
+			}
+		}
 		// Initialize an array in which to safe the temporarily seasonal indices.
 		double[] SI = new double[nWeeks];
 		for(int i = 0; i < nWeeks; i++) {
@@ -178,7 +258,7 @@ public class Product {
 					lb = nWeeks - nSeasons;
 				}
 			}
-			double mean = mean(weeklySales, lb, ub);
+			double mean = (double) (totalSales[ub] - totalSales[lb]) / (totalPresent[ub] - totalPresent[lb]);
 			// Calculate seasonal index
 			SI[i] = weeklySales[i] / mean;
 		}
@@ -277,10 +357,30 @@ public class Product {
 	 * @return a sales value as integer
 	 */
 	public int pullRandomSales(int week, Random r) {
-		int season = week % nSeasons
-		double levelAndTrend = level + (nWeeks + week) * trend;
+		return normalSales(week, r.nextGaussian());
+	}
+	
+	/**
+	 * This method calculates a random sales value in the same way as pullRandomSales(int, Random), with a
+	 * normally distributed value of the DemandSampler
+	 * @param week the week after the data, so week 0 means week 1 of 2020
+	 * @param sampler
+	 * @return a sales value as integer
+	 */
+	public int pullRandomSales(int week, DemandSampler sampler) {
+		return normalSales(week, sampler.nextGaussian());
+	}
+	
+	/**
+	 * This method calculates the sales of pullRandomSales for a given standard normal value
+	 * @param week
+	 * @param gaussian
+	 * @return
+	 */
+	private int normalSales(int week, double gaussian) {
+		double mean = forecastMean(week);
 		// Pull from normal distribution
-		double x = r.nextGaussian() * cleanedStdev +  cleanedMean;
+		double x = gaussian * cleanedStdev +  cleanedMean;
 		if(x < 0) {
 			x = 0;
 		}
@@ -290,17 +390,18 @@ public class Product {
 			System.out.println(" levelAndTrend is " + levelAndTrend + " seasonalIndices[season] is " + seasonalIndices[season] + " x is " + x );
 		}
 		*/
-		int sales = (int) Math.round(levelAndTrend * seasonalIndices[season] * x);
+		int sales = (int) Math.round(mean * x);
 		
 		return sales;
 	}
 	
 	
 	public int getPredictedDemand(int week) {
-		int season = week % nSeasons;
-		double levelAndTrend = level + (nWeeks + week) * trend;
-		
-		int sales = (int) Math.round(levelAndTrend * seasonalIndices[season]);
+		ForecastTable table = getForecastTable();
+		if(table.contains(week)) {
+			return table.getPredictedDemand(week);
+		}
+		int sales = (int) Math.round(forecastMean(week));
 		if (sales < 0) {
 			sales = 0;
 		}
@@ -309,11 +410,31 @@ public class Product {
 	}
 	
 	public int pullRandomSalesFloris(int week, Random r) {
-		int season = week % nSeasons;
-		double levelAndTrend = level + (nWeeks + week) * trend;
+		return plusXSales(week, r.nextGaussian());
+	}
+	
+	/**
+	 * This method calculates a random sales value in the same way as pullRandomSalesFloris(int, Random), with
+	 * a normally distributed value of the DemandSampler
+	 * @param week the week after the data, so week 0 means week 1 of 2020
+	 * @param sampler
+	 * @return a sales value as integer
+	 */
+	public int pullRandomSalesFloris(int week, DemandSampler sampler) {
+		return plusXSales(week, sampler.nextGaussian());
+	}
+	
+	/**
+	 * This method calculates the sales of pullRandomSalesFloris for a given standard normal value
+	 * @param week
+	 * @param gaussian
+	 * @return
+	 */
+	private int plusXSales(int week, double gaussian) {
+		double mean = forecastMean(week);
 		
 		// Pull from normal distribution
-		double x = r.nextGaussian() * cleanedStdev +  cleanedMean;
+		double x = gaussian * cleanedStdev +  cleanedMean;
 		
 		/*
 		if (cleanedStdev> 8) {
@@ -321,54 +442,156 @@ public class Product {
 			System.out.println(" levelAndTrend is " + levelAndTrend + " seasonalIndices[season] is " + seasonalIndices[season] + " x is " + x );
 		}
 		 */
-		int sales = Math.max(0, (int) Math.round(levelAndTrend * seasonalIndices[season] + x)) ;
+		int sales = Math.max(0, (int) Math.round(mean + x)) ;
 		
 		return sales;
 	}
 	
 	/**
 	 * This method calculates a random sales value for a given week based on
-	 * the Poisson distribution.
+	 * the Poisson distribution. Drawing a value takes the same time for every mean, see PoissonSampler.
 	 * @param week
 	 * @param r
 	 * @return
 	 */
 	public int pullRandomSalesPoisson(int week, Random r) {
-		int season = week % nSeasons;
+		return PoissonSampler.sample(poissonRate(week), r);
+	}
+	
+	/**
+	 * This method calculates a random sales value for a given week based on the Poisson distribution, with
+	 * the generator of the DemandSampler
+	 * @param week the week after the data, so week 0 means week 1 of 2020
+	 * @param sampler
+	 * @return a sales value as integer
+	 */
+	public int pullRandomSalesPoisson(int week, DemandSampler sampler) {
+		return sampler.nextPoisson(poissonRate(week));
+	}
+	
+	/**
+	 * @param week the week after the data, so week 0 means week 1 of 2020
+	 * @return the rate of the Poisson distributed sales of the week
+	 */
+	private double poissonRate(int week) {
+		ForecastTable table = getForecastTable();
+		if(table.contains(week)) {
+			return table.getPoissonRate(week);
+		}
 		double trendVal = level + (nWeeks + week) * trend;
-		return getPoissonRandom(cleanedMean * trendVal, r);
+		return cleanedMean * trendVal;
 	}
 	
-	private static int getPoissonRandom(double mean, Random r) {
-	    double L = Math.exp(-mean);
-	    int k = 0;
-	    double p = 1.0;
-	    do {
-	        p = p * r.nextDouble();
-	        k++;
-	    } while (p > L);
-	    return k - 1;
+	/**
+	 * This method calculates the expected value of the random sales of a week, including the rounding and
+	 * the truncation at 0 of the pullRandomSales methods. The simulation uses it as the known mean of the
+	 * demand for a control variate.
+	 * @param week the week after the data, so week 0 means week 1 of 2020
+	 * @param usePlusXInSales the sales of pullRandomSalesFloris
+	 * @param usePoisson the sales of pullRandomSalesPoisson (if usePlusXInSales is false)
+	 * @return
+	 */
+	public double expectedSales(int week, boolean usePlusXInSales, boolean usePoisson) {
+		if(usePlusXInSales) {
+			return expectedRoundedSales(forecastMean(week) + cleanedMean, cleanedStdev);
+		}
+		if(usePoisson) {
+			double rate = poissonRate(week);
+			return rate > 0 ? rate : 0;
+		}
+		// mean * max(0, x), which is at most 0 for a negative mean
+		double mean = forecastMean(week);
+		double expected = expectedRoundedSales(Math.abs(mean) * cleanedMean, Math.abs(mean) * cleanedStdev);
+		return mean < 0 ? -expected : expected;
 	}
 	
+	/**
+	 * This method calculates the expected value of round(max(0, location + scale * Z)) for a standard normal Z,
+	 * as the sum over j >= 1 of P(location + scale * Z >= j - 0.5). The probabilities further than 9 standard
+	 * deviations from the location are 1 or 0.
+	 * @param location
+	 * @param scale
+	 * @return
+	 */
+	private static double expectedRoundedSales(double location, double scale) {
+		if(Double.isNaN(location) || Double.isNaN(scale)) {
+			// The sales are then always rounded to 0
+			return 0;
+		}
+		if(!(scale > 0)) {
+			return Math.round(Math.max(0, location));
+		}
+		long first = Math.max(1, (long) Math.ceil(location - 9 * scale + 0.5));
+		long last = (long) Math.floor(location + 9 * scale + 0.5);
+		double expected = first - 1;
+		for(long j = first; j <= last; j++) {
+			expected += normalTail((j - 0.5 - location) / scale);
+		}
+		return expected;
+	}
 	
 	/**
-	 * This method calculates the mean of a partial array without the need of
-	 * Copying the partial array to a new array.
-	 * @param arr
-	 * @param lb
-	 * @param ub
+	 * This method calculates P(Z > x) for a standard normal Z, with the complementary error function of
+	 * Numerical Recipes (relative error below 1.2e-7)
+	 * @param x
 	 * @return
 	 */
-	private double mean(int[] arr, int lb, int ub) {
-		double mean = 0.0;
-		int n = 0;
-		for(int i = lb; i < ub; i++) {
-			if(dataPresent[i]) {
-				mean += arr[i];
-				n++;
+	private static double normalTail(double x) {
+		double z = Math.abs(x) / Math.sqrt(2);
+		double t = 1.0 / (1.0 + 0.5 * z);
+		double erfc = t * Math.exp(-z * z - 1.26551223 + t * (1.00002368 + t * (0.37409196 + t * (0.09678418
+				+ t * (-0.18628806 + t * (0.27886807 + t * (-1.13520398 + t * (1.48851587 + t * (-0.82215223
+				+ t * 0.17087277)))))))));
+		return x >= 0 ? erfc / 2 : 1 - erfc / 2;
+	}
+	
+	/**
+	 * This method returns the expected sales of a week after the data, from the forecast table if possible
+	 * @param week the week after the data, so week 0 means week 1 of 2020
+	 * @return (level + (nWeeks + week) * trend) * seasonalIndex
+	 */
+	private double forecastMean(int week) {
+		ForecastTable table = getForecastTable();
+		if(table.contains(week)) {
+			return table.getMean(week);
+		}
+		double levelAndTrend = level + (nWeeks + week) * trend;
+		return levelAndTrend * seasonalIndices[seasonalOffset + (nWeeks + week) % nSeasons];
+	}
+	
+	/**
+	 * This method calculates a hash of everything the random sales of the product depend on: the level, the
+	 * trend, the seasonal indices, the number of weeks of data and the mean and standard deviation of the
+	 * cleaned sales. It changes when the product is fitted again with other data.
+	 * @return
+	 */
+	public long demandHash() {
+		long hash = 1125899906842597L;
+		hash = 31 * hash + Double.doubleToLongBits(level);
+		hash = 31 * hash + Double.doubleToLongBits(trend);
+		hash = 31 * hash + nWeeks;
+		hash = 31 * hash + Double.doubleToLongBits(cleanedMean);
+		hash = 31 * hash + Double.doubleToLongBits(cleanedStdev);
+		if(seasonalIndices != null) {
+			for(int i = seasonalOffset; i < seasonalOffset + nSeasons; i++) {
+				hash = 31 * hash + Double.doubleToLongBits(seasonalIndices[i]);
 			}
 		}
-		return mean/n;
+		return hash;
+	}
+	
+	/**
+	 * This method returns the forecast of the weeks after the data of a fitted product. The table is created
+	 * again if the distribution properties were changed with one of the setters.
+	 * @return the forecast of the next FORECAST_WEEKS weeks
+	 */
+	public ForecastTable getForecastTable() {
+		ForecastTable table = forecast;
+		if(table == null) {
+			table = new ForecastTable(level, trend, getSeasonalIndices(), nWeeks, cleanedMean, cleanedStdev, FORECAST_WEEKS);
+			forecast = table;
+		}
+		return table;
 	}
 	
 	
@@ -383,10 +606,28 @@ public class Product {
 	 * values are set equal to the mean of the time series.
 	 */
 	public int[] cleanTimeSeriesData() {
+		detach();
+		if(rawSales == null) {
+			// Keep the values as read, so that the product can be cleaned again when new weeks are added.
+			// The arrays as read can be shared with year views, so the cleaned values are written to copies.
+			rawSales = weeklySales;
+			rawAverageM3 = weeklyAverageM3;
+			rawAveragePrice = weeklyAveragePrice;
+			weeklySales = weeklySales.clone();
+			weeklyAverageM3 = weeklyAverageM3.clone();
+			weeklyAveragePrice = weeklyAveragePrice.clone();
+		} else {
+			// Always start cleaning from the values as read
+			System.arraycopy(rawSales, 0, weeklySales, 0, rawSales.length);
+			System.arraycopy(rawAverageM3, 0, weeklyAverageM3, 0, rawAverageM3.length);
+			System.arraycopy(rawAveragePrice, 0, weeklyAveragePrice, 0, rawAveragePrice.length);
+		}
 		int[] modCount = new int[3];
 		modCount[0] = cleanSales();
 		modCount[1] = cleanVolume();
 		modCount[2] = cleanPrices();
+		modifications++;
+		updateAverages();
 		return modCount;
 	}
 
@@ -610,8 +851,31 @@ public class Product {
 	 * @param qty
 	 */
 	public void addSale(int week, int qty) {
-		weeklySales[week - 1] = qty;
-		dataPresent[week - 1] = true;
+		detach();
+		weeklySales[offset + week - 1] = qty;
+		dataPresent[offset + week - 1] = true;
+		modifications++;
+		if(rawSales != null) {
+			rawSales[week - 1] = qty;
+		}
+	}
+
+	/**
+	 * This method copies the weeks for which the other product has data into this product. It is used to
+	 * combine the data of one product that was read in separate parts of the data file.
+	 * @param other a product with the same key and number of weeks, read from later lines in the data file
+	 */
+	public void mergeData(Product other) {
+		detach();
+		for(int i = 0; i < other.dataPresent.length; i++) {
+			if(other.dataPresent[i]) {
+				weeklySales[i] = other.weeklySales[i];
+				weeklyAverageM3[i] = other.weeklyAverageM3[i];
+				weeklyAveragePrice[i] = other.weeklyAveragePrice[i];
+				dataPresent[i] = true;
+			}
+		}
+		modifications++;
 	}
 
 	/**
@@ -620,8 +884,13 @@ public class Product {
 	 * @param volume
 	 */
 	public void addAverageM3(int week, double volume) {
-		weeklyAverageM3[week - 1] = volume; 
-		dataPresent[week - 1] = true;
+		detach();
+		weeklyAverageM3[offset + week - 1] = volume; 
+		dataPresent[offset + week - 1] = true;
+		modifications++;
+		if(rawAverageM3 != null) {
+			rawAverageM3[week - 1] = volume;
+		}
 	}
 
 	/**
@@ -630,8 +899,140 @@ public class Product {
 	 * @param price
 	 */
 	public void addAveragePrice(int week, double price) {
-		weeklyAveragePrice[week - 1] = price;
-		dataPresent[week - 1] = true;
+		detach();
+		weeklyAveragePrice[offset + week - 1] = price;
+		dataPresent[offset + week - 1] = true;
+		modifications++;
+		if(rawAveragePrice != null) {
+			rawAveragePrice[week - 1] = price;
+		}
+	}
+	
+	/**
+	 * This method makes room for more weeks of data at the end of the time series. The new weeks have no
+	 * data until it is added with addSale, addAverageM3 and addAveragePrice. Only use this for products
+	 * that hold more than one year. Afterwards, the product must be cleaned and its distribution
+	 * properties must be calculated again, since the forecasts start after the last week.
+	 * @param nWeeks the new number of weeks
+	 */
+	public void extendWeeks(int nWeeks) {
+		detach();
+		if(nWeeks <= weeklySales.length) {
+			return;
+		}
+		weeklySales = Arrays.copyOf(weeklySales, nWeeks);
+		weeklyAverageM3 = Arrays.copyOf(weeklyAverageM3, nWeeks);
+		weeklyAveragePrice = Arrays.copyOf(weeklyAveragePrice, nWeeks);
+		dataPresent = Arrays.copyOf(dataPresent, nWeeks);
+		modifications++;
+		forecast = null;
+		if(rawSales != null) {
+			rawSales = Arrays.copyOf(rawSales, nWeeks);
+			rawAverageM3 = Arrays.copyOf(rawAverageM3, nWeeks);
+			rawAveragePrice = Arrays.copyOf(rawAveragePrice, nWeeks);
+		}
+		this.nWeeks = nWeeks;
+	}
+	
+	/**
+	 * This method creates a product for one year of this combined product. The year view does not copy the
+	 * data, but shares the arrays of this product, so the weekly data is only kept in memory once. Data that
+	 * is added to this product afterwards is also visible in the year view. Cleaning this product does not
+	 * change the year view, since cleaned values are written to copies of the arrays.
+	 * Whenever the year view itself is cleaned, changed in length or given new data, it first gets its own
+	 * copy of the data.
+	 * @param year the year of the view
+	 * @param firstWeek the index of week 1 of the year in the arrays of this product
+	 * @return the year view
+	 */
+	public Product createYearView(int year, int firstWeek) {
+		Product view = new Product();
+		view.shop = shop;
+		view.productGroup = productGroup;
+		view.chunk = chunk;
+		view.sizeGroup = sizeGroup;
+		view.unitStorageCost = unitStorageCost;
+		view.relevanceScore = relevanceScore;
+		view.year = year;
+		// The arrays as read, which are not changed by cleaning. These are the own arrays of the product,
+		// also when its cleaned weeks are in a ProductStore.
+		view.weeklySales = rawSales != null ? rawSales : weeklySales;
+		view.weeklyAverageM3 = rawAverageM3 != null ? rawAverageM3 : weeklyAverageM3;
+		view.weeklyAveragePrice = rawAveragePrice != null ? rawAveragePrice : weeklyAveragePrice;
+		int start = rawSales != null ? 0 : offset;
+		view.dataPresent = start == offset ? dataPresent : Arrays.copyOfRange(dataPresent, offset, offset + getNWeeks());
+		view.source = this;
+		view.offset = start + firstWeek;
+		view.viewWeeks = nSeasons;
+		return view;
+	}
+	
+	/**
+	 * This method moves the weekly data and the seasonal indices of the product into the arrays of a
+	 * ProductStore, and makes the product a view of those arrays. The values do not change, but the product
+	 * no longer keeps its own copy of them. Like a year view, the product gets its own copy again when it is
+	 * cleaned, fitted or given new data. A year view is no longer linked to its combined product afterwards.
+	 * @param sales the sales of the store
+	 * @param averageM3 the volumes of the store
+	 * @param averagePrice the prices of the store
+	 * @param present the weeks with data of the store
+	 * @param start the index of the first week of the product in the weekly arrays
+	 * @param storeSeasonalIndices the seasonal indices of the store
+	 * @param seasonalStart the index of the first season of the product, only used if it is fitted
+	 */
+	void moveToStore(int[] sales, double[] averageM3, double[] averagePrice, boolean[] present, int start,
+			double[] storeSeasonalIndices, int seasonalStart) {
+		int weeks = getNWeeks();
+		System.arraycopy(weeklySales, offset, sales, start, weeks);
+		System.arraycopy(weeklyAverageM3, offset, averageM3, start, weeks);
+		System.arraycopy(weeklyAveragePrice, offset, averagePrice, start, weeks);
+		System.arraycopy(dataPresent, offset, present, start, weeks);
+		weeklySales = sales;
+		weeklyAverageM3 = averageM3;
+		weeklyAveragePrice = averagePrice;
+		dataPresent = present;
+		source = null;
+		offset = start;
+		viewWeeks = weeks;
+		if(seasonalIndices != null) {
+			System.arraycopy(seasonalIndices, seasonalOffset, storeSeasonalIndices, seasonalStart, nSeasons);
+			seasonalIndices = storeSeasonalIndices;
+			seasonalOffset = seasonalStart;
+			sharedSeasonalIndices = true;
+		}
+	}
+	
+	/**
+	 * @return the combined product this year view was created from, or null if this is not a year view
+	 */
+	public Product getSource() {
+		return source;
+	}
+	
+	/**
+	 * @return the index of week 1 of this year view in the arrays of the combined product (or of the first
+	 * week in the arrays of a ProductStore)
+	 */
+	public int getOffset() {
+		return offset;
+	}
+	
+	/**
+	 * This method gives a view its own copy of its weeks, so it can be changed without changing the
+	 * combined product or the ProductStore.
+	 */
+	private void detach() {
+		if(viewWeeks == 0) {
+			return;
+		}
+		weeklySales = getWeeklySales();
+		weeklyAverageM3 = getWeeklyAverageM3();
+		weeklyAveragePrice = getWeeklyAveragePrice();
+		dataPresent = Arrays.copyOfRange(dataPresent, offset, offset + viewWeeks);
+		source = null;
+		offset = 0;
+		viewWeeks = 0;
+		averagesVersion = -1;
 	}
 
 	/**
@@ -640,7 +1041,7 @@ public class Product {
 	 * @return sales as integer
 	 */
 	public int getSales(int week) {
-		return weeklySales[week];
+		return weeklySales[offset + week];
 	}
 
 	/**
@@ -649,7 +1050,7 @@ public class Product {
 	 * @return averageM3 as double
 	 */
 	public double getAverageM3(int week) {
-		return weeklyAverageM3[week];
+		return weeklyAverageM3[offset + week];
 	}
 	
 	
@@ -660,45 +1061,56 @@ public class Product {
 	 * @return average price as double
 	 */
 	public double getAveragePrice(int week) {
-		return weeklyAveragePrice[week];
+		return weeklyAveragePrice[offset + week];
 	}
 	
 	/**
 	 * This method returns the average averageM3
 	 * This is used for 2020
-	 * @param week goes from 0 to 51
 	 * @return averageM3 as double
 	 */
 	public double getAverageAverageM3() {
-		int count = 0; 
-		double sum = 0; 
-		for (double d : weeklyAverageM3) {
-			if (d > 0.0000000000) {
-				count ++;
-				sum += d;
-			}
-		}
-		
-		if (count == 0) {
-			return 0;
-		}
-		
-		return sum/count;
+		updateAverages();
+		return averageAverageM3;
 	}
 	
 	/**
 	 * This method returns the average average price
 	 * This is used for 2020
-	 * 	 * @param week goes from 1 to 52
 	 * @return average price as double
 	 */
 	public double getAverageAveragePrice() {
+		updateAverages();
+		return averageAveragePrice;
+	}
+	
+	/**
+	 * This method calculates the average averageM3 and average price again if the weekly data has changed
+	 * since they were calculated. A year view checks the changes of its combined product, since it shares
+	 * the arrays of that product.
+	 */
+	private void updateAverages() {
+		int version = source != null ? source.modifications : modifications;
+		if(averagesVersion == version) {
+			return;
+		}
+		averageAverageM3 = averageOfPositive(weeklyAverageM3);
+		averageAveragePrice = averageOfPositive(weeklyAveragePrice);
+		averagesVersion = version;
+	}
+	
+	/**
+	 * This method calculates the mean of the positive values of the weeks of this product
+	 * @param arr
+	 * @return the mean, or 0 if there are no positive values
+	 */
+	private double averageOfPositive(double[] arr) {
 		int count = 0; 
 		double sum = 0; 
-		for (double d : weeklyAveragePrice) {
-			if (d > 0.0000) {
+		for(int i = offset; i < offset + getNWeeks(); i++) {
+			if (arr[i] > 0.0) {
 				count ++;
-				sum += d;
+				sum += arr[i];
 			}
 		}
 		if (count == 0) {
@@ -712,7 +1124,7 @@ public class Product {
 	 * @return
 	 */
 	public String getChunk() {
-		return chunk;
+		return symbols.name(chunk);
 	}
 
 	/**
@@ -720,7 +1132,7 @@ public class Product {
 	 * @param chunk
 	 */
 	public void setChunk(String chunk) {
-		this.chunk = chunk;
+		this.chunk = symbols.code(chunk);
 	}
 
 	/**
@@ -728,7 +1140,7 @@ public class Product {
 	 * @return
 	 */
 	public String getSizeGroup() {
-		return sizeGroup;
+		return symbols.name(sizeGroup);
 	}
 
 	/**
@@ -736,7 +1148,7 @@ public class Product {
 	 * @param sizeGroup
 	 */
 	public void setSizeGroup(String sizeGroup) {
-		this.sizeGroup = sizeGroup;
+		this.sizeGroup = symbols.code(sizeGroup);
 	}
 
 	/**
@@ -792,57 +1204,107 @@ public class Product {
 	 * @return
 	 */
 	public boolean belongsToGeneralToys() {
-		return productGroup.equals("General Toys");
+		return productGroup == GENERAL_TOYS;
 	}
 
 	/**
-	 * Basic getter method
+	 * @return the number of weeks of data, 52 for a year view
+	 */
+	public int getNWeeks() {
+		return viewWeeks > 0 ? viewWeeks : weeklySales.length;
+	}
+
+	/**
+	 * Basic getter method. For a view, this is a copy of its weeks.
 	 * @return
 	 */
 	public int[] getWeeklySales() {
+		if(viewWeeks > 0) {
+			return Arrays.copyOfRange(weeklySales, offset, offset + viewWeeks);
+		}
 		return weeklySales;
 	}
 
 	/**
-	 * Basic getter method
+	 * Basic getter method. For a view, this is a copy of its weeks.
 	 * @return
 	 */
 	public double[] getWeeklyAverageM3() {
+		if(viewWeeks > 0) {
+			return Arrays.copyOfRange(weeklyAverageM3, offset, offset + viewWeeks);
+		}
 		return weeklyAverageM3;
 	}
 
 	/**
-	 * Basic getter method
+	 * Basic getter method. For a view, this is a copy of its weeks.
 	 * @return
 	 */
 	public double[] getWeeklyAveragePrice() {
+		if(viewWeeks > 0) {
+			return Arrays.copyOfRange(weeklyAveragePrice, offset, offset + viewWeeks);
+		}
 		return weeklyAveragePrice;
 	}
 
 	public String getShop() {
-		return shop;
+		return symbols.name(shop);
 	}
 
 	public void setShop(String shop) {
-		this.shop = shop;
+		this.shop = symbols.code(shop);
 	}
 
 	public String getProductGroup() {
-		return productGroup;
+		return symbols.name(productGroup);
 	}
 
 	public void setProductGroup(String productGroup) {
-		this.productGroup = productGroup;
+		this.productGroup = symbols.code(productGroup);
+	}
+	
+	public int getShopCode() {
+		return shop;
+	}
+	
+	public int getProductGroupCode() {
+		return productGroup;
+	}
+	
+	public int getChunkCode() {
+		return chunk;
+	}
+	
+	public int getSizeGroupCode() {
+		return sizeGroup;
+	}
+	
+	/**
+	 * This method returns the SymbolTable in which the names of all products are stored
+	 * @return
+	 */
+	public static SymbolTable getSymbolTable() {
+		return symbols;
 	}
 
 
+	/**
+	 * Basic getter method. For a product in a ProductStore, this is a copy of its seasonal indices.
+	 * @return
+	 */
 	public double[] getSeasonalIndices() {
+		if(sharedSeasonalIndices) {
+			return Arrays.copyOfRange(seasonalIndices, seasonalOffset, seasonalOffset + nSeasons);
+		}
 		return seasonalIndices;
 	}
 
 
 	public void setSeasonalIndices(double[] seasonalIndices) {
 		this.seasonalIndices = seasonalIndices;
+		seasonalOffset = 0;
+		sharedSeasonalIndices = false;
+		forecast = null;
 	}
 
 
@@ -863,6 +1325,7 @@ public class Product {
 
 	public void setCleanedMean(double cleanedMean) {
 		this.cleanedMean = cleanedMean;
+		forecast = null;
 	}
 
 	public double getCleanedStdev() {
@@ -872,6 +1335,7 @@ public class Product {
 
 	public void setCleanedStdev(double cleanedStdev) {
 		this.cleanedStdev = cleanedStdev;
+		forecast = null;
 	}
 
 
@@ -882,6 +1346,7 @@ public class Product {
 
 	public void setLevel(double level) {
 		this.level = level;
+		forecast = null;
 	}
 
 
@@ -892,6 +1357,174 @@ public class Product {
 
 	public void setTrend(double trend) {
 		this.trend = trend;
+		forecast = null;
+	}
+	
+	
+	//-------------------------------------------------------------------
+	// This part contains the code to store a product in a snapshot
+	//-------------------------------------------------------------------
+	
+	/**
+	 * This method writes all data of the product to a snapshot, including the cleaned data and the
+	 * distribution properties if these have been calculated. The layout must be kept in line with
+	 * readSnapshot. Whenever it changes, ProductCatalogCache.VERSION must be increased.
+	 * @param out
+	 * @throws IOException
+	 */
+	void writeSnapshot(DataOutputStream out) throws IOException {
+		// The codes can differ between runs, so the names are written
+		writeString(out, symbols.name(shop));
+		writeString(out, symbols.name(productGroup));
+		writeString(out, symbols.name(chunk));
+		writeString(out, symbols.name(sizeGroup));
+		out.writeDouble(unitStorageCost);
+		out.writeDouble(relevanceScore);
+		out.writeInt(year);
+		out.writeInt(nWeeks);
+		out.writeDouble(variance);
+		
+		// A view (a year view or a product in a ProductStore) is written as a product with its own weeks
+		int length = getNWeeks();
+		out.writeInt(length);
+		for(int i = offset; i < offset + length; i++) {
+			out.writeInt(weeklySales[i]);
+		}
+		for(int i = offset; i < offset + length; i++) {
+			out.writeDouble(weeklyAverageM3[i]);
+		}
+		for(int i = offset; i < offset + length; i++) {
+			out.writeDouble(weeklyAveragePrice[i]);
+		}
+		for(int i = offset; i < offset + length; i++) {
+			out.writeBoolean(dataPresent[i]);
+		}
+		
+		// The values as read are only present if the product has been cleaned
+		out.writeBoolean(rawSales != null);
+		if(rawSales != null) {
+			for(int i = 0; i < length; i++) {
+				out.writeInt(rawSales[i]);
+			}
+			for(int i = 0; i < length; i++) {
+				out.writeDouble(rawAverageM3[i]);
+			}
+			for(int i = 0; i < length; i++) {
+				out.writeDouble(rawAveragePrice[i]);
+			}
+		}
+		
+		// The distribution properties are only present if they have been calculated
+		out.writeBoolean(seasonalIndices != null);
+		if(seasonalIndices != null) {
+			for(int i = seasonalOffset; i < seasonalOffset + nSeasons; i++) {
+				out.writeDouble(seasonalIndices[i]);
+			}
+			for(double cleaned : cleanedSales) {
+				out.writeDouble(cleaned);
+			}
+			out.writeDouble(cleanedMean);
+			out.writeDouble(cleanedStdev);
+			out.writeDouble(level);
+			out.writeDouble(trend);
+		}
+	}
+	
+	
+	/**
+	 * This method restores a product that was written with writeSnapshot.
+	 * @param in a buffer positioned at the start of the product
+	 * @param names used to let equal names share the same String object
+	 * @return the restored product
+	 */
+	static Product readSnapshot(ByteBuffer in, HashMap<String, String> names) {
+		Product product = new Product();
+		product.shop = symbols.code(readString(in, names));
+		product.productGroup = symbols.code(readString(in, names));
+		product.chunk = symbols.code(readString(in, names));
+		product.sizeGroup = symbols.code(readString(in, names));
+		product.unitStorageCost = in.getDouble();
+		product.relevanceScore = in.getDouble();
+		product.year = in.getInt();
+		product.nWeeks = in.getInt();
+		product.variance = in.getDouble();
+		
+		int length = in.getInt();
+		product.weeklySales = new int[length];
+		product.weeklyAverageM3 = new double[length];
+		product.weeklyAveragePrice = new double[length];
+		product.dataPresent = new boolean[length];
+		in.asIntBuffer().get(product.weeklySales);
+		in.position(in.position() + 4 * length);
+		in.asDoubleBuffer().get(product.weeklyAverageM3);
+		in.position(in.position() + 8 * length);
+		in.asDoubleBuffer().get(product.weeklyAveragePrice);
+		in.position(in.position() + 8 * length);
+		for(int i = 0; i < length; i++) {
+			product.dataPresent[i] = in.get() != 0;
+		}
+		
+		if(in.get() != 0) {
+			product.rawSales = new int[length];
+			product.rawAverageM3 = new double[length];
+			product.rawAveragePrice = new double[length];
+			in.asIntBuffer().get(product.rawSales);
+			in.position(in.position() + 4 * length);
+			in.asDoubleBuffer().get(product.rawAverageM3);
+			in.position(in.position() + 8 * length);
+			in.asDoubleBuffer().get(product.rawAveragePrice);
+			in.position(in.position() + 8 * length);
+		}
+		
+		if(in.get() != 0) {
+			product.seasonalIndices = new double[product.nSeasons];
+			product.cleanedSales = new double[product.nWeeks];
+			in.asDoubleBuffer().get(product.seasonalIndices);
+			in.position(in.position() + 8 * product.nSeasons);
+			in.asDoubleBuffer().get(product.cleanedSales);
+			in.position(in.position() + 8 * product.nWeeks);
+			product.cleanedMean = in.getDouble();
+			product.cleanedStdev = in.getDouble();
+			product.level = in.getDouble();
+			product.trend = in.getDouble();
+		}
+		return product;
+	}
+	
+	
+	/**
+	 * Strings are written as their length in bytes followed by the UTF-8 bytes. A length of -1 means null.
+	 * @param out
+	 * @param value
+	 * @throws IOException
+	 */
+	static void writeString(DataOutputStream out, String value) throws IOException {
+		if(value == null) {
+			out.writeInt(-1);
+		} else {
+			byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+			out.writeInt(bytes.length);
+			out.write(bytes);
+		}
+	}
+	
+	
+	/**
+	 * This method reads a String that was written with writeString
+	 * @param in
+	 * @param names used to let equal names share the same String object
+	 * @return
+	 */
+	static String readString(ByteBuffer in, HashMap<String, String> names) {
+		int length = in.getInt();
+		if(length < 0) {
+			return null;
+		}
+		byte[] bytes = new byte[length];
+		in.get(bytes);
+		String value = new String(bytes, StandardCharsets.UTF_8);
+		String known = names.putIfAbsent(value, value);
+		return known != null ? known : value;
 	}
 	
 	
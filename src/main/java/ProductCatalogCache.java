@@ -0,0 +1,212 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/**
+ * This class stores the products that were read (and possibly cleaned and fitted) by the CustomDataReader
+ * in a binary snapshot file. Reading the excel files and fitting all products takes minutes, while loading
+ * the snapshot takes less than a second, since the file is memory-mapped and the arrays are copied in bulk.
+ *
+ * The snapshot starts with a header containing the format version, a tag describing what data is stored
+ * (e.g. the combined data or the data of certain years) and a checksum of each source file. If one of the
+ * source files changes, the checksums no longer match and the snapshot is ignored, so it is rebuilt
+ * automatically.
+ */
+public class ProductCatalogCache {
+	// Increase this number whenever the layout of the snapshot or of Product.writeSnapshot changes
+	public static final int VERSION = 2;
+	private static final int MAGIC = 0x50524f44; // "PROD"
+
+	private File cacheFile;
+	private String tag;
+	private File[] sources;
+
+	/**
+	 * Constructor for the ProductCatalogCache
+	 * @param cacheFile the file in which the snapshot is stored
+	 * @param tag a description of the stored data. A snapshot is only used if the tag matches
+	 * @param sources the files from which the data is read
+	 */
+	public ProductCatalogCache(File cacheFile, String tag, File... sources) {
+		this.cacheFile = cacheFile;
+		this.tag = tag;
+		this.sources = sources;
+	}
+
+
+	/**
+	 * This method loads the data from the snapshot
+	 * @return the data in the same structure as it was written, or null if there is no valid snapshot
+	 * for the current source files
+	 */
+	public ArrayList<HashMap<String, HashMap<String, Product>>> load() {
+		if(!cacheFile.exists()) {
+			return null;
+		}
+		long tic = System.currentTimeMillis();
+		try {
+			// The header is checked with a plain read, so an outdated snapshot is never mapped and can be replaced
+			long headerSize = readHeader(checksums());
+			if(headerSize < 0) {
+				return null;
+			}
+			try (FileChannel channel = FileChannel.open(cacheFile.toPath(), StandardOpenOption.READ)) {
+				MappedByteBuffer in = channel.map(FileChannel.MapMode.READ_ONLY, headerSize, channel.size() - headerSize);
+				return readProducts(in, tic);
+			}
+		} catch (IOException | BufferUnderflowException | IllegalArgumentException e) {
+			// A damaged snapshot is simply rebuilt
+			System.err.println("Could not read snapshot " + cacheFile.getName() + ": " + e);
+			return null;
+		}
+	}
+
+
+	/**
+	 * This method checks whether the header of the snapshot belongs to the current tag and source files
+	 * @param checksums the checksums of the current source files
+	 * @return the size of the header in bytes, or -1 if the snapshot is outdated
+	 * @throws IOException
+	 */
+	private long readHeader(long[] checksums) throws IOException {
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(cacheFile)))) {
+			byte[] tagBytes = tag.getBytes(StandardCharsets.UTF_8);
+			if(in.readInt() != MAGIC || in.readInt() != VERSION || in.readInt() != tagBytes.length) {
+				System.out.println("Snapshot " + cacheFile.getName() + " is outdated");
+				return -1;
+			}
+			byte[] storedTag = new byte[tagBytes.length];
+			in.readFully(storedTag);
+			if(!Arrays.equals(storedTag, tagBytes)) {
+				System.out.println("Snapshot " + cacheFile.getName() + " is outdated");
+				return -1;
+			}
+			if(in.readInt() != checksums.length) {
+				return -1;
+			}
+			for(long checksum : checksums) {
+				if(in.readLong() != checksum) {
+					System.out.println("Source files have changed since snapshot " + cacheFile.getName() + " was made");
+					return -1;
+				}
+			}
+			return 3 * 4 + tagBytes.length + 4 + 8L * checksums.length;
+		}
+	}
+
+
+	/**
+	 * This method reads the products of the snapshot, which follow the header
+	 * @param in the mapped snapshot, after the header
+	 * @param tic the time at which loading started
+	 * @return
+	 */
+	private ArrayList<HashMap<String, HashMap<String, Product>>> readProducts(MappedByteBuffer in, long tic) {
+		HashMap<String, String> names = new HashMap<String, String>();
+		int nMaps = in.getInt();
+		ArrayList<HashMap<String, HashMap<String, Product>>> result = new ArrayList<HashMap<String, HashMap<String, Product>>>(nMaps);
+		for(int m = 0; m < nMaps; m++) {
+			int nChunks = in.getInt();
+			HashMap<String, HashMap<String, Product>> data = new HashMap<String, HashMap<String, Product>>();
+			for(int c = 0; c < nChunks; c++) {
+				String chunkKey = Product.readString(in, names);
+				int nProducts = in.getInt();
+				HashMap<String, Product> chunk = new HashMap<String, Product>();
+				for(int p = 0; p < nProducts; p++) {
+					String sizeGroup = Product.readString(in, names);
+					chunk.put(sizeGroup, Product.readSnapshot(in, names));
+				}
+				data.put(chunkKey, chunk);
+			}
+			result.add(data);
+		}
+		long toc = System.currentTimeMillis();
+		System.out.println("Loaded snapshot " + cacheFile.getName() + " in " + (toc - tic) + " ms");
+		return result;
+	}
+
+
+	/**
+	 * This method writes the data to the snapshot file. The file is first written under a temporary name and
+	 * then moved over the old snapshot in one step, so an interrupted write never leaves a damaged snapshot
+	 * behind, or no snapshot at all.
+	 * @param data
+	 * @throws IOException
+	 */
+	public void write(ArrayList<HashMap<String, HashMap<String, Product>>> data) throws IOException {
+		long tic = System.currentTimeMillis();
+		File tmp = new File(cacheFile.getPath() + ".tmp");
+		try {
+			try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp), 1 << 16))) {
+				out.writeInt(MAGIC);
+				out.writeInt(VERSION);
+				Product.writeString(out, tag);
+				long[] checksums = checksums();
+				out.writeInt(checksums.length);
+				for(long checksum : checksums) {
+					out.writeLong(checksum);
+				}
+
+				out.writeInt(data.size());
+				for(HashMap<String, HashMap<String, Product>> map : data) {
+					out.writeInt(map.size());
+					for(Map.Entry<String, HashMap<String, Product>> chunk : map.entrySet()) {
+						Product.writeString(out, chunk.getKey());
+						out.writeInt(chunk.getValue().size());
+						for(Map.Entry<String, Product> product : chunk.getValue().entrySet()) {
+							Product.writeString(out, product.getKey());
+							product.getValue().writeSnapshot(out);
+						}
+					}
+				}
+			}
+			Files.move(tmp.toPath(), cacheFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} catch (IOException e) {
+			tmp.delete();
+			throw e;
+		}
+		long toc = System.currentTimeMillis();
+		System.out.println("Wrote snapshot " + cacheFile.getName() + " in " + (toc - tic) + " ms");
+	}
+
+
+	/**
+	 * This method calculates a CRC32 checksum of the content of each source file
+	 * @return
+	 * @throws IOException
+	 */
+	private long[] checksums() throws IOException {
+		long[] result = new long[sources.length];
+		byte[] buffer = new byte[1 << 16];
+		for(int i = 0; i < sources.length; i++) {
+			CRC32 crc = new CRC32();
+			try (InputStream in = new FileInputStream(sources[i])) {
+				int n;
+				while((n = in.read(buffer)) > 0) {
+					crc.update(buffer, 0, n);
+				}
+			}
+			// Also include the length, so that it is very unlikely that a changed file has the same checksum
+			result[i] = (crc.getValue() << 32) ^ sources[i].length();
+		}
+		return result;
+	}
+}
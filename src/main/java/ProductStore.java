@@ -0,0 +1,240 @@
+import java.util.ArrayList;
+import java.util.HashMap;
+
+/**
+ * The ProductStore keeps the data of all products in flat primitive arrays, indexed by a chunk index i and a
+ * size index s. The chunk indices follow the order of data.keySet(), just like the chunkNames lists that are
+ * used everywhere else, and the size indices follow the given sizes array. So z[t][i][s] of the solver
+ * belongs to the product at (i, s) of the store.
+ *
+ * Loops over all products (like the simulation) would otherwise do data.get(chunkNames.get(i)).get(sizes[s])
+ * for every week, chunk and size, which hashes two strings each time. With the store, a product is found by
+ * the index p = i * nSizes + s. Sizes that do not exist for a chunk are marked in the present array.
+ *
+ * The weekly sales, volumes and prices of all products are kept one after the other in one array each: the
+ * weeks of product p are at firstWeekOf[p] till firstWeekOf[p + 1]. The seasonal indices of the fitted
+ * products are kept the same way, and the level, trend and values per product in arrays of their own. The
+ * products of the data become views of these arrays (see Product.moveToStore), so the products keep
+ * working for every caller, while the weekly data is only kept once and no longer in thousands of small
+ * arrays. The products that do not change are shared by the store and the data; if a product is changed
+ * afterwards (e.g. when it is cleaned or fitted again), it gets its own copy of its data again and a new
+ * store should be built.
+ */
+public class ProductStore {
+	private static final int nSeasons = 52;
+	private ArrayList<String> chunkNames;
+	private String[] sizes;
+	private int nChunks;
+	private int nSizes;
+	private int nWeeks;
+
+	// The products, which are views of the arrays of the store
+	private Product[] products;
+	private boolean[] present;
+
+	// The weekly data of product p is at firstWeekOf[p] till firstWeekOf[p + 1]
+	private int[] firstWeekOf;
+	private int[] sales;
+	private double[] averageM3;
+	private double[] averagePrice;
+	private boolean[] dataPresent;
+
+	// The seasonal indices of product p start at firstSeasonOf[p], which is -1 if the product is not fitted
+	private int[] firstSeasonOf;
+	private double[] seasonalIndices;
+
+	// Values per product
+	private double[] level;
+	private double[] trend;
+	private double[] averageAverageM3;
+	private double[] unitStorageCost;
+	private double[] relevanceScore;
+
+	/**
+	 * Constructor for the ProductStore. The products of data become views of the arrays of the store.
+	 * @param data the products per chunk
+	 * @param sizes all size groups
+	 */
+	public ProductStore(HashMap<String, HashMap<String, Product>> data, String[] sizes) {
+		this.chunkNames = new ArrayList<String>(data.keySet());
+		this.sizes = sizes;
+		this.nChunks = chunkNames.size();
+		this.nSizes = sizes.length;
+
+		int nProducts = nChunks * nSizes;
+		products = new Product[nProducts];
+		present = new boolean[nProducts];
+		firstWeekOf = new int[nProducts + 1];
+		firstSeasonOf = new int[nProducts];
+		level = new double[nProducts];
+		trend = new double[nProducts];
+		averageAverageM3 = new double[nProducts];
+		unitStorageCost = new double[nProducts];
+		relevanceScore = new double[nProducts];
+		nWeeks = 0;
+		int nFitted = 0;
+		for(int i = 0; i < nChunks; i++) {
+			HashMap<String, Product> chunk = data.get(chunkNames.get(i));
+			for(int s = 0; s < nSizes; s++) {
+				int p = i * nSizes + s;
+				Product prod = chunk.get(sizes[s]);
+				firstWeekOf[p + 1] = firstWeekOf[p];
+				firstSeasonOf[p] = -1;
+				if(prod != null) {
+					products[p] = prod;
+					present[p] = true;
+					firstWeekOf[p + 1] += prod.getNWeeks();
+					nWeeks = Math.max(nWeeks, prod.getNWeeks());
+					if(prod.getSeasonalIndices() != null) {
+						firstSeasonOf[p] = nFitted * nSeasons;
+						nFitted++;
+					}
+					level[p] = prod.getLevel();
+					trend[p] = prod.getTrend();
+					averageAverageM3[p] = prod.getAverageAverageM3();
+					unitStorageCost[p] = prod.getUnitStorageCost();
+					relevanceScore[p] = prod.getRelevanceScore();
+				}
+			}
+		}
+
+		int totalWeeks = firstWeekOf[nProducts];
+		sales = new int[totalWeeks];
+		averageM3 = new double[totalWeeks];
+		averagePrice = new double[totalWeeks];
+		dataPresent = new boolean[totalWeeks];
+		seasonalIndices = new double[nFitted * nSeasons];
+		for(int p = 0; p < nProducts; p++) {
+			if(present[p]) {
+				products[p].moveToStore(sales, averageM3, averagePrice, dataPresent, firstWeekOf[p], seasonalIndices,
+						firstSeasonOf[p]);
+			}
+		}
+	}
+
+
+	/**
+	 * This method returns the index of a product in the arrays of the store
+	 * @param i the chunk index
+	 * @param s the size index
+	 * @return
+	 */
+	public int index(int i, int s) {
+		return i * nSizes + s;
+	}
+
+	/**
+	 * This method checks whether the chunk has a product of the given size
+	 * @param i the chunk index
+	 * @param s the size index
+	 * @return
+	 */
+	public boolean isPresent(int i, int s) {
+		return present[i * nSizes + s];
+	}
+
+	/**
+	 * This method returns the product itself, a view of the arrays of the store, for everything that is not
+	 * stored in the arrays of the store (like drawing random sales).
+	 * @param i the chunk index
+	 * @param s the size index
+	 * @return the product, or null if the chunk has no product of this size
+	 */
+	public Product product(int i, int s) {
+		return products[i * nSizes + s];
+	}
+
+	/**
+	 * @param i the chunk index
+	 * @param s the size index
+	 * @return the number of weeks of data of the product, 0 if the chunk has no product of this size
+	 */
+	public int getNWeeks(int i, int s) {
+		int p = i * nSizes + s;
+		return firstWeekOf[p + 1] - firstWeekOf[p];
+	}
+
+	/**
+	 * @param i the chunk index
+	 * @param s the size index
+	 * @param week goes from 0 to nWeeks - 1
+	 * @return sales as integer, or 0 if the product has no data of this week
+	 */
+	public int getSales(int i, int s, int week) {
+		int p = i * nSizes + s;
+		return firstWeekOf[p] + week < firstWeekOf[p + 1] ? sales[firstWeekOf[p] + week] : 0;
+	}
+
+	/**
+	 * @param i the chunk index
+	 * @param s the size index
+	 * @param week goes from 0 to nWeeks - 1
+	 * @return averageM3 as double, or 0 if the product has no data of this week
+	 */
+	public double getAverageM3(int i, int s, int week) {
+		int p = i * nSizes + s;
+		return firstWeekOf[p] + week < firstWeekOf[p + 1] ? averageM3[firstWeekOf[p] + week] : 0;
+	}
+
+	/**
+	 * @param i the chunk index
+	 * @param s the size index
+	 * @param week goes from 0 to nWeeks - 1
+	 * @return average price as double, or 0 if the product has no data of this week
+	 */
+	public double getAveragePrice(int i, int s, int week) {
+		int p = i * nSizes + s;
+		return firstWeekOf[p] + week < firstWeekOf[p + 1] ? averagePrice[firstWeekOf[p] + week] : 0;
+	}
+
+	/**
+	 * @param i the chunk index
+	 * @param s the size index
+	 * @param season goes from 0 to 51
+	 * @return the seasonal index, or 0 if the product is not fitted
+	 */
+	public double getSeasonalIndex(int i, int s, int season) {
+		int first = firstSeasonOf[i * nSizes + s];
+		return first < 0 ? 0 : seasonalIndices[first + season];
+	}
+
+	public double getAverageAverageM3(int i, int s) {
+		return averageAverageM3[i * nSizes + s];
+	}
+
+	public double getUnitStorageCost(int i, int s) {
+		return unitStorageCost[i * nSizes + s];
+	}
+
+	public double getRelevanceScore(int i, int s) {
+		return relevanceScore[i * nSizes + s];
+	}
+
+	public double getLevel(int i, int s) {
+		return level[i * nSizes + s];
+	}
+
+	public double getTrend(int i, int s) {
+		return trend[i * nSizes + s];
+	}
+
+	public ArrayList<String> getChunkNames() {
+		return chunkNames;
+	}
+
+	public String[] getSizes() {
+		return sizes;
+	}
+
+	public int getNChunks() {
+		return nChunks;
+	}
+
+	public int getNSizes() {
+		return nSizes;
+	}
+
+	public int getNWeeks() {
+		return nWeeks;
+	}
+}
@@ -0,0 +1,239 @@
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * The QuantileSketch estimates quantiles (like the 5th percentile) of a stream of values without keeping the
+ * values. It counts the values in buckets whose width grows with the value (like the DDSketch of Masson,
+ * Rim and Lee, 2019): bucket i holds the values between gamma^(i-1) and gamma^i, with
+ * gamma = (1 + accuracy) / (1 - accuracy). The estimated quantile is then within the relative accuracy of
+ * a value of the stream with the right rank. Since only the buckets between the smallest and the largest
+ * value are stored, the memory does not grow with the number of values.
+ *
+ * Two sketches with the same accuracy can be merged by adding the counts of their buckets. The result is
+ * exactly the same as adding all values to one sketch, in any order.
+ *
+ * Infinite values (like the service level of a week with negative sales and no demand) have no bucket, they
+ * are counted separately and ranked below or above all finite values.
+ */
+public class QuantileSketch {
+	private double accuracy;
+	private double logGamma;
+	// The buckets of the positive values and of the absolute values of negative values
+	private Buckets positive = new Buckets();
+	private Buckets negative = new Buckets();
+	private long zeros = 0;
+	// The number of values that are -Infinity and +Infinity
+	private long negativeInfinite = 0;
+	private long positiveInfinite = 0;
+	private long count = 0;
+	private double min = Double.POSITIVE_INFINITY;
+	private double max = Double.NEGATIVE_INFINITY;
+
+	/**
+	 * Constructor for the QuantileSketch
+	 * @param accuracy the relative accuracy of the quantiles, e.g. 0.01 for 1%
+	 */
+	public QuantileSketch(double accuracy) {
+		this.accuracy = accuracy;
+		this.logGamma = Math.log((1 + accuracy) / (1 - accuracy));
+	}
+
+
+	/**
+	 * This method adds a value to the sketch. NaN values are skipped, infinite values are counted apart.
+	 * @param value
+	 */
+	public void add(double value) {
+		if(Double.isNaN(value)) {
+			return;
+		}
+		if(value == Double.POSITIVE_INFINITY) {
+			positiveInfinite++;
+		} else if(value == Double.NEGATIVE_INFINITY) {
+			negativeInfinite++;
+		} else if(value > 0) {
+			positive.add(index(value), 1);
+		} else if(value < 0) {
+			negative.add(index(-value), 1);
+		} else {
+			zeros++;
+		}
+		count++;
+		min = Math.min(min, value);
+		max = Math.max(max, value);
+	}
+
+	/**
+	 * This method adds the values of another sketch with the same accuracy to this sketch
+	 * @param other
+	 * @throws IllegalArgumentException if the accuracy of the sketches is different
+	 */
+	public void merge(QuantileSketch other) throws IllegalArgumentException {
+		if(other.accuracy != accuracy) {
+			throw new IllegalArgumentException("Sketches with a different accuracy can not be merged");
+		}
+		for(int j = 0; j < other.positive.counts.length; j++) {
+			positive.add(other.positive.offset + j, other.positive.counts[j]);
+		}
+		for(int j = 0; j < other.negative.counts.length; j++) {
+			negative.add(other.negative.offset + j, other.negative.counts[j]);
+		}
+		zeros += other.zeros;
+		negativeInfinite += other.negativeInfinite;
+		positiveInfinite += other.positiveInfinite;
+		count += other.count;
+		min = Math.min(min, other.min);
+		max = Math.max(max, other.max);
+	}
+
+	/**
+	 * This method estimates a quantile of the values
+	 * @param q between 0 and 1, e.g. 0.05 for the 5th percentile
+	 * @return the estimate, or NaN if the sketch is empty
+	 */
+	public double getQuantile(double q) {
+		if(count == 0) {
+			return Double.NaN;
+		}
+		if(q <= 0) {
+			return min;
+		}
+		if(q >= 1) {
+			return max;
+		}
+		// The values are ranked from 0 to count - 1
+		double rank = q * (count - 1);
+		long seen = negativeInfinite;
+		double estimate = max;
+		boolean found = seen > rank;
+		if(found) {
+			estimate = Double.NEGATIVE_INFINITY;
+		}
+		// From the most negative value upwards
+		for(int j = negative.counts.length - 1; j >= 0 && !found; j--) {
+			seen += negative.counts[j];
+			if(seen > rank) {
+				estimate = -value(j + negative.offset);
+				found = true;
+			}
+		}
+		if(!found) {
+			seen += zeros;
+			if(seen > rank) {
+				estimate = 0;
+				found = true;
+			}
+		}
+		for(int j = 0; j < positive.counts.length && !found; j++) {
+			seen += positive.counts[j];
+			if(seen > rank) {
+				estimate = value(j + positive.offset);
+				found = true;
+			}
+		}
+		// The estimate of the lowest and highest bucket can lie outside the values
+		return Math.max(min, Math.min(max, estimate));
+	}
+
+	public long getCount() {
+		return count;
+	}
+
+	public double getAccuracy() {
+		return accuracy;
+	}
+
+
+	private int index(double value) {
+		return (int) Math.ceil(Math.log(value) / logGamma);
+	}
+
+	/**
+	 * @param index
+	 * @return the value in the middle of the bucket (relative to the accuracy)
+	 */
+	private double value(int index) {
+		return 2 * Math.exp(index * logGamma) / (1 + Math.exp(logGamma));
+	}
+
+	/**
+	 * The counts of consecutive buckets. counts[j] is the count of bucket offset + j. The array only covers
+	 * the buckets from the lowest to the highest bucket that has a value.
+	 */
+	private static class Buckets {
+		long[] counts = new long[0];
+		int offset = 0;
+
+		void add(int index, long n) {
+			if(n == 0) {
+				return;
+			}
+			if(counts.length == 0) {
+				counts = new long[1];
+				offset = index;
+			} else if(index < offset || index >= offset + counts.length) {
+				int newOffset = Math.min(offset, index);
+				int newEnd = Math.max(offset + counts.length - 1, index);
+				long[] grown = new long[newEnd - newOffset + 1];
+				System.arraycopy(counts, 0, grown, offset - newOffset, counts.length);
+				counts = grown;
+				offset = newOffset;
+			}
+			counts[index - offset] += n;
+		}
+	}
+
+	/**
+	 * This method writes the sketch to a stream, see read
+	 * @param out
+	 * @throws IOException
+	 */
+	public void write(DataOutputStream out) throws IOException {
+		out.writeDouble(accuracy);
+		out.writeLong(zeros);
+		out.writeLong(negativeInfinite);
+		out.writeLong(positiveInfinite);
+		out.writeLong(count);
+		out.writeDouble(min);
+		out.writeDouble(max);
+		for(Buckets buckets : new Buckets[] {positive, negative}) {
+			out.writeInt(buckets.offset);
+			out.writeInt(buckets.counts.length);
+			for(long n : buckets.counts) {
+				out.writeLong(n);
+			}
+		}
+	}
+
+	/**
+	 * This method reads a sketch that is written by write. The sketch is exactly the same as the one that is
+	 * written.
+	 * @param in
+	 * @return
+	 * @throws IOException
+	 */
+	public static QuantileSketch read(DataInputStream in) throws IOException {
+		QuantileSketch sketch = new QuantileSketch(in.readDouble());
+		sketch.zeros = in.readLong();
+		sketch.negativeInfinite = in.readLong();
+		sketch.positiveInfinite = in.readLong();
+		sketch.count = in.readLong();
+		sketch.min = in.readDouble();
+		sketch.max = in.readDouble();
+		for(Buckets buckets : new Buckets[] {sketch.positive, sketch.negative}) {
+			buckets.offset = in.readInt();
+			buckets.counts = new long[in.readInt()];
+			for(int j = 0; j < buckets.counts.length; j++) {
+				buckets.counts[j] = in.readLong();
+			}
+		}
+		return sketch;
+	}
+
+	@Override
+	public String toString() {
+		return "QuantileSketch [count=" + count + ", min=" + min + ", max=" + max + ", buckets=" + Arrays.toString(positive.counts) + "]";
+	}
+}
@@ -58,6 +58,16 @@ public class ReadExcel {
 		
 		// Simulation options
 		parameters.put("nbrSimulations" , 100);
+		parameters.put("simulationSeed", 1234L); //The replications are run in parallel, the results only depend on this seed
+		//parameters.put("simulationTolerance", 0.001); //Keeps running replications until the 95% confidence intervals are within 0.1% of the mean
+		//parameters.put("maxSimulations", 10000); //The most replications the tolerance may take
+		//parameters.put("antitheticVariates", true); //Runs the replications in pairs with mirrored demand
+		//parameters.put("controlVariate", true); //Corrects the means with the known expected demand
+		//parameters.put("scenarioDirectory", "scenarios"); //Keeps the random demand in a file, so every policy is run with the same demand without drawing it again
+		//parameters.put("chunkPartitions", 8); //Runs the chunks of each replication in 8 parallel parts instead of the replications in parallel, for a few long simulations of a large catalog
+		//parameters.put("vectorizedKernel", true); //Only for simulationMain, not for the replications: separate loops without branches, about the same speed with drawn demand, the results are the same
+		//parameters.put("checkpointDirectory", "checkpoints"); //Saves the state of the simulation every checkpointInterval seconds, so a stopped run continues where it stopped
+		//parameters.put("checkpointInterval", 300);
 		
 		//model options
 		parameters.put("addOrderingConstraint", false); //Does not work leave false
@@ -89,6 +99,15 @@ public class ReadExcel {
 		ReadExcel.run(T, sizes, dt, parameters);
 		
 		
+		// Compares the four policies with the same random demand, which needs far fewer replications
+		/*
+		String[] inputs = {"/Users/floris/Documents/Studie/Year_3_Block_4/Input/dataFilesSolution_Baseline_2020.xlsx",
+				"/Users/floris/Documents/Studie/Year_3_Block_4/Input/dataFilesSolution_Baseline_2020_without_ordering_time.xlsx",
+				"/Users/floris/Documents/Studie/Year_3_Block_4/Input/dataFilesSolution_Heuristics_2020.xlsx",
+				"/Users/floris/Documents/Studie/Year_3_Block_4/Input/dataFilesSolution_Heuristics_2020_without_ordering time.xlsx"};
+		ReadExcel.compare(T, sizes, dt, parameters, inputs);
+		*/
+		
 		/*
 		int[][][] z = ReadExcel.getOrderUpToLevel(T,  sizes, dt, parameters);
 
@@ -114,6 +133,26 @@ public class ReadExcel {
 		}
 	}
 	
+	/**
+	 * This method reads the order up to levels of several files and compares them with Simulation.comparePolicies
+	 * @param T
+	 * @param sizes
+	 * @param dt
+	 * @param parameters
+	 * @param filePathInputs the files with the order up to levels, the first is the policy the others are compared with
+	 */
+	public static void compare(int[] T, String[] sizes,HashMap<String, HashMap<String, Product>> dt,
+			HashMap<String, Object> parameters, String[] filePathInputs) {
+		ArrayList<int[][][]> policies = new ArrayList<int[][][]>();
+		ArrayList<String> names = new ArrayList<String>();
+		for (String filePathInput : filePathInputs) {
+			parameters.put("filePathInput", filePathInput);
+			policies.add(ReadExcel.getOrderUpToLevel(T,  sizes, dt, parameters));
+			names.add(new File(filePathInput).getName());
+		}
+		Simulation.comparePolicies(T, sizes, dt, policies, names, parameters);
+	}
+	
 	public static int[][][] getOrderUpToLevel(int[] T, String[] sizes,HashMap<String, HashMap<String, Product>> data,
 			HashMap<String, Object> parameters){
 		int size = sizes.length;
@@ -144,14 +183,16 @@ public class ReadExcel {
 		        }
 		    }
 		    
+		    // The order up to levels can be stored as numbers or as text, the decoder reads both
+		    CellDecoder decoder = new CellDecoder(cols);
 		    for(int c = 0; c < cols; c++) {
 		    	row = sheet.getRow(1);
 //		    	cell = row.getCell(c);
-		    	String chunkName = row.getCell(c).getStringCellValue();
+		    	String chunkName = decoder.getString(row, c);
 		    	HashMap<String, Product> chunk = data.get(chunkName);
 		    	
 		    	row = sheet.getRow(2);
-		    	String sizeName = row.getCell(c).getStringCellValue();
+		    	String sizeName = decoder.getString(row, c);
 
 		    	Product prod = chunk.get(sizeName);
 				if (prod != null) {
@@ -191,7 +232,7 @@ public class ReadExcel {
 					}
 					
 					for (int t = 0; t < T[1]; t ++) {
-						orderLevel[t][i][s] = (int) sheet.getRow(t + 4).getCell(c).getNumericCellValue();
+						orderLevel[t][i][s] = decoder.getInt(sheet.getRow(t + 4), c);
 					}
 					
 				}	
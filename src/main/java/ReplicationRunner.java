@@ -0,0 +1,544 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import java.util.stream.IntStream;
+
+/**
+ * The ReplicationRunner runs the replications of the simulation of one order up to level in parallel, on
+ * the workers of the common pool, and collects their results in SimulationStatistics. The replications can
+ * be run in batches: every batch continues with the next replications, so running 96 and then 64
+ * replications gives exactly the same statistics as running 160 replications at once.
+ *
+ * Each replication draws its demand from its own DemandSampler. The samplers are split from one sampler
+ * with the given seed in the order of the replications. So the demand of a replication only depends on
+ * the seed and the index of the replication.
+ * The replications are divided in blocks of REPLICATIONS_PER_BLOCK replications. Each block runs its
+ * replications one after the other on its own BatchSimulationKernel, so the replications themselves do not
+ * allocate any memory, and adds them to its own SimulationStatistics. The statistics of the blocks are
+ * merged in the order of the blocks, so the statistics are exactly the same for any number of threads.
+ * The blocks are run in waves of a few blocks per thread, so the memory does not grow with the number of
+ * replications, unless the results of each replication are kept.
+ *
+ * The runner can evaluate several order up to levels (policies) at once. The BatchSimulationKernel draws the
+ * demand of a replication once and runs every policy with it (common random numbers), so the differences
+ * between the policies are much less noisy than with independent replications, and each extra policy costs
+ * little time. For each policy after the first, the runner keeps the
+ * statistics of its results minus those of the first policy. The demand does not depend on the policy, so
+ * running the policies separately with the same seed gives the same results.
+ *
+ * Two more variance reduction techniques can be switched on with the parameters:
+ * - "antitheticVariates": each replication is run with a pair of samplers (see DemandSampler.antitheticPair),
+ *   and the pair counts as one observation
+ * - "controlVariate": the products demanded, whose expected value follows from the forecasts, are used
+ *   as a control variate for the other metrics (see SimulationStatistics)
+ *
+ * With setScenarios, the demand is read from a ScenarioStore instead of drawn: replication n uses scenario n.
+ *
+ * With the chunkPartitions setting, the blocks run one after the other and the chunks of each replication
+ * run in parallel instead (see BatchSimulationKernel), so everything above also works for a few long
+ * replications of a very large catalog.
+ *
+ * With setCheckpoint, the runner writes its state to a checkpoint file every few minutes: the statistics,
+ * the number of replications and, if they are kept, the results of each replication, compressed with gzip
+ * (most buckets of the percentiles are empty). The samplers are not
+ * written: since they are split from one sampler in the order of the replications, a runner that reads the
+ * checkpoint splits the same number of samplers again. So a run that is stopped and started again continues
+ * with the next replication and gives exactly the same results as a run that is not stopped. When the run
+ * is finished, deleteCheckpoint removes the file.
+ */
+public class ReplicationRunner {
+	// The number of replications that are run one after the other by one thread
+	public static final int REPLICATIONS_PER_BLOCK = 16;
+	// The confidence level of the stopping rule
+	public static final double CONFIDENCE_LEVEL = 0.95;
+	private static final int CHECKPOINT_MAGIC = 0x43484B50;
+	// The version of the format of the checkpoints, a checkpoint of another version is not used
+	private static final int CHECKPOINT_VERSION = 2;
+
+	private int[] T;
+	private int nPolicies;
+	// The number of replications per observation, 2 for antithetic pairs
+	private int pairSize;
+	// The samplers of the members of an antithetic pair get the same stream of numbers
+	private DemandSampler[] roots;
+	// The kernel of each block of a wave
+	private BatchSimulationKernel[] kernels;
+	private SimulationStatistics[] statistics;
+	// The results of each policy minus those of the first policy
+	private SimulationStatistics[] differences;
+	private int nbrSimulations = 0;
+	// The scenarios to read the demand from, or null to draw the demand
+	private ScenarioStore scenarios = null;
+
+	private long seed;
+	private boolean control;
+	private ProductStore store;
+	// The number of replications at the end of the run that is running
+	private int target = 0;
+	// The checkpoint file, or null if no checkpoints are written
+	private File checkpoint = null;
+	private long checkpointHash;
+	private long checkpointInterval;
+	private long lastCheckpoint;
+	// The state is read from a checkpoint, so runUntil first finishes the batch of the checkpoint
+	private boolean resumed = false;
+
+	/**
+	 * Constructor for the ReplicationRunner
+	 * @param T Array with start and end week of the period
+	 * @param store All the data on the products
+	 * @param z The ordering up to levels for each product
+	 * @param seed The seed of the random demand
+	 * @param parameters The settings of the simulation
+	 */
+	public ReplicationRunner(int[] T, ProductStore store, int[][][] z, long seed, HashMap<String, Object> parameters) {
+		this(T, store, z, seed, SimulationConfig.fromParameters(parameters));
+	}
+
+	/**
+	 * Constructor for the ReplicationRunner
+	 * @param T Array with start and end week of the period
+	 * @param store All the data on the products
+	 * @param z The ordering up to levels for each product
+	 * @param seed The seed of the random demand
+	 * @param config The settings of the simulation
+	 */
+	public ReplicationRunner(int[] T, ProductStore store, int[][][] z, long seed, SimulationConfig config) {
+		this(T, store, new ArrayList<int[][][]>(Collections.singletonList(z)), seed, config);
+	}
+
+	/**
+	 * Constructor for the ReplicationRunner of several policies
+	 * @param T Array with start and end week of the period
+	 * @param store All the data on the products
+	 * @param policies The ordering up to levels of each policy
+	 * @param seed The seed of the random demand
+	 * @param parameters The settings of the simulation
+	 */
+	public ReplicationRunner(int[] T, ProductStore store, ArrayList<int[][][]> policies, long seed,
+			HashMap<String, Object> parameters) {
+		this(T, store, policies, seed, SimulationConfig.fromParameters(parameters));
+	}
+
+	/**
+	 * Constructor for the ReplicationRunner of several policies
+	 * @param T Array with start and end week of the period
+	 * @param store All the data on the products
+	 * @param policies The ordering up to levels of each policy
+	 * @param seed The seed of the random demand
+	 * @param config The settings of the simulation
+	 */
+	public ReplicationRunner(int[] T, ProductStore store, ArrayList<int[][][]> policies, long seed, SimulationConfig config) {
+		this.T = T;
+		this.nPolicies = policies.size();
+		this.seed = seed;
+		this.store = store;
+		boolean antithetic = config.isAntitheticVariates();
+		control = config.isControlVariate();
+		pairSize = antithetic ? 2 : 1;
+		roots = antithetic ? DemandSampler.antitheticPair(seed) : new DemandSampler[] {new DemandSampler(seed)};
+		
+		BatchSimulationKernel kernel = new BatchSimulationKernel(T, store, policies, config);
+		// With parts of the chunks, the parts of each replication run in parallel instead of the blocks
+		kernels = new BatchSimulationKernel[config.getChunkPartitions() > 1 ? 1 : 4 * ForkJoinPool.getCommonPoolParallelism()];
+		for (int b = 0; b < kernels.length; b++) {
+			kernels[b] = b == 0 ? kernel : kernel.copy();
+		}
+		// The expected demand does not depend on the policy
+		double expectedDemand = control ? new SimulationKernel(T, store, policies.get(0), config).getExpectedDemand() : Double.NaN;
+		statistics = new SimulationStatistics[nPolicies];
+		differences = new SimulationStatistics[nPolicies];
+		for (int j = 0; j < nPolicies; j++) {
+			statistics[j] = new SimulationStatistics(T);
+			statistics[j].setExpectedDemand(expectedDemand);
+			differences[j] = j == 0 ? null : new SimulationStatistics(T);
+		}
+	}
+
+
+	/**
+	 * This method runs the next replications of each policy. If the replications before did not end at the
+	 * end of a block, the block boundaries shift, so the statistics can differ in the last bits from running
+	 * all replications at once.
+	 * @param n The number of replications, with antithetic pairs rounded up to an even number
+	 * @param replications The list to add the results of each replication of the first policy to, in the
+	 * order of the replications, or null if they are not needed
+	 */
+	public void run(int n, ArrayList<ArrayList<Double>> replications) {
+		int done = nbrSimulations / pairSize;
+		int nObservations = (n + pairSize - 1) / pairSize;
+		int nBlocks = (nObservations + REPLICATIONS_PER_BLOCK - 1) / REPLICATIONS_PER_BLOCK;
+		target = nbrSimulations + nObservations * pairSize;
+		for (int firstBlock = 0; firstBlock < nBlocks; firstBlock += kernels.length) {
+			int first = firstBlock * REPLICATIONS_PER_BLOCK;
+			int end = Math.min(nObservations, (firstBlock + kernels.length) * REPLICATIONS_PER_BLOCK);
+			DemandSampler[][] samplers = new DemandSampler[end - first][roots.length];
+			for (int k = 0; k < samplers.length; k++) {
+				for (int j = 0; j < roots.length; j++) {
+					samplers[k][j] = roots[j].split();
+				}
+			}
+			double[][] results = replications == null ? null : new double[(end - first) * pairSize][];
+			SimulationStatistics[][] blockStatistics = new SimulationStatistics[Math.min(kernels.length, nBlocks - firstBlock)][];
+			IntStream.range(0, blockStatistics.length).parallel().forEach(b -> {
+				blockStatistics[b] = runBlock(kernels[b], samplers, done + first, b * REPLICATIONS_PER_BLOCK,
+						Math.min(samplers.length, (b + 1) * REPLICATIONS_PER_BLOCK), results);
+			});
+			for (SimulationStatistics[] blockStatistic : blockStatistics) {
+				for (int j = 0; j < nPolicies; j++) {
+					statistics[j].merge(blockStatistic[j]);
+					if (j > 0) {
+						differences[j].merge(blockStatistic[nPolicies + j]);
+					}
+				}
+			}
+			if (results != null) {
+				for (double[] result : results) {
+					replications.add(SimulationKernel.toList(result));
+				}
+			}
+			nbrSimulations += (end - first) * pairSize;
+			// A checkpoint is only written between the waves, which end at the end of a block
+			if (checkpoint != null && (nbrSimulations == target || System.currentTimeMillis() - lastCheckpoint >= checkpointInterval)) {
+				writeCheckpoint(replications);
+			}
+		}
+	}
+	
+	/**
+	 * This method runs the observations of one block, for every policy
+	 * @param kernel the kernel of the block
+	 * @param samplers the samplers of each observation
+	 * @param firstOfWave the number of observations before the wave, observation k of the wave uses scenario
+	 * firstOfWave + k
+	 * @param first the first observation of the block
+	 * @param end the end of the observations of the block
+	 * @param results the array to store the results of the first policy in, or null
+	 * @return the statistics of each policy, followed by those of the differences with the first policy
+	 */
+	private SimulationStatistics[] runBlock(BatchSimulationKernel kernel, DemandSampler[][] samplers, int firstOfWave,
+			int first, int end, double[][] results) {
+		SimulationStatistics[] blockStatistics = new SimulationStatistics[2 * nPolicies];
+		for (int j = 0; j < blockStatistics.length; j++) {
+			blockStatistics[j] = new SimulationStatistics(T);
+		}
+		int size = kernel.getResultSize();
+		// The results of each policy, for each member of a pair
+		double[][][] result = new double[pairSize][nPolicies][size];
+		double[][] difference = new double[pairSize][size];
+		for (int k = first; k < end; k++) {
+			if (scenarios != null) {
+				kernel.run(scenarios, firstOfWave + k, result[0]);
+			} else {
+				for (int a = 0; a < pairSize; a++) {
+					kernel.run(samplers[k][a], result[a]);
+				}
+			}
+			for (int j = 0; j < nPolicies; j++) {
+				if (pairSize == 2) {
+					blockStatistics[j].addPair(result[0][j], result[1][j]);
+				} else {
+					blockStatistics[j].add(result[0][j]);
+				}
+				if (j == 0) {
+					continue;
+				}
+				for (int a = 0; a < pairSize; a++) {
+					for (int m = 0; m < size; m++) {
+						difference[a][m] = result[a][j][m] - result[a][0][m];
+					}
+				}
+				if (pairSize == 2) {
+					blockStatistics[nPolicies + j].addPair(difference[0], difference[1]);
+				} else {
+					blockStatistics[nPolicies + j].add(difference[0]);
+				}
+			}
+			if (results != null) {
+				for (int a = 0; a < pairSize; a++) {
+					results[k * pairSize + a] = result[a][0].clone();
+				}
+			}
+		}
+		return blockStatistics;
+	}
+
+	/**
+	 * This method runs replications in batches until the confidence intervals of the revenue, the service
+	 * level of the whole period and the service level of the worst week are narrow enough, or until the
+	 * maximum number of replications is reached. After each batch, the number of replications that is
+	 * needed is estimated from the widest interval (the half width decreases with the square root of the
+	 * number of replications), but a batch at most doubles the number of replications.
+	 * @param first The number of replications of the first batch
+	 * @param tolerance The largest half width of the intervals, relative to the mean, e.g. 0.001 for 0.1%
+	 * @param maxSimulations The largest number of replications
+	 * @param replications The list to add the results of each replication to, or null if they are not needed
+	 * @return true if the intervals are narrow enough, false if the maximum number of replications is reached
+	 * before
+	 */
+	public boolean runUntil(int first, double tolerance, int maxSimulations, ArrayList<ArrayList<Double>> replications) {
+		int batch = Math.max(first, 2 * pairSize);
+		int blockSize = REPLICATIONS_PER_BLOCK * pairSize;
+		boolean finishBatch = resumed;
+		resumed = false;
+		while (batch > 0 || finishBatch) {
+			if (finishBatch) {
+				// The run continues from a checkpoint, first the batch that was running is finished
+				finishBatch = false;
+				run(Math.max(0, target - nbrSimulations), replications);
+			} else {
+				// Whole blocks, so the statistics are the same as running all replications at once
+				batch = (batch + blockSize - 1) / blockSize * blockSize;
+				batch = Math.min(batch, maxSimulations - nbrSimulations);
+				if (batch <= 0) {
+					break;
+				}
+				run(batch, replications);
+			}
+			double halfWidth = getRelativeHalfWidth();
+			if (halfWidth <= tolerance) {
+				return true;
+			}
+			double needed = nbrSimulations * (halfWidth / tolerance) * (halfWidth / tolerance);
+			batch = (int) Math.min(nbrSimulations, Math.ceil(needed) - nbrSimulations);
+		}
+		return getRelativeHalfWidth() <= tolerance;
+	}
+
+	/**
+	 * This method calculates the widest half width of the confidence intervals of the stopping rule: the
+	 * revenue, the service level of the whole period and the service level of the week with the lowest mean
+	 * service level, of every policy
+	 * @return the half width relative to the mean
+	 */
+	public double getRelativeHalfWidth() {
+		double widest = 0;
+		for (SimulationStatistics policy : statistics) {
+			int worstWeek = policy.serviceLevelOfWeek(T[0]);
+			for (int t = T[0] + 1; t < T[1]; t++) {
+				if (policy.getMean(policy.serviceLevelOfWeek(t)) < policy.getMean(worstWeek)) {
+					worstWeek = policy.serviceLevelOfWeek(t);
+				}
+			}
+			int[] metrics = {SimulationStatistics.REVENUE, SimulationStatistics.SERVICE_LEVEL, worstWeek};
+			for (int metric : metrics) {
+				double[] interval = policy.getConfidenceInterval(metric, CONFIDENCE_LEVEL);
+				widest = Math.max(widest, (interval[1] - interval[0]) / 2 / Math.abs(policy.getMean(metric)));
+			}
+		}
+		return widest;
+	}
+
+	/**
+	 * This method makes the next replications read their demand from a ScenarioStore
+	 * @param scenarios the scenarios, of the same period and products, or null to draw the demand again
+	 * @throws IllegalArgumentException if the scenarios do not fit the simulation, or antithetic variates are used
+	 * @throws IllegalStateException if setCheckpoint was called already, its checkpoint is of the demand before
+	 */
+	public void setScenarios(ScenarioStore scenarios) throws IllegalArgumentException, IllegalStateException {
+		if (checkpoint != null) {
+			throw new IllegalStateException("The scenarios have to be set before the checkpoint");
+		}
+		if (scenarios != null && (pairSize != 1 || scenarios.getFirstWeek() != T[0] || scenarios.getNWeeks() != T[1] - T[0]
+				|| scenarios.getNProducts() != kernels[0].getNProducts())) {
+			throw new IllegalArgumentException("The scenarios do not fit this simulation");
+		}
+		this.scenarios = scenarios;
+	}
+
+	/**
+	 * This method makes the runner write checkpoints to a directory, and continues from the checkpoint of an
+	 * earlier run with the same policies, data and settings if there is one. The name of the checkpoint
+	 * file contains the seed and a hash of the policies, the data, the settings and the scenario file, so the
+	 * runs of different policies, or with drawn demand and with the demand of scenarios, do not use each others
+	 * checkpoints. So setScenarios has to be called first. The checkpoint is kept until deleteCheckpoint is
+	 * called, when the run is finished.
+	 * @param directory the directory of the checkpoint files
+	 * @param config The settings of the simulation, with the interval of the checkpoints
+	 * @param replications The list of the results of each replication of the run, or null if they are not
+	 * needed. The results of the checkpoint are added to it.
+	 * @return true if the runner continues from a checkpoint
+	 */
+	public boolean setCheckpoint(File directory, SimulationConfig config, ArrayList<ArrayList<Double>> replications) {
+		long hash = kernels[0].getPolicyHash();
+		hash = 31 * hash + ScenarioStore.catalogHash(store);
+		hash = 31 * hash + pairSize * 2 + (control ? 1 : 0);
+		hash = 31 * hash + config.getChunkPartitions();
+		hash = 31 * hash + config.getNbrSimulations();
+		hash = 31 * hash + (config.isAdaptive() ? Double.hashCode(config.getSimulationTolerance()) + 31 * config.getMaxSimulations() : 0);
+		hash = 31 * hash + (replications == null ? 0 : 1);
+		hash = 31 * hash + (scenarios == null ? 0 : 1 + scenarios.getFile().getName().hashCode());
+		checkpointHash = hash;
+		checkpointInterval = config.getCheckpointInterval();
+		checkpoint = new File(directory, "checkpoint_" + seed + "_" + Long.toHexString(hash) + ".bin");
+		lastCheckpoint = System.currentTimeMillis();
+		directory.mkdirs();
+		if (!checkpoint.exists() || nbrSimulations > 0) {
+			return false;
+		}
+		try {
+			readCheckpoint(replications);
+		} catch (IOException e) {
+			System.out.println("The checkpoint " + checkpoint.getName() + " can not be used, the run starts again: " + e.getMessage());
+			return false;
+		}
+		// The samplers of the replications that are done are split again, so the next replication gets the same sampler
+		for (int k = 0; k < nbrSimulations / pairSize; k++) {
+			for (DemandSampler root : roots) {
+				root.split();
+			}
+		}
+		resumed = true;
+		System.out.println("Continuing after " + nbrSimulations + " simulations of " + checkpoint.getName());
+		return true;
+	}
+
+	/**
+	 * This method deletes the checkpoint when the run is finished, so it does not stay in the directory and a
+	 * new run of the same simulation starts again. The runner does not write checkpoints after this.
+	 */
+	public void deleteCheckpoint() {
+		if (checkpoint == null) {
+			return;
+		}
+		if (checkpoint.exists() && !checkpoint.delete()) {
+			System.out.println("The checkpoint " + checkpoint.getName() + " can not be deleted");
+		}
+		checkpoint = null;
+	}
+
+	private void writeCheckpoint(ArrayList<ArrayList<Double>> replications) {
+		File temporary = new File(checkpoint.getPath() + ".tmp");
+		try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new GZIPOutputStream(new FileOutputStream(temporary))))) {
+			out.writeInt(CHECKPOINT_MAGIC);
+			out.writeInt(CHECKPOINT_VERSION);
+			out.writeLong(checkpointHash);
+			out.writeLong(seed);
+			out.writeInt(nPolicies);
+			out.writeInt(nbrSimulations);
+			out.writeInt(target);
+			for (int j = 0; j < nPolicies; j++) {
+				statistics[j].write(out);
+				if (j > 0) {
+					differences[j].write(out);
+				}
+			}
+			out.writeInt(replications == null ? 0 : replications.size());
+			for (int k = 0; replications != null && k < replications.size(); k++) {
+				ArrayList<Double> result = replications.get(k);
+				out.writeInt(result.size());
+				for (double value : result) {
+					out.writeDouble(value);
+				}
+			}
+		} catch (IOException e) {
+			System.out.println("The checkpoint " + checkpoint.getName() + " can not be written: " + e.getMessage());
+			return;
+		}
+		try {
+			// Replace the checkpoint at once, so a run that is stopped while writing keeps the checkpoint before
+			Files.move(temporary.toPath(), checkpoint.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} catch (IOException e) {
+			System.out.println("The checkpoint " + checkpoint.getName() + " can not be written: " + e.getMessage());
+		}
+		lastCheckpoint = System.currentTimeMillis();
+	}
+
+	private void readCheckpoint(ArrayList<ArrayList<Double>> replications) throws IOException {
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(new GZIPInputStream(new FileInputStream(checkpoint))))) {
+			if (in.readInt() != CHECKPOINT_MAGIC) {
+				throw new IOException("it is not a checkpoint");
+			}
+			int version = in.readInt();
+			if (version != CHECKPOINT_VERSION) {
+				throw new IOException("the checkpoint has version " + version + " instead of " + CHECKPOINT_VERSION);
+			}
+			if (in.readLong() != checkpointHash || in.readLong() != seed
+					|| in.readInt() != nPolicies) {
+				throw new IOException("it is not a checkpoint of this simulation");
+			}
+			int done = in.readInt();
+			int checkpointTarget = in.readInt();
+			SimulationStatistics[] readStatistics = new SimulationStatistics[nPolicies];
+			SimulationStatistics[] readDifferences = new SimulationStatistics[nPolicies];
+			for (int j = 0; j < nPolicies; j++) {
+				readStatistics[j] = SimulationStatistics.read(in);
+				readDifferences[j] = j == 0 ? null : SimulationStatistics.read(in);
+			}
+			int nResults = in.readInt();
+			ArrayList<ArrayList<Double>> results = new ArrayList<ArrayList<Double>>(nResults);
+			for (int k = 0; k < nResults; k++) {
+				int size = in.readInt();
+				ArrayList<Double> result = new ArrayList<Double>(size);
+				for (int m = 0; m < size; m++) {
+					result.add(in.readDouble());
+				}
+				results.add(result);
+			}
+			// Only change the runner when the whole checkpoint is read
+			statistics = readStatistics;
+			differences = readDifferences;
+			nbrSimulations = done;
+			target = checkpointTarget;
+			if (replications != null) {
+				replications.addAll(results);
+			}
+		}
+	}
+
+	/**
+	 * @return the statistics of the first policy
+	 */
+	public SimulationStatistics getStatistics() {
+		return statistics[0];
+	}
+
+	/**
+	 * @param policy
+	 * @return the statistics of the policy
+	 */
+	public SimulationStatistics getStatistics(int policy) {
+		return statistics[policy];
+	}
+
+	/**
+	 * @param policy a policy after the first
+	 * @return the statistics of the results of the policy minus those of the first policy
+	 */
+	public SimulationStatistics getDifferences(int policy) {
+		return differences[policy];
+	}
+
+	/**
+	 * This method calculates how many times more replications independent replications of the two policies
+	 * would need for the same confidence interval of the difference of a metric, compared to common random
+	 * numbers: the variance of the difference of independent results divided by that of the differences
+	 * @param policy a policy after the first
+	 * @param metric
+	 * @return
+	 */
+	public double getCommonRandomNumbersFactor(int policy, int metric) {
+		double independent = statistics[0].getSampleVariance(metric) + statistics[policy].getSampleVariance(metric);
+		return independent / differences[policy].getSampleVariance(metric);
+	}
+
+	/**
+	 * @return the number of replications that are run
+	 */
+	public int getNbrSimulations() {
+		return nbrSimulations;
+	}
+}
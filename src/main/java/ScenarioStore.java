@@ -0,0 +1,339 @@
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.IntStream;
+
+/**
+ * The ScenarioStore keeps the random demand of a number of replications (scenarios) in a file, so it only has
+ * to be drawn once. Comparing policies, or running the simulation again, then reads the same demand from the
+ * file instead of drawing it again. The file is memory mapped for reading, so several threads (and several
+ * JVMs that evaluate different policies) share the one copy that the operating system keeps in its page cache.
+ * It is written with plain writes and never mapped while it is written or replaced, since Windows does not
+ * allow a mapped file to be moved, replaced or changed in length.
+ *
+ * The demand of scenario n, week w (counted from the first week) and product k is stored at
+ * (n * nWeeks + w) * nProducts + k, after a header. The products are numbered like in the SimulationKernel:
+ * the products that are present, in the order of the chunks and sizes of the ProductStore. The values are
+ * stored as 16 bit numbers, or as 32 bit numbers if a demand does not fit in 16 bits.
+ *
+ * The scenarios are drawn with DemandSamplers that are split from one sampler with the seed, in the order of
+ * the scenarios, just like the ReplicationRunner does. So the simulation gives exactly the same results with
+ * the demand of the file as with the demand drawn during the simulation.
+ *
+ * The name of the file contains the seed, the distribution of the demand, the period and a hash of the
+ * forecasts of the products (the catalog), so a file is only used for the same data and settings.
+ */
+public class ScenarioStore {
+	private static final int MAGIC = 0x5343454E;
+	private static final int VERSION = 1;
+	private static final int HEADER_SIZE = 64;
+	// The largest part of the file that is mapped at once, a MappedByteBuffer can hold at most 2 GB
+	private static final long SEGMENT_SIZE = 1L << 30;
+	// The number of scenarios that are drawn at once
+	private static final int SCENARIOS_PER_WAVE = 256;
+
+	private File file;
+	private long seed;
+	private int distribution;
+	private long catalogHash;
+	private int firstWeek;
+	private int nWeeks;
+	private int nProducts;
+	private int nScenarios;
+	private int bytesPerValue;
+	private long scenarioSize;
+	private int scenariosPerSegment;
+	private MappedByteBuffer[] segments;
+
+	/**
+	 * This method opens the scenario file of the given seed, distribution, period and catalog in a directory.
+	 * If the file does not exist yet, or has too few scenarios, the scenarios are drawn and the file is written
+	 * first. The file is written under a temporary name and renamed when it is complete, so other JVMs never
+	 * read a file that is only half written.
+	 * @param directory the directory of the scenario files
+	 * @param T Array with start and end week of the period
+	 * @param store All the data on the products
+	 * @param seed The seed of the random demand
+	 * @param nScenarios The number of scenarios that is needed
+	 * @param parameters The settings of the simulation (usePlusXInSales and usePoisson)
+	 * @return
+	 * @throws IOException if the file can not be read or written
+	 */
+	public static ScenarioStore openOrCreate(File directory, int[] T, ProductStore store, long seed, int nScenarios,
+			HashMap<String, Object> parameters) throws IOException {
+		return openOrCreate(directory, T, store, seed, nScenarios, SimulationConfig.fromParameters(parameters).getDemandModel());
+	}
+
+	/**
+	 * This method opens or writes the scenario file of the given seed, DemandModel, period and catalog in a
+	 * directory, see the method above
+	 * @param directory the directory of the scenario files
+	 * @param T Array with start and end week of the period
+	 * @param store All the data on the products
+	 * @param seed The seed of the random demand
+	 * @param nScenarios The number of scenarios that is needed
+	 * @param demandModel The distribution of the demand
+	 * @return
+	 * @throws IOException if the file can not be read or written
+	 */
+	public static ScenarioStore openOrCreate(File directory, int[] T, ProductStore store, long seed, int nScenarios,
+			DemandModel demandModel) throws IOException {
+		// The ordinal of the model is kept in the header, so the order of the DemandModels should not change
+		int distribution = demandModel.ordinal();
+		long catalogHash = catalogHash(store);
+		File file = new File(directory, "scenarios_" + seed + "_" + demandModel.getName() + "_" + T[0] + "_" + T[1]
+				+ "_" + Long.toHexString(catalogHash) + ".bin");
+		if (file.exists()) {
+			ScenarioStore scenarios = new ScenarioStore(file);
+			if (scenarios.seed == seed && scenarios.distribution == distribution && scenarios.catalogHash == catalogHash
+					&& scenarios.firstWeek == T[0] && scenarios.nWeeks == T[1] - T[0] && scenarios.nScenarios >= nScenarios) {
+				System.out.println("Using the " + scenarios.nScenarios + " scenarios of " + file.getName());
+				return scenarios;
+			}
+		}
+		directory.mkdirs();
+		long tic = System.currentTimeMillis();
+		File temporary = null;
+		try {
+			temporary = File.createTempFile("scenarios", ".tmp", directory);
+			// First try 16 bit values, a demand that does not fit means that the scenarios are drawn again with
+			// 32 bits, into a new file
+			if (!write(temporary, T, store, seed, nScenarios, distribution, catalogHash, 2)) {
+				Files.delete(temporary.toPath());
+				temporary = File.createTempFile("scenarios", ".tmp", directory);
+				write(temporary, T, store, seed, nScenarios, distribution, catalogHash, 4);
+			}
+			Files.move(temporary.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} catch (IOException | RuntimeException e) {
+			if (temporary != null) {
+				temporary.delete();
+			}
+			throw e;
+		}
+		long toc = System.currentTimeMillis();
+		System.out.println("Drew " + nScenarios + " scenarios into " + file.getName() + " in " + (toc - tic) + " ms");
+		return new ScenarioStore(file);
+	}
+
+	/**
+	 * Constructor for the ScenarioStore, which maps an existing scenario file
+	 * @param file
+	 * @throws IOException if the file can not be read or is not a scenario file
+	 */
+	public ScenarioStore(File file) throws IOException {
+		this.file = file;
+		try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+			// The header is read without mapping it, so a file that is outdated can still be replaced
+			ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+			int read = 0;
+			while (header.hasRemaining() && read >= 0) {
+				read = channel.read(header, header.position());
+			}
+			header.flip();
+			if (header.remaining() < HEADER_SIZE || header.getInt() != MAGIC || header.getInt() != VERSION) {
+				throw new IOException(file + " is not a scenario file of this version");
+			}
+			seed = header.getLong();
+			distribution = header.getInt();
+			catalogHash = header.getLong();
+			firstWeek = header.getInt();
+			nWeeks = header.getInt();
+			nProducts = header.getInt();
+			nScenarios = header.getInt();
+			bytesPerValue = header.getInt();
+			scenarioSize = (long) nWeeks * nProducts * bytesPerValue;
+			if (channel.size() < HEADER_SIZE + nScenarios * scenarioSize) {
+				throw new IOException(file + " is not complete");
+			}
+
+			// A segment holds a whole number of scenarios, so a scenario never spans two segments
+			scenariosPerSegment = (int) Math.max(1, Math.min(nScenarios, SEGMENT_SIZE / Math.max(1, scenarioSize)));
+			segments = new MappedByteBuffer[(nScenarios + scenariosPerSegment - 1) / scenariosPerSegment];
+			for (int j = 0; j < segments.length; j++) {
+				long start = HEADER_SIZE + j * scenariosPerSegment * scenarioSize;
+				long size = Math.min(scenariosPerSegment, nScenarios - j * scenariosPerSegment) * scenarioSize;
+				segments[j] = channel.map(FileChannel.MapMode.READ_ONLY, start, size);
+				segments[j].order(ByteOrder.LITTLE_ENDIAN);
+			}
+		}
+	}
+
+
+	/**
+	 * This method reads the demand of all products of one week of a scenario. It only reads from the mapped
+	 * file, so it can be used by multiple threads at once.
+	 * @param scenario goes from 0 to nScenarios - 1
+	 * @param week the week, counted from the first week of the period
+	 * @param demand the array to fill, with the demand of product k at index k
+	 */
+	public void readWeek(int scenario, int week, int[] demand) {
+		readWeek(scenario, week, demand, 0, nProducts);
+	}
+
+	/**
+	 * This method reads the demand of the products first till end of one week of a scenario, see the method
+	 * above
+	 * @param scenario goes from 0 to nScenarios - 1
+	 * @param week the week, counted from the first week of the period
+	 * @param demand the array to fill, with the demand of product k at index k
+	 * @param first the first product
+	 * @param end the end of the products
+	 */
+	public void readWeek(int scenario, int week, int[] demand, int first, int end) {
+		if (scenario >= nScenarios) {
+			throw new IllegalStateException("The scenario file " + file.getName() + " has only " + nScenarios + " scenarios");
+		}
+		MappedByteBuffer segment = segments[scenario / scenariosPerSegment];
+		int position = (int) ((scenario % scenariosPerSegment) * scenarioSize + (long) week * nProducts * bytesPerValue);
+		if (bytesPerValue == 2) {
+			for (int k = first; k < end; k++) {
+				demand[k] = segment.getShort(position + 2 * k);
+			}
+		} else {
+			for (int k = first; k < end; k++) {
+				demand[k] = segment.getInt(position + 4 * k);
+			}
+		}
+	}
+
+	public int getNScenarios() {
+		return nScenarios;
+	}
+
+	public int getNProducts() {
+		return nProducts;
+	}
+
+	public int getFirstWeek() {
+		return firstWeek;
+	}
+
+	public int getNWeeks() {
+		return nWeeks;
+	}
+
+	/**
+	 * @return the scenario file, its name contains the seed and the hash of the products and settings
+	 */
+	public File getFile() {
+		return file;
+	}
+
+
+	/**
+	 * This method draws the scenarios and writes them to a file
+	 * @return false if a demand does not fit in the number of bytes per value, the file is then not complete
+	 * @throws IOException
+	 */
+	private static boolean write(File file, int[] T, ProductStore store, long seed, int nScenarios, int distribution,
+			long catalogHash, int bytesPerValue) throws IOException {
+		int nWeeks = T[1] - T[0];
+		// The store index of each product that is present, in the order of the SimulationKernel
+		int[] storeIndex = new int[store.getNChunks() * store.getNSizes()];
+		int nProducts = 0;
+		for (int i = 0; i < store.getNChunks(); i++) {
+			for (int s = 0; s < store.getNSizes(); s++) {
+				if (store.isPresent(i, s)) {
+					storeIndex[nProducts++] = store.index(i, s);
+				}
+			}
+		}
+		int products = nProducts;
+		long scenarioSize = (long) nWeeks * nProducts * bytesPerValue;
+		if (scenarioSize > SEGMENT_SIZE) {
+			throw new IOException("A scenario of " + scenarioSize + " bytes is too large");
+		}
+		DemandModel demandModel = DemandModel.values()[distribution];
+		int min = bytesPerValue == 2 ? Short.MIN_VALUE : Integer.MIN_VALUE;
+		int max = bytesPerValue == 2 ? Short.MAX_VALUE : Integer.MAX_VALUE;
+		AtomicBoolean fits = new AtomicBoolean(true);
+
+		try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.WRITE)) {
+			ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+			header.putInt(MAGIC).putInt(VERSION).putLong(seed).putInt(distribution).putLong(catalogHash);
+			header.putInt(T[0]).putInt(nWeeks).putInt(nProducts).putInt(nScenarios).putInt(bytesPerValue);
+			header.clear();
+			write(channel, header, 0);
+
+			DemandSampler root = new DemandSampler(seed);
+			for (int first = 0; first < nScenarios && fits.get(); first += SCENARIOS_PER_WAVE) {
+				int end = Math.min(nScenarios, first + SCENARIOS_PER_WAVE);
+				DemandSampler[] samplers = new DemandSampler[end - first];
+				for (int n = 0; n < samplers.length; n++) {
+					samplers[n] = root.split();
+				}
+				int wave = first;
+				IntStream.range(0, samplers.length).parallel().forEach(n -> {
+					long offset = HEADER_SIZE + (wave + n) * scenarioSize;
+					int[] demandOfStore = new int[store.getNChunks() * store.getNSizes()];
+					// The demand of one week, which is written at its own position in the file
+					ByteBuffer week = ByteBuffer.allocate(products * bytesPerValue).order(ByteOrder.LITTLE_ENDIAN);
+					for (int w = 0; w < nWeeks && fits.get(); w++) {
+						demandModel.fillDemand(store, T[0] + w, samplers[n], demandOfStore);
+						week.clear();
+						for (int k = 0; k < products; k++) {
+							int demand = demandOfStore[storeIndex[k]];
+							if (demand < min || demand > max) {
+								fits.set(false);
+							} else if (bytesPerValue == 2) {
+								week.putShort((short) demand);
+							} else {
+								week.putInt(demand);
+							}
+						}
+						week.clear();
+						try {
+							write(channel, week, offset + (long) w * products * bytesPerValue);
+						} catch (IOException e) {
+							throw new UncheckedIOException(e);
+						}
+					}
+				});
+			}
+		} catch (UncheckedIOException e) {
+			throw e.getCause();
+		}
+		return fits.get();
+	}
+
+	/**
+	 * This method writes all bytes of a buffer to a position of a file. Writes to different positions can be
+	 * done by several threads at once.
+	 * @param channel
+	 * @param buffer
+	 * @param position
+	 * @throws IOException
+	 */
+	private static void write(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+		while (buffer.hasRemaining()) {
+			position += channel.write(buffer, position);
+		}
+	}
+
+	/**
+	 * This method calculates a hash of the catalog: the names of the chunks and sizes, which products are
+	 * present and the demandHash of each product
+	 * @param store
+	 * @return
+	 */
+	public static long catalogHash(ProductStore store) {
+		long hash = 1125899906842597L;
+		for (int i = 0; i < store.getNChunks(); i++) {
+			hash = 31 * hash + store.getChunkNames().get(i).hashCode();
+			for (int s = 0; s < store.getNSizes(); s++) {
+				hash = 31 * hash + store.getSizes()[s].hashCode();
+				hash = 31 * hash + (store.isPresent(i, s) ? store.product(i, s).demandHash() : 0);
+			}
+		}
+		return hash;
+	}
+}
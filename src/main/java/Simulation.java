@@ -9,6 +9,8 @@ import java.util.Map;
 import java.util.Random;
 import java.util.Set;
 import java.util.TreeMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
 
 import org.apache.poi.ss.usermodel.Cell;
 import org.apache.poi.xssf.usermodel.XSSFRow;
@@ -60,6 +62,16 @@ public class Simulation {
 		
 		// Simulation options
 		parameters.put("nbrSimulations" , 100);
+		parameters.put("simulationSeed", 1234L); //The replications are run in parallel, the results only depend on this seed
+		//parameters.put("simulationTolerance", 0.001); //Keeps running replications until the 95% confidence intervals are within 0.1% of the mean
+		//parameters.put("maxSimulations", 10000); //The most replications the tolerance may take
+		//parameters.put("antitheticVariates", true); //Runs the replications in pairs with mirrored demand
+		//parameters.put("controlVariate", true); //Corrects the means with the known expected demand
+		//parameters.put("scenarioDirectory", "scenarios"); //Keeps the random demand in a file, so every policy is run with the same demand without drawing it again
+		//parameters.put("chunkPartitions", 8); //Runs the chunks of each replication in 8 parallel parts instead of the replications in parallel, for a few long simulations of a large catalog
+		//parameters.put("vectorizedKernel", true); //Only for simulationMain, not for the replications: separate loops without branches, about the same speed with drawn demand, the results are the same
+		//parameters.put("checkpointDirectory", "checkpoints"); //Saves the state of the simulation every checkpointInterval seconds, so a stopped run continues where it stopped
+		//parameters.put("checkpointInterval", 300);
 		
 		//model options
 		parameters.put("addOrderingConstraint", false); //Does not work leave false
@@ -112,9 +124,11 @@ public class Simulation {
 	public static void solve2020(int[] T, String[] sizes, HashMap<String, HashMap<String, Product>> data,
 			HashMap<String, Object> parameters) throws IloException
 	{
+		// The settings are read once, instead of in every iteration of the loops below
+		SimulationConfig config = SimulationConfig.fromParameters(parameters);
 		// Create the model.
 		IloCplex cplex = new IloCplex ();
-		if ((boolean) parameters.get("changeTolaranceSetting")) {
+		if (config.isChangeTolaranceSetting()) {
 			cplex.setParam(IloCplex.Param.MIP.Tolerances.MIPGap, 0.005);
 
 		}
@@ -141,7 +155,7 @@ public class Simulation {
 		for (int i = 0; i < n; i ++) {
 			y[i] = cplex.boolVar("y(" + chunkNames.get(i) + ")");
 			for (int t = T[0]; t < T[1]; t++) {
-				if ((boolean) parameters.get("addOrderingVariable") || (boolean) parameters.get("addSmartTwoWeeksConstraint")) { 
+				if (config.isAddOrderingVariable() || config.isAddSmartTwoWeeksConstraint()) { 
 					order[t][i] = cplex.boolVar("order(" + chunkNames.get(i) +" , " + (t+ 1) +")");
 				
 				}
@@ -169,14 +183,14 @@ public class Simulation {
 //					cplex.addEq(u[0][i][s], 0, "Initial storage level");
 					for (int t = T[0]; t < T[1]; t++) {
 						objExpr = cplex.sum(objExpr, cplex.prod(prod.getAverageAveragePrice(), z[t][i][s]));
-						if ((boolean) parameters.get("addSmartTwoWeeksConstraint") && t >= 44) {
+						if (config.isAddSmartTwoWeeksConstraint() && t >= 44) {
 							objExpr = cplex.diff(objExpr, cplex.prod(1, cplex.diff(x[t][i][s][0],z[t][i][s])));
 							objExpr = cplex.diff(objExpr, cplex.prod(1, cplex.diff(x[t][i][s][1],z[t][i][s])));
 
 						}
 						// Use one of the two
 //						cplex.addGe(cplex.sum(x[t][i][s][0], x[t][i][s][1]), cplex.sum(u[t][i][s], z[t][i][s]), "Constraints on goods in warehouse");
-						if ((boolean) parameters.get("addSmartTwoWeeksConstraint")) {
+						if (config.isAddSmartTwoWeeksConstraint()) {
 							cplex.addGe(cplex.sum(x[t][i][s][0], x[t][i][s][1]), z[t][i][s], "Constraints on goods in warehouse");
 
 						}else{
@@ -184,7 +198,7 @@ public class Simulation {
 						}
 						
 						
-						if ((boolean) parameters.get("addOrderingVariable")) { 
+						if (config.isAddOrderingVariable()) { 
 							cplex.addLe(x[t][i][s][0], cplex.prod(maxDemandProduct, order[t][i]), "Constraints on ordering in allowed weeks");
 							cplex.addLe(x[t][i][s][1], cplex.prod(maxDemandProduct, order[t][i]), "Constraints on ordering in allowed weeks");
 //													
@@ -200,7 +214,7 @@ public class Simulation {
 		}
 		cplex.addMaximize(objExpr);
 		
-		if ((boolean) parameters.get("addSmartTwoWeeksConstraint")) {
+		if (config.isAddSmartTwoWeeksConstraint()) {
 			for (int t = T[0]; t < T[1]; t++) {
 				if (t >= 44 &&  t + 1 != T[1]) { //Check if we are in November or December
 					
@@ -248,7 +262,7 @@ public class Simulation {
 		//Add capacity constraint for small and big warehouse
 		cplex = Solver.addCapacityConstraint2020(T, sizes, cplex, x, data, 0.15, 0.15);
 		
-		if ((boolean) parameters.get("addOrderingVariable")) {
+		if (config.isAddOrderingVariable()) {
 			cplex = Solver.addOrderingConstraint2020(T, sizes, cplex, order, data);
 		}
 
@@ -350,13 +364,13 @@ public class Simulation {
 						}
 					}
 				}
-				if ((boolean) parameters.get("showWeeklyCapasity")) {
+				if (config.isShowWeeklyCapasity()) {
 					System.out.println("The capacity used in week " + t + "  is: "+ capasityUsed );
 					System.out.println("The percentage of capacity used in week " + t + "is: "+ capasityUsed / 2700  );
 					System.out.println();
 				}
 				
-				if ((boolean) parameters.get("showWeeklyServiceLevel")) {
+				if (config.isShowWeeklyServiceLevel()) {
 
 					System.out.println("The amount of goods sold in week " + t + "is: "+fulfilledDemandWeekly );
 					System.out.println("The amount of goods demanded in week " + t + " is: "+totDemandWeekly );
@@ -382,7 +396,7 @@ public class Simulation {
 			Simulation.getSimulationResults(T, sizes, data, zSolution, parameters);
 			
 			
-			if((boolean) parameters.get("runAnotherSimulation")) {
+			if(config.isRunAnotherSimulation()) {
 				parameters.put("filePath", "/Users/floris/Documents/Studie/Year_3_Block_4/Seminar/results/results_100_sim_poisson_with_smart_ordering_constraint.xlsx"); //Change this to the file path you want to 
 				parameters.put("usePoisson", true); //If true uses Poisson distribution otherwise uses normal
 				Simulation.getSimulationResults(T, sizes, data, zSolution, parameters);
@@ -398,65 +412,76 @@ public class Simulation {
 	
 	public static void getSimulationResults(int[] T, String[] sizes, HashMap<String, HashMap<String, Product>> data,
 			int [][][] zSolution, HashMap<String, Object> parameters) throws IloException {
-		Random r = new Random(1234);
 		int sizeOfResultsSimulation = 4 + (T[1] - T[0]) * 4;
-		
-		ArrayList<ArrayList<Double>> results = new ArrayList<ArrayList<Double>>();
-		
-		for (int i = 0; i < (int) parameters.get("nbrSimulations"); i++) {
-			results.add(Simulation.simulationMain(T, sizes, data, zSolution, r, parameters));
-		
+		SimulationConfig config = SimulationConfig.fromParameters(parameters);
+		
+		// The products are put in flat arrays once, instead of looking them up in every simulation
+		ProductStore store = new ProductStore(data, sizes);
+		long seed = config.getSimulationSeed();
+		// The results of each replication are only kept when they are printed or exported
+		ArrayList<ArrayList<Double>> results = null;
+		if (config.isPrintExcelFormatSimulationResults() || config.isExportSimulationResults()) {
+			results = new ArrayList<ArrayList<Double>>();
 		}
+		long tic = System.currentTimeMillis();
+		ReplicationRunner runner = new ReplicationRunner(T, store, zSolution, seed, config);
+		if (config.getScenarioDirectory() != null) {
+			// The demand is read from a file, which is drawn once for every policy with the same data and settings
+			try {
+				int nScenarios = config.isAdaptive() ? config.getMaxSimulations() : config.getNbrSimulations();
+				runner.setScenarios(ScenarioStore.openOrCreate(config.getScenarioDirectory(), T, store, seed, nScenarios,
+						config.getDemandModel()));
+			} catch (IOException | IllegalArgumentException e) {
+				System.out.println("The scenarios can not be used, the demand is drawn during the simulation: " + e.getMessage());
+			}
+		}
+		if (config.getCheckpointDirectory() != null) {
+			// Continue where an earlier run of the same simulation stopped
+			runner.setCheckpoint(config.getCheckpointDirectory(), config, results);
+		}
+		if (config.isAdaptive()) {
+			// Run batches until the confidence intervals are narrow enough, starting with nbrSimulations
+			double tolerance = config.getSimulationTolerance();
+			boolean reached = runner.runUntil(config.getNbrSimulations(), tolerance, config.getMaxSimulations(), results);
+			long toc = System.currentTimeMillis();
+			System.out.println("Ran " + runner.getNbrSimulations() + " simulations in " + (toc - tic) + " ms, the relative half width is "
+					+ runner.getRelativeHalfWidth() + (reached ? "" : ", the tolerance of " + tolerance + " is not reached"));
+		} else {
+			runner.run(Math.max(0, config.getNbrSimulations() - runner.getNbrSimulations()), results);
+			long toc = System.currentTimeMillis();
+			System.out.println("Ran " + runner.getNbrSimulations() + " simulations in " + (toc - tic) + " ms");
+		}
+		// The run is finished, so it does not continue from the checkpoint anymore
+		runner.deleteCheckpoint();
+		SimulationStatistics statistics = runner.getStatistics();
+		int nbrSimulations = (int) statistics.getCount();
 		
 		//Print results
 		HashMap<String, Double> averageResults = new HashMap<String, Double>(); 
 		for (int i = 0; i < sizeOfResultsSimulation; i++) {
-			double sum  = 0;
-			int count = 0;
-			for (int j = 0; j < (int) parameters.get("nbrSimulations"); j++) {
-				sum += results.get(j).get(i);
-				count ++;
-				
-			}
-			
-			double average = sum / count;
-			switch(i) {
-				case 0: 
-					averageResults.put("Revenue", average);
-					break;
-				case 1: 
-					averageResults.put("Products sold", average);
-					break;
-				case 2: 
-					averageResults.put("Products demanded ", average);
-					break;
-				case 3: 
-					averageResults.put("Service level whole year", average);
-					break; 
-			}
-			if ( i >= 4 && i < 4 + T[1] - T[0]) {
-				averageResults.put("Service level for week " + (T[0] + i - 3), average);
-			}
-			
-			if ( i >= 4 + (T[1] - T[0]) * 1 && i < 4 + (T[1] - T[0]) * 2) {
-				averageResults.put("Revenue for week " + (T[0] + i - 3 - (T[1] - T[0]) * 1), average);
-			}
-			
-			if ( i >= 4 + (T[1] - T[0]) * 2 && i < 4 + (T[1] - T[0]) * 3) {
-				averageResults.put("Capacity for week " + (T[0] + i - 3 - (T[1] - T[0]) * 2), average);
-			}
-			
-			int factor = 3;
-			if ( i >= 4 + (T[1] - T[0]) * factor && i < 4 + (T[1] - T[0]) * (factor + 1)) {
-				averageResults.put("Relevance Score for week " + (T[0] + i - 3 - (T[1] - T[0]) * factor), average);
+			averageResults.put(statistics.getName(i), statistics.getMean(i));
+		}
+		averageResults.put("Number of simulations", (double) nbrSimulations);
+		// The tail of the service level, the 5% of the replications with the lowest service level are below it
+		for (int t = T[0]; t < T[1]; t++) {
+			averageResults.put("P5 service level for week " + (t + 1), statistics.getQuantile(statistics.serviceLevelOfWeek(t), 0.05));
+		}
+		int[] overall = {SimulationStatistics.REVENUE, SimulationStatistics.SERVICE_LEVEL};
+		for (int i : overall) {
+			double[] interval = statistics.getConfidenceInterval(i, 0.95);
+			averageResults.put(statistics.getName(i) + " lower bound 95%", interval[0]);
+			averageResults.put(statistics.getName(i) + " upper bound 95%", interval[1]);
+			averageResults.put(statistics.getName(i) + " P5", statistics.getQuantile(i, 0.05));
+			System.out.println(statistics.getName(i) + ": mean " + statistics.getMean(i) + ", 95% confidence interval ["
+					+ interval[0] + ", " + interval[1] + "], P5 " + statistics.getQuantile(i, 0.05) + ", P50 "
+					+ statistics.getQuantile(i, 0.5) + ", P95 " + statistics.getQuantile(i, 0.95));
+			if (config.isAntitheticVariates() || config.isControlVariate()) {
+				System.out.println("The variance reduction saves a factor " + statistics.getVarianceReductionFactor(i) + " in replications");
 			}
-		
 		}
-
-		
 		
-		if ((boolean) parameters.get("printExcelFormatSimulationResults")) {
-			for (int i = 0; i < (int) parameters.get("nbrSimulations"); i++) {
+		if (config.isPrintExcelFormatSimulationResults()) {
+			for (int i = 0; i < nbrSimulations; i++) {
 	
 				for (int j = 0; j < sizeOfResultsSimulation; j ++) {
 					if (j ==0) {
@@ -474,7 +499,7 @@ public class Simulation {
 			}
 		}
 
-		if ((boolean) parameters.get("exportSimulationResults")) {
+		if (config.isExportSimulationResults()) {
 			try {
 				Simulation.writeToExcel(results, parameters);
 				System.out.println("The results are written to an excel sheet");
@@ -485,7 +510,7 @@ public class Simulation {
 			}
 		}
 		
-		if ((boolean) parameters.get("exportOnlyAverageValues")) {
+		if (config.isExportOnlyAverageValues()) {
 			try {
 				Simulation.writeToExcelAverage(averageResults, parameters);
 				System.out.println("The results are written to an excel sheet");
@@ -499,6 +524,112 @@ public class Simulation {
 		
 	}
 	
+	/**
+	 * Evaluates several order up to levels with the same random demand (common random numbers), and prints
+	 * the revenue and service level of each policy and their differences with the first policy
+	 * @param T Array with start and end week of the period
+	 * @param sizes Array with all the size groups
+	 * @param data All the data on the products
+	 * @param policies The ordering up to levels of each policy
+	 * @param names The name of each policy
+	 * @param parameters The settings of the simulation, nbrSimulations is the number of replications of each policy
+	 */
+	public static void comparePolicies(int[] T, String[] sizes, HashMap<String, HashMap<String, Product>> data,
+			ArrayList<int[][][]> policies, ArrayList<String> names, HashMap<String, Object> parameters) {
+		SimulationConfig config = SimulationConfig.fromParameters(parameters);
+		ProductStore store = new ProductStore(data, sizes);
+		long tic = System.currentTimeMillis();
+		ReplicationRunner runner = new ReplicationRunner(T, store, policies, config.getSimulationSeed(), config);
+		if (config.getCheckpointDirectory() != null) {
+			runner.setCheckpoint(config.getCheckpointDirectory(), config, null);
+		}
+		runner.run(Math.max(0, config.getNbrSimulations() - runner.getNbrSimulations()), null);
+		runner.deleteCheckpoint();
+		long toc = System.currentTimeMillis();
+		System.out.println("Ran " + runner.getNbrSimulations() + " simulations of " + policies.size() + " policies in " + (toc - tic) + " ms");
+		
+		int[] metrics = {SimulationStatistics.REVENUE, SimulationStatistics.SERVICE_LEVEL};
+		for (int j = 0; j < policies.size(); j++) {
+			SimulationStatistics statistics = runner.getStatistics(j);
+			for (int i : metrics) {
+				double[] interval = statistics.getConfidenceInterval(i, 0.95);
+				System.out.println(names.get(j) + ", " + statistics.getName(i) + ": mean " + statistics.getMean(i)
+						+ ", 95% confidence interval [" + interval[0] + ", " + interval[1] + "]");
+			}
+		}
+		for (int j = 1; j < policies.size(); j++) {
+			SimulationStatistics differences = runner.getDifferences(j);
+			for (int i : metrics) {
+				double[] interval = differences.getConfidenceInterval(i, 0.95);
+				System.out.println(names.get(j) + " minus " + names.get(0) + ", " + differences.getName(i) + ": mean "
+						+ differences.getMean(i) + ", 95% confidence interval [" + interval[0] + ", " + interval[1]
+						+ "], common random numbers save a factor " + runner.getCommonRandomNumbersFactor(j, i) + " in replications");
+			}
+		}
+	}
+	
+	/**
+	 * Runs a number of simulations of several order up to levels at once, for example a sweep over service
+	 * levels. The demand of each replication is drawn once and used by every policy, see BatchSimulationKernel.
+	 * @param T Array with start and end week of the period
+	 * @param store All the data on the products
+	 * @param policies The ordering up to levels of each policy
+	 * @param seed The seed of the random demand
+	 * @param nbrSimulations The number of replications of each policy
+	 * @return the statistics of each policy
+	 */
+	public static ArrayList<SimulationStatistics> evaluatePolicies(int[] T, ProductStore store, ArrayList<int[][][]> policies,
+			long seed, int nbrSimulations, HashMap<String, Object> parameters) {
+		long tic = System.currentTimeMillis();
+		ReplicationRunner runner = new ReplicationRunner(T, store, policies, seed, parameters);
+		runner.run(nbrSimulations, null);
+		long toc = System.currentTimeMillis();
+		System.out.println("Ran " + nbrSimulations + " simulations of " + policies.size() + " policies in " + (toc - tic) + " ms");
+		ArrayList<SimulationStatistics> statistics = new ArrayList<SimulationStatistics>();
+		for (int j = 0; j < policies.size(); j++) {
+			statistics.add(runner.getStatistics(j));
+		}
+		return statistics;
+	}
+	
+	/**
+	 * Runs a number of simulations for a given order up to level in parallel, and returns the results of each
+	 * replication. See the method below.
+	 * @param T Array with start and end week of the period
+	 * @param store All the data on the products
+	 * @param z The ordering up to levels for each product
+	 * @param seed The seed of the random demand
+	 * @param nbrSimulations The number of replications
+	 * @return the results of each replication, in the order of the replications
+	 */
+	public static ArrayList<ArrayList<Double>> runReplications(int[] T, ProductStore store, int[][][] z, long seed,
+			int nbrSimulations, HashMap<String, Object> parameters) {
+		ArrayList<ArrayList<Double>> replications = new ArrayList<ArrayList<Double>>(nbrSimulations);
+		runReplications(T, store, z, seed, nbrSimulations, parameters, replications);
+		return replications;
+	}
+	
+	/**
+	 * Runs a number of simulations for a given order up to level in parallel, with a ReplicationRunner
+	 * @param T Array with start and end week of the period
+	 * @param store All the data on the products
+	 * @param z The ordering up to levels for each product
+	 * @param seed The seed of the random demand
+	 * @param nbrSimulations The number of replications
+	 * @param replications The list to add the results of each replication to, in the order of the
+	 * replications, or null if they are not needed
+	 * @return the statistics of the replications
+	 */
+	public static SimulationStatistics runReplications(int[] T, ProductStore store, int[][][] z, long seed,
+			int nbrSimulations, HashMap<String, Object> parameters, ArrayList<ArrayList<Double>> replications) {
+		long tic = System.currentTimeMillis();
+		ReplicationRunner runner = new ReplicationRunner(T, store, z, seed, parameters);
+		runner.run(nbrSimulations, replications);
+		long toc = System.currentTimeMillis();
+		System.out.println("Ran " + nbrSimulations + " simulations in " + (toc - tic) + " ms");
+		return runner.getStatistics();
+	}
+	
 	/**
 	 * Runs 1 simulation for a given order up to level 
 	 * @param T Array with start and end week of the period
@@ -512,182 +643,42 @@ public class Simulation {
 	public static ArrayList<Double> simulationMain(int[] T, String[] sizes,
 			HashMap<String, HashMap<String, Product>> data,
 			int[][][] z, Random r, HashMap<String, Object> parameters) throws IloException {
-		
-		int size = sizes.length;
-		ArrayList<String> chunkNames = new ArrayList<String>(data.keySet());
-		int n = chunkNames.size();
-		
-		int[][][] storage = new int[T[1]][n][size];
-		//for every week
-			//get ordering up to level off products
-			//Calculate demand for that week per product
-			//update some stats
-		
-		//Aggregate variables
-		int orders = 0; 
-		
-		int totalOrdered = 0;
-		int totalThrewAway = 0;
-		
-		double holdingCost = 0; //The total holding cost
-		double revenue = 0; //Revenue of the time period
-		double revenueTheoretical = 0; //The maximum revenue that could have been made
-		double relevanceSoldProducts = 0; // The total relevance score of all the products sold
-		double relevanceAllProducts = 0;	// the total relevance score of all products demanded.
-		int productsSold = 0; //The amount of products sold
-		int totalDemand = 0; // the total amount of products demanded.
-		
-		ArrayList<Double> weeklyServiceLevel = new ArrayList<Double>();
-		ArrayList<Double> weeklyRevenue = new ArrayList<Double>();
-		ArrayList<Double> weeklyCapacity = new ArrayList<Double>();
-		ArrayList<Double> weeklyRelevanceScore = new ArrayList<Double>();
-		
-		
-		for (int t = T[0]; t < T[1]; t++) {
-			
-			int salesWeek =0;
-			int demandWeek =0;
-			double revenueWeek = 0;
-			double capacityWeek = 0;
-			double relevanceScoreWeek = 0;
-
-			
-			/** Ordering the new products */
-			
-			for (int i = 0; i < n; i ++) {
-				HashMap<String, Product> chunk = data.get(chunkNames.get(i));
-				boolean orderForChunk = false; //Flag to keep track if an order was placed for this chunk
-				for (int s = 0; s < size; s++) {
-					Product prod = chunk.get(sizes[s]);
-					
-					if (prod != null) {
-						if (storage[t][i][s] < z[t][i][s]) {
-							//We need to place an order
-							orderForChunk = true;
-//							System.out.println("we ordered "+ ( -storage[t][i][s] + z[t][i][s])+" at time  "+ t+" for chunk "+ chunkNames.get(i)+"of size "+ sizes[s]);		
-							totalOrdered += z[t][i][s] - storage[t][i][s];
-							storage[t][i][s]  = z[t][i][s];
-						}else if(storage[t][i][s] > z[t][i][s]) {
-//							System.out.println("we threw away  "+ ( storage[t][i][s] - z[t][i][s])+" at time  "+ t+" for chunk "+ chunkNames.get(i)+"of size "+ sizes[s]);		
-							totalThrewAway += storage[t][i][s] -z[t][i][s] ;
-							storage[t][i][s]  = z[t][i][s];
-						}
-						capacityWeek += storage[t][i][s] * prod.getAverageAverageM3();
-						relevanceScoreWeek+= storage[t][i][s] * prod.getRelevanceScore();
-						
-					}
-				}
-				//Check if an order is placed if so add to the total amount of orders for ordering cost.
-				if (orderForChunk) {
-					orders ++;
-				}
-			}
-			
-			int demand;
-			/** Selling products */
-			for (int i = 0; i < n; i ++) {
-				HashMap<String, Product> chunk = data.get(chunkNames.get(i));
-				for (int s = 0; s < size; s++) {
-					Product prod = chunk.get(sizes[s]);
-					if (prod != null) {
-						//Get the demand for this products
-<<<<<<< HEAD
-//						demand = prod.pullRandomSales(t, r);
-						demand = prod.pullRandomSalesPoisson(t, r);
-=======
-						if ((boolean) parameters.get("usePlusXInSales")) {
-							demand = prod.pullRandomSalesFloris(t, r);
-						}else if ((boolean) parameters.get("usePoisson") ) {
-							demand = prod.pullRandomSalesPoisson(t, r);
-						}else {
-							demand = prod.pullRandomSales(t, r);
-						}
->>>>>>> branch 'main' of https://github.com/GijsMargadant/SeminarQLMaven.git
-						
-						demandWeek += demand;
-						
-						if (demand <= storage[t][i][s]) {
-							//Update revenue
-							revenue += prod.getAveragePrice(t) * demand;
-							revenueWeek += prod.getAveragePrice(t) * demand;
-							revenueTheoretical += prod.getAveragePrice(t) * demand;
-							//Update relevance score
-							relevanceSoldProducts += prod.getRelevanceScore() * demand;
-							relevanceAllProducts += prod.getRelevanceScore() * demand;
-							// update amount of products
-							productsSold += demand;
-							totalDemand += demand;
-							
-							salesWeek += demand;
-							
-							//Update the amount in storage
-							storage[t][i][s] -= demand;
-						}else {
-							//Update revenue
-							revenueWeek += prod.getAveragePrice(t) * storage[t][i][s];
-							revenue += prod.getAveragePrice(t) * storage[t][i][s];
-							revenueTheoretical += prod.getAveragePrice(t) * demand;
-							//Update relevance score
-							relevanceSoldProducts += prod.getRelevanceScore() * storage[t][i][s];
-							relevanceAllProducts += prod.getRelevanceScore() * demand;
-							// update amount of products
-							productsSold += storage[t][i][s];
-							totalDemand += demand;
-							
-							salesWeek += storage[t][i][s];
-							//Update the amount in storage
-							storage[t][i][s] = 0;
-						}
-					}
-				}
-			}
-			weeklyServiceLevel.add(((double) salesWeek )/ demandWeek);
-			weeklyRevenue.add(revenueWeek);
-			weeklyCapacity.add(capacityWeek);
-			weeklyRelevanceScore.add(relevanceScoreWeek);
-			
-			/** Moving on to the next week*/ 
-			for (int i = 0; i < n; i ++) {
-				HashMap<String, Product> chunk = data.get(chunkNames.get(i));
-				for (int s = 0; s < size; s++) {
-					Product prod = chunk.get(sizes[s]);
-					if (prod != null && t != T[1] - 1 ) {
-						storage[t + 1][i][s] = storage[t][i][s]; //Set remaining products as starting inventory of next week
-						holdingCost += storage[t][i][s] * prod.getUnitStorageCost()  * 7; //Add holding cost for the goods that are held for more then a week
-					}
-				}
-			}
-		}
-		
-		if ((boolean) parameters.get("printSimulationResults")) {
-			//Print interesting information on the simulation
-			//Print interesting information on the simulation
-//			System.out.println("The amount of orders is: " + orders + " so ordering cost is: " + orders * 10 );	
-			System.out.println("The revenue for this period is: " + revenue);	
-//			System.out.println("The holding cost for this period is: " + holdingCost);	
-//			System.out.println("The profit for this period is: " + (revenue - holdingCost));
-//			System.out.println();
-
-			System.out.println("There are " + totalOrdered + " products ordered and " + totalThrewAway+ " products thown away");	
-			System.out.println("The amount of products sold is: " + productsSold);	
-			System.out.println("The amount of products demanded is: " + totalDemand);	
-			System.out.println("The service level is: " + ((double)productsSold / totalDemand ));
-			System.out.println();
-		}
-		
-
-		ArrayList<Double> results = new ArrayList<Double>();
-		results.add(revenue);
-		results.add((double) productsSold);
-		results.add((double) totalDemand);
-		results.add((double)productsSold / totalDemand);
-		results.addAll(weeklyServiceLevel);
-		results.addAll(weeklyRevenue);
-		results.addAll(weeklyCapacity);
-		results.addAll(weeklyRelevanceScore);
-		
-		return results;
-	}	
+		return simulationMain(T, new ProductStore(data, sizes), z, r, parameters);
+	}
+	
+	/**
+	 * Runs 1 simulation for a given order up to level, with the products already put in a ProductStore
+	 * @param T Array with start and end week of the period
+	 * @param store All the data on the products
+	 * @param z The ordering up to levels for each product
+	 * @param r A Random object used to generate random sales data
+	 * @return 
+	 * @throws IloException
+	 */
+	public static ArrayList<Double> simulationMain(int[] T, ProductStore store,
+			int[][][] z, Random r, HashMap<String, Object> parameters) throws IloException {
+		SimulationKernel kernel = new SimulationKernel(T, store, z, parameters);
+		double[] results = new double[kernel.getResultSize()];
+		kernel.run(r, results);
+		return SimulationKernel.toList(results);
+	}
+	
+	/**
+	 * Runs 1 simulation for a given order up to level, with the demand of each week drawn by a DemandSampler
+	 * @param T Array with start and end week of the period
+	 * @param store All the data on the products
+	 * @param z The ordering up to levels for each product
+	 * @param sampler The DemandSampler used to generate random sales data, only used by this simulation
+	 * @return 
+	 */
+	public static ArrayList<Double> simulationMain(int[] T, ProductStore store,
+			int[][][] z, DemandSampler sampler, HashMap<String, Object> parameters) {
+		SimulationKernel kernel = new SimulationKernel(T, store, z, parameters);
+		double[] results = new double[kernel.getResultSize()];
+		kernel.run(sampler, results);
+		return SimulationKernel.toList(results);
+	}
+	
 	
 
 	
@@ -715,8 +706,7 @@ public class Simulation {
 		HashMap<String, HashMap<String, Product>> dt = new HashMap<String, HashMap<String, Product>>();
 				
 		try {
-			CustomDataReader cdm = new CustomDataReader(data, relevanceScore, warehouseCost);
-			 return cdm.readDataCombined();
+			return CustomDataReader.readDataCombinedCached(data, relevanceScore, warehouseCost);
 		} catch (FileNotFoundException e) {
 			e.printStackTrace();
 		}
@@ -754,11 +744,7 @@ public class Simulation {
 //        FileOutputStream out = new FileOutputStream(
 //        		new File("/Users/floris/Documents/Studie/Year_3_Block_4/Seminar/Results.xlsx"));
         FileOutputStream out = new FileOutputStream(
-<<<<<<< HEAD
-        		new File("C:\\Users\\gijsm\\Documents\\DOCUMENTEN\\School\\SeminarCaseStudy\\SolutionFiles\\Results.xlsx"));
-=======
         		new File((String) parameters.get("filePath")));
->>>>>>> branch 'main' of https://github.com/GijsMargadant/SeminarQLMaven.git
 
         workbook.write(out);
         out.close();
@@ -844,6 +830,8 @@ public class Simulation {
 	public static void solve2020WithTransfer(int[] T, String[] sizes, HashMap<String, HashMap<String, Product>> data,
 			HashMap<String, Object> parameters) throws IloException
 	{
+		// The settings are read once, instead of in every iteration of the loops below
+		SimulationConfig config = SimulationConfig.fromParameters(parameters);
 		// Create the model.
 		IloCplex cplex = new IloCplex ();
 //		cplex.setParam(IloCplex.Param.MIP.Tolerances.MIPGap, 0.00001);
@@ -870,7 +858,7 @@ public class Simulation {
 		for (int i = 0; i < n; i ++) {
 			y[i] = cplex.boolVar("y(" + chunkNames.get(i) + ")");
 			for (int t = T[0]; t < T[1]; t++) {
-				if ((boolean) parameters.get("addOrderingVariable")) { 
+				if (config.isAddOrderingVariable()) { 
 					order[t][i] = cplex.boolVar("order(" + chunkNames.get(i) + ")");
 				
 				}
@@ -919,7 +907,7 @@ public class Simulation {
 //						cplex.addEq(cplex.sum(x[t][i][s][0], x[t][i][s][1]), z[t][i][s], "Constraints on goods in warehouse");
 						
 						
-						if ((boolean) parameters.get("addOrderingVariable")) { 
+						if (config.isAddOrderingVariable()) { 
 							cplex.addLe(x[t][i][s][0], cplex.prod(maxDemandProduct, order[t][i]), "Constraints on ordering in allowed weeks");
 							cplex.addLe(x[t][i][s][1], cplex.prod(maxDemandProduct, order[t][i]), "Constraints on ordering in allowed weeks");
 //													
@@ -956,7 +944,7 @@ public class Simulation {
 		}
 		
 		
-		if ((boolean) parameters.get("addOrderingVariable")) {
+		if (config.isAddOrderingVariable()) {
 			cplex = Solver.addOrderingConstraint2020(T, sizes, cplex, order, data);
 		}
 
@@ -996,7 +984,7 @@ public class Simulation {
 							xSolution[t][i][s][0] = (int) Math.round(cplex.getValue(x[t][i][s][0]));
 							xSolution[t][i][s][1] = (int) Math.round(cplex.getValue(x[t][i][s][1]));
 							
-							if ((boolean) parameters.get("printEveryVariable")) {
+							if (config.isPrintEveryVariable()) {
 	
 								System.out.println("this is for week "+ t);
 								System.out.println("x 0 is" + cplex.getValue(x[t][i][s][0]));
@@ -1007,7 +995,7 @@ public class Simulation {
 								System.out.println("u 1 is" + cplex.getValue(u[t][i][s][1]));
 							}
 							
-							if ((boolean) parameters.get("printEveryVariableIfLost") && (int) Math.round( cplex.getValue(z[t][i][s][0]) + cplex.getValue(z[t][i][s][1])) < prod.getPredictedDemand(t) ) {
+							if (config.isPrintEveryVariableIfLost() && (int) Math.round( cplex.getValue(z[t][i][s][0]) + cplex.getValue(z[t][i][s][1])) < prod.getPredictedDemand(t) ) {
 								
 								System.out.println("this is for week "+ t);
 								System.out.println("x 0 is" + cplex.getValue(x[t][i][s][0]));
@@ -1020,7 +1008,7 @@ public class Simulation {
 								System.out.println("y is" + cplex.getValue(y[i]));
 							}
 							
-							if ((boolean) parameters.get("printEveryOrder")) {
+							if (config.isPrintEveryOrder()) {
 								if (cplex.getValue(x[t][i][s][0])> 0 ) {
 									System.out.println("Chunk " + chunkNames.get(i)+ " of size " + sizes[s] +" was ordered " + cplex.getValue(x[t][i][s][0])+ " times at time " + t + "in warehouse 0");
 								}
@@ -1074,13 +1062,13 @@ public class Simulation {
 						}
 					}
 				}
-				if ((boolean) parameters.get("showWeeklyCapasity")) {
+				if (config.isShowWeeklyCapasity()) {
 					System.out.println("The capacity used in week " + t + "  is: "+ capasityUsed );
 					System.out.println("The percentage of capacity used in week " + t + "is: "+ capasityUsed / 2700  );
 					System.out.println();
 				}
 				
-				if ((boolean) parameters.get("showWeeklyServiceLevel")) {
+				if (config.isShowWeeklyServiceLevel()) {
 
 					System.out.println("The amount of goods sold in week " + t + "is: "+fulfilledDemandWeekly );
 					System.out.println("The amount of goods demanded in week " + t + " is: "+totDemandWeekly );
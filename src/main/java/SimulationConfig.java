@@ -0,0 +1,251 @@
+import java.io.File;
+import java.util.HashMap;
+
+/**
+ * The SimulationConfig holds the settings of the model and the simulation with their own types. It is made
+ * once from the HashMap of parameters with fromParameters, which checks the type and value of every setting,
+ * so the loops of the model and the simulation read a final field instead of looking up and unboxing a value
+ * of the HashMap every time. The distribution of the demand is chosen as a DemandModel.
+ *
+ * A SimulationConfig can not be changed. Settings that are not in the HashMap get their default value, false
+ * for the options.
+ */
+public final class SimulationConfig {
+	private final DemandModel demandModel;
+	private final boolean printSimulationResults;
+	private final boolean printExcelFormatSimulationResults;
+	private final boolean exportSimulationResults;
+	private final boolean exportOnlyAverageValues;
+
+	private final int nbrSimulations;
+	private final long simulationSeed;
+	// NaN if the number of simulations is fixed
+	private final double simulationTolerance;
+	private final int maxSimulations;
+	private final boolean antitheticVariates;
+	private final boolean controlVariate;
+	// null if the scenarios are not kept in a file
+	private final File scenarioDirectory;
+	// The number of parts of the chunks of one replication, 1 if the replications run in parallel
+	private final int chunkPartitions;
+	private final boolean vectorizedKernel;
+	// null if no checkpoints are written
+	private final File checkpointDirectory;
+	// The time between two checkpoints in milliseconds
+	private final long checkpointInterval;
+
+	private final boolean addOrderingVariable;
+	private final boolean addSmartTwoWeeksConstraint;
+	private final boolean changeTolaranceSetting;
+	private final boolean useModelWithTransfer;
+	private final boolean runAnotherSimulation;
+	private final boolean showWeeklyCapasity;
+	private final boolean showWeeklyServiceLevel;
+	private final boolean printEveryOrder;
+	private final boolean printEveryVariable;
+	private final boolean printEveryVariableIfLost;
+
+	private SimulationConfig(HashMap<String, Object> parameters) {
+		demandModel = DemandModel.of(getBoolean(parameters, "usePlusXInSales"), getBoolean(parameters, "usePoisson"));
+		printSimulationResults = getBoolean(parameters, "printSimulationResults");
+		printExcelFormatSimulationResults = getBoolean(parameters, "printExcelFormatSimulationResults");
+		exportSimulationResults = getBoolean(parameters, "exportSimulationResults");
+		exportOnlyAverageValues = getBoolean(parameters, "exportOnlyAverageValues");
+
+		nbrSimulations = getNumber(parameters, "nbrSimulations", 100, 1).intValue();
+		simulationSeed = getNumber(parameters, "simulationSeed", 1234L, Double.NEGATIVE_INFINITY).longValue();
+		simulationTolerance = getNumber(parameters, "simulationTolerance", Double.NaN, Double.MIN_VALUE).doubleValue();
+		maxSimulations = getNumber(parameters, "maxSimulations", 100000, 1).intValue();
+		antitheticVariates = getBoolean(parameters, "antitheticVariates");
+		controlVariate = getBoolean(parameters, "controlVariate");
+		scenarioDirectory = parameters.get("scenarioDirectory") == null ? null : new File(getString(parameters, "scenarioDirectory"));
+		chunkPartitions = getNumber(parameters, "chunkPartitions", 1, 1).intValue();
+		vectorizedKernel = getBoolean(parameters, "vectorizedKernel");
+		checkpointDirectory = parameters.get("checkpointDirectory") == null ? null : new File(getString(parameters, "checkpointDirectory"));
+		checkpointInterval = (long) (1000 * getNumber(parameters, "checkpointInterval", 300, 0).doubleValue());
+
+		addOrderingVariable = getBoolean(parameters, "addOrderingVariable");
+		addSmartTwoWeeksConstraint = getBoolean(parameters, "addSmartTwoWeeksConstraint");
+		changeTolaranceSetting = getBoolean(parameters, "changeTolaranceSetting");
+		useModelWithTransfer = getBoolean(parameters, "useModelWithTransfer");
+		runAnotherSimulation = getBoolean(parameters, "runAnotherSimulation");
+		showWeeklyCapasity = getBoolean(parameters, "showWeeklyCapasity");
+		showWeeklyServiceLevel = getBoolean(parameters, "showWeeklyServiceLevel");
+		printEveryOrder = getBoolean(parameters, "printEveryOrder");
+		printEveryVariable = getBoolean(parameters, "printEveryVariable");
+		printEveryVariableIfLost = getBoolean(parameters, "printEveryVariableIfLost");
+	}
+
+	/**
+	 * This method makes the SimulationConfig of the HashMap of parameters that the model used before
+	 * @param parameters
+	 * @return
+	 * @throws IllegalArgumentException if a setting has the wrong type or value
+	 */
+	public static SimulationConfig fromParameters(HashMap<String, Object> parameters) {
+		return new SimulationConfig(parameters);
+	}
+
+	private static boolean getBoolean(HashMap<String, Object> parameters, String key) {
+		Object value = parameters.get(key);
+		if (value == null) {
+			return false;
+		}
+		if (!(value instanceof Boolean)) {
+			throw new IllegalArgumentException("The parameter " + key + " should be true or false, not " + value);
+		}
+		return (boolean) value;
+	}
+
+	private static Number getNumber(HashMap<String, Object> parameters, String key, Number defaultValue, double min) {
+		Object value = parameters.get(key);
+		if (value == null) {
+			return defaultValue;
+		}
+		if (!(value instanceof Number)) {
+			throw new IllegalArgumentException("The parameter " + key + " should be a number, not " + value);
+		}
+		if (!(((Number) value).doubleValue() >= min)) {
+			throw new IllegalArgumentException("The parameter " + key + " should be at least " + min + ", not " + value);
+		}
+		return (Number) value;
+	}
+
+	private static String getString(HashMap<String, Object> parameters, String key) {
+		Object value = parameters.get(key);
+		if (!(value instanceof String)) {
+			throw new IllegalArgumentException("The parameter " + key + " should be a String, not " + value);
+		}
+		return (String) value;
+	}
+
+	public DemandModel getDemandModel() {
+		return demandModel;
+	}
+
+	public boolean isPrintSimulationResults() {
+		return printSimulationResults;
+	}
+
+	public boolean isPrintExcelFormatSimulationResults() {
+		return printExcelFormatSimulationResults;
+	}
+
+	public boolean isExportSimulationResults() {
+		return exportSimulationResults;
+	}
+
+	public boolean isExportOnlyAverageValues() {
+		return exportOnlyAverageValues;
+	}
+
+	public int getNbrSimulations() {
+		return nbrSimulations;
+	}
+
+	public long getSimulationSeed() {
+		return simulationSeed;
+	}
+
+	/**
+	 * @return whether the simulation runs until the confidence intervals are within the simulationTolerance
+	 */
+	public boolean isAdaptive() {
+		return !Double.isNaN(simulationTolerance);
+	}
+
+	public double getSimulationTolerance() {
+		return simulationTolerance;
+	}
+
+	public int getMaxSimulations() {
+		return maxSimulations;
+	}
+
+	public boolean isAntitheticVariates() {
+		return antitheticVariates;
+	}
+
+	public boolean isControlVariate() {
+		return controlVariate;
+	}
+
+	/**
+	 * @return the directory of the scenario files, or null if the demand is drawn during the simulation
+	 */
+	public File getScenarioDirectory() {
+		return scenarioDirectory;
+	}
+
+	/**
+	 * @return the number of parts of the chunks that run in parallel within one replication, see
+	 * BatchSimulationKernel
+	 */
+	public int getChunkPartitions() {
+		return chunkPartitions;
+	}
+
+	/**
+	 * @return whether the SimulationKernel of simulationMain runs the ordering and selling as separate loops
+	 * without branches, which gives the same results and is only faster when the demand is read from a
+	 * ScenarioStore, see SimulationKernel. The BatchSimulationKernel of the ReplicationRunner does not use it,
+	 * since its loops have no branches already and the split loops were about 0.90x as fast there
+	 */
+	public boolean isVectorizedKernel() {
+		return vectorizedKernel;
+	}
+
+	/**
+	 * @return the directory of the checkpoints of the ReplicationRunner, or null if no checkpoints are written
+	 */
+	public File getCheckpointDirectory() {
+		return checkpointDirectory;
+	}
+
+	/**
+	 * @return the time between two checkpoints in milliseconds, the checkpointInterval parameter is in seconds
+	 */
+	public long getCheckpointInterval() {
+		return checkpointInterval;
+	}
+
+	public boolean isAddOrderingVariable() {
+		return addOrderingVariable;
+	}
+
+	public boolean isAddSmartTwoWeeksConstraint() {
+		return addSmartTwoWeeksConstraint;
+	}
+
+	public boolean isChangeTolaranceSetting() {
+		return changeTolaranceSetting;
+	}
+
+	public boolean isUseModelWithTransfer() {
+		return useModelWithTransfer;
+	}
+
+	public boolean isRunAnotherSimulation() {
+		return runAnotherSimulation;
+	}
+
+	public boolean isShowWeeklyCapasity() {
+		return showWeeklyCapasity;
+	}
+
+	public boolean isShowWeeklyServiceLevel() {
+		return showWeeklyServiceLevel;
+	}
+
+	public boolean isPrintEveryOrder() {
+		return printEveryOrder;
+	}
+
+	public boolean isPrintEveryVariable() {
+		return printEveryVariable;
+	}
+
+	public boolean isPrintEveryVariableIfLost() {
+		return printEveryVariableIfLost;
+	}
+}
@@ -0,0 +1,389 @@
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Random;
+
+/**
+ * The SimulationKernel runs the simulation of Simulation.simulationMain on flat primitive arrays. The
+ * products that are present get a dense index k, in the order of the chunks and sizes of the ProductStore,
+ * so the loops over the products do not have to skip the sizes that do not exist. Everything a replication
+ * needs (the inventory, the demand of a week and the results) is allocated once when the kernel is created,
+ * and reused by every replication, so running a replication does not allocate any objects.
+ *
+ * The results of a replication are written to a double array with the same layout as the ArrayList of
+ * simulationMain: revenue, products sold, products demanded and service level, followed by the service
+ * level, revenue, capacity and relevance score of each week.
+ *
+ * With the vectorizedKernel setting the ordering and selling of a week are split into simple loops over all
+ * products without branches: take the order up to level, take the minimum of the demand and the inventory,
+ * subtract it, and add up the sales and revenue. Most of the gain comes from splitting the loops: with the
+ * demand of a ScenarioStore a replication was 1.16x faster even with -XX:-UseSuperWord, 1.22x with AVX2 and
+ * 1.42x with AVX-512. The JIT compiler may turn the minimum, subtract and copy loops into vector
+ * instructions, but not the sums of doubles, which have to be added in order to give exactly the same
+ * results. With drawn demand the speed is about the same, since drawing the demand takes most of the time.
+ * TestVectorizedKernel compares the speed of both. The BatchSimulationKernel of the ReplicationRunner has
+ * no such setting: its loops have no branches already, and splitting them made it about 0.90x as fast.
+ *
+ * A kernel keeps the state of the replication that is running, so it can only be used by one thread at a
+ * time. Use copy() to get a kernel for another thread; the copy shares all data that does not change.
+ */
+public class SimulationKernel {
+	private int firstWeek;
+	private int nWeeks;
+	private int nProducts;
+	private DemandModel demandModel;
+	private boolean printSimulationResults;
+	// Run the ordering and selling as loops without branches over all products, see SimulationConfig.isVectorizedKernel
+	private boolean vectorized;
+	private ProductStore store;
+
+	// Data of the products, shared by all copies
+	private Product[] products;
+	// The index of product k in the arrays of the store
+	private int[] storeIndex;
+	// The products of chunk i are firstOfChunk[i] till firstOfChunk[i + 1]
+	private int[] firstOfChunk;
+	private double[] averageAverageM3;
+	private double[] relevanceScore;
+	private double[] unitStorageCost;
+	// The price and order up to level of week w (counted from the first week) of product k are at w * nProducts + k
+	private double[] price;
+	private int[] orderUpToLevel;
+
+	// The state of a replication
+	private int[] storage;
+	private int[] demandOfStore;
+	private int[] demand;
+	// The products sold of each product in a week, for the loops of the vectorized kernel
+	private int[] sold;
+
+	/**
+	 * Constructor for the SimulationKernel
+	 * @param T Array with start and end week of the period
+	 * @param store All the data on the products
+	 * @param z The ordering up to levels for each product
+	 * @param parameters The settings of the simulation (usePlusXInSales, usePoisson and printSimulationResults)
+	 */
+	public SimulationKernel(int[] T, ProductStore store, int[][][] z, HashMap<String, Object> parameters) {
+		this(T, store, z, SimulationConfig.fromParameters(parameters));
+	}
+
+	/**
+	 * Constructor for the SimulationKernel
+	 * @param T Array with start and end week of the period
+	 * @param store All the data on the products
+	 * @param z The ordering up to levels for each product
+	 * @param config The settings of the simulation (the DemandModel and printSimulationResults)
+	 */
+	public SimulationKernel(int[] T, ProductStore store, int[][][] z, SimulationConfig config) {
+		this.firstWeek = T[0];
+		this.nWeeks = T[1] - T[0];
+		this.store = store;
+		this.demandModel = config.getDemandModel();
+		this.printSimulationResults = config.isPrintSimulationResults();
+		this.vectorized = config.isVectorizedKernel();
+
+		int n = store.getNChunks();
+		int size = store.getNSizes();
+		firstOfChunk = new int[n + 1];
+		nProducts = 0;
+		for (int i = 0; i < n; i++) {
+			firstOfChunk[i] = nProducts;
+			for (int s = 0; s < size; s++) {
+				if (store.isPresent(i, s)) {
+					nProducts++;
+				}
+			}
+		}
+		firstOfChunk[n] = nProducts;
+
+		products = new Product[nProducts];
+		storeIndex = new int[nProducts];
+		averageAverageM3 = new double[nProducts];
+		relevanceScore = new double[nProducts];
+		unitStorageCost = new double[nProducts];
+		price = new double[nWeeks * nProducts];
+		orderUpToLevel = new int[nWeeks * nProducts];
+		int k = 0;
+		for (int i = 0; i < n; i++) {
+			for (int s = 0; s < size; s++) {
+				if (!store.isPresent(i, s)) {
+					continue;
+				}
+				products[k] = store.product(i, s);
+				storeIndex[k] = store.index(i, s);
+				averageAverageM3[k] = store.getAverageAverageM3(i, s);
+				relevanceScore[k] = store.getRelevanceScore(i, s);
+				unitStorageCost[k] = store.getUnitStorageCost(i, s);
+				for (int w = 0; w < nWeeks; w++) {
+					price[w * nProducts + k] = store.getAveragePrice(i, s, firstWeek + w);
+					orderUpToLevel[w * nProducts + k] = z[firstWeek + w][i][s];
+				}
+				k++;
+			}
+		}
+		allocateState();
+	}
+
+	private SimulationKernel() {
+	}
+
+
+	/**
+	 * This method creates a kernel for another thread. It shares the data of the products with this kernel,
+	 * but has its own state.
+	 * @return
+	 */
+	public SimulationKernel copy() {
+		SimulationKernel copy = new SimulationKernel();
+		copy.firstWeek = firstWeek;
+		copy.nWeeks = nWeeks;
+		copy.nProducts = nProducts;
+		copy.demandModel = demandModel;
+		copy.printSimulationResults = printSimulationResults;
+		copy.vectorized = vectorized;
+		copy.store = store;
+		copy.products = products;
+		copy.storeIndex = storeIndex;
+		copy.firstOfChunk = firstOfChunk;
+		copy.averageAverageM3 = averageAverageM3;
+		copy.relevanceScore = relevanceScore;
+		copy.unitStorageCost = unitStorageCost;
+		copy.price = price;
+		copy.orderUpToLevel = orderUpToLevel;
+		copy.allocateState();
+		return copy;
+	}
+
+	private void allocateState() {
+		storage = new int[nProducts];
+		demandOfStore = new int[store.getNChunks() * store.getNSizes()];
+		demand = new int[nProducts];
+		sold = new int[nProducts];
+	}
+
+	/**
+	 * @return the length of the results of a replication, 4 + 4 * the number of weeks
+	 */
+	public int getResultSize() {
+		return 4 + 4 * nWeeks;
+	}
+
+	/**
+	 * @return the number of products that are present
+	 */
+	public int getNProducts() {
+		return nProducts;
+	}
+
+
+	/**
+	 * This method calculates the expected total demand of a replication, the known mean of the products
+	 * demanded (results[2]) that is used as a control variate
+	 * @return
+	 */
+	public double getExpectedDemand() {
+		double expected = 0;
+		for (int k = 0; k < nProducts; k++) {
+			for (int w = 0; w < nWeeks; w++) {
+				expected += demandModel.expectedSales(products[k], firstWeek + w);
+			}
+		}
+		return expected;
+	}
+
+
+	/**
+	 * Runs 1 simulation, with the demand of each week drawn by the DemandSampler
+	 * @param sampler
+	 * @param results the array to write the results to, with a length of at least getResultSize()
+	 */
+	public void run(DemandSampler sampler, double[] results) {
+		run(sampler, null, null, 0, results);
+	}
+
+	/**
+	 * Runs 1 simulation, with the demand of a scenario of a ScenarioStore
+	 * @param scenarios the scenarios, of the same period and products as this kernel
+	 * @param scenario the index of the scenario
+	 * @param results the array to write the results to, with a length of at least getResultSize()
+	 */
+	public void run(ScenarioStore scenarios, int scenario, double[] results) {
+		run(null, null, scenarios, scenario, results);
+	}
+
+	/**
+	 * Runs 1 simulation, with the demand drawn by the Random object in the same order as simulationMain
+	 * @param r
+	 * @param results the array to write the results to, with a length of at least getResultSize()
+	 */
+	public void run(Random r, double[] results) {
+		run(null, r, null, 0, results);
+	}
+
+	private void run(DemandSampler sampler, Random r, ScenarioStore scenarios, int scenario, double[] results) {
+		int n = firstOfChunk.length - 1;
+
+		//Aggregate variables
+		int orders = 0;
+		int totalOrdered = 0;
+		int totalThrewAway = 0;
+		double holdingCost = 0; //The total holding cost
+		double revenue = 0; //Revenue of the time period
+		double revenueTheoretical = 0; //The maximum revenue that could have been made
+		double relevanceSoldProducts = 0; // The total relevance score of all the products sold
+		double relevanceAllProducts = 0;	// the total relevance score of all products demanded.
+		int productsSold = 0; //The amount of products sold
+		int totalDemand = 0; // the total amount of products demanded.
+
+		// The inventory at the start of the first week
+		for (int k = 0; k < nProducts; k++) {
+			storage[k] = 0;
+		}
+
+		for (int w = 0; w < nWeeks; w++) {
+			int t = firstWeek + w;
+			int salesWeek = 0;
+			int demandWeek = 0;
+			double revenueWeek = 0;
+			double capacityWeek = 0;
+			double relevanceScoreWeek = 0;
+
+			/** Ordering the new products */
+			if (vectorized) {
+				// The number of orders is not counted, it is not part of the results
+				int offset = w * nProducts;
+				if (printSimulationResults) {
+					for (int k = 0; k < nProducts; k++) {
+						totalOrdered += Math.max(orderUpToLevel[offset + k] - storage[k], 0);
+						totalThrewAway += Math.max(storage[k] - orderUpToLevel[offset + k], 0);
+					}
+				}
+				System.arraycopy(orderUpToLevel, offset, storage, 0, nProducts);
+				for (int k = 0; k < nProducts; k++) {
+					capacityWeek += storage[k] * averageAverageM3[k];
+				}
+				for (int k = 0; k < nProducts; k++) {
+					relevanceScoreWeek += storage[k] * relevanceScore[k];
+				}
+			}
+			for (int i = 0; !vectorized && i < n; i++) {
+				boolean orderForChunk = false; //Flag to keep track if an order was placed for this chunk
+				for (int k = firstOfChunk[i]; k < firstOfChunk[i + 1]; k++) {
+					int z = orderUpToLevel[w * nProducts + k];
+					if (storage[k] < z) {
+						//We need to place an order
+						orderForChunk = true;
+						totalOrdered += z - storage[k];
+						storage[k] = z;
+					} else if (storage[k] > z) {
+						totalThrewAway += storage[k] - z;
+						storage[k] = z;
+					}
+					capacityWeek += storage[k] * averageAverageM3[k];
+					relevanceScoreWeek += storage[k] * relevanceScore[k];
+				}
+				//Check if an order is placed if so add to the total amount of orders for ordering cost.
+				if (orderForChunk) {
+					orders++;
+				}
+			}
+
+			/** Drawing the demand, in the order of the products */
+			if (scenarios != null) {
+				scenarios.readWeek(scenario, w, demand);
+			} else if (sampler != null) {
+				demandModel.fillDemand(store, t, sampler, demandOfStore);
+				for (int k = 0; k < nProducts; k++) {
+					demand[k] = demandOfStore[storeIndex[k]];
+				}
+			} else {
+				for (int k = 0; k < nProducts; k++) {
+					demand[k] = demandModel.draw(products[k], t, r);
+				}
+			}
+
+			/** Selling products */
+			if (vectorized) {
+				// Every loop does one thing for all products, so the JIT compiler can use vector instructions.
+				// The sums are added in the same order as below, so the results are exactly the same.
+				int offset = w * nProducts;
+				for (int k = 0; k < nProducts; k++) {
+					sold[k] = Math.min(demand[k], storage[k]);
+				}
+				for (int k = 0; k < nProducts; k++) {
+					storage[k] -= sold[k];
+				}
+				for (int k = 0; k < nProducts; k++) {
+					salesWeek += sold[k];
+				}
+				for (int k = 0; k < nProducts; k++) {
+					demandWeek += demand[k];
+				}
+				for (int k = 0; k < nProducts; k++) {
+					revenueWeek += price[offset + k] * sold[k];
+				}
+				for (int k = 0; k < nProducts; k++) {
+					revenue += price[offset + k] * sold[k];
+				}
+				productsSold += salesWeek;
+				totalDemand += demandWeek;
+			}
+			for (int k = 0; !vectorized && k < nProducts; k++) {
+				double priceWeek = price[w * nProducts + k];
+				double relevance = relevanceScore[k];
+				int demandProduct = demand[k];
+				demandWeek += demandProduct;
+				// The products that can be sold
+				int sold = demandProduct <= storage[k] ? demandProduct : storage[k];
+				revenue += priceWeek * sold;
+				revenueWeek += priceWeek * sold;
+				revenueTheoretical += priceWeek * demandProduct;
+				relevanceSoldProducts += relevance * sold;
+				relevanceAllProducts += relevance * demandProduct;
+				productsSold += sold;
+				totalDemand += demandProduct;
+				salesWeek += sold;
+				storage[k] -= sold;
+			}
+			results[4 + w] = ((double) salesWeek) / demandWeek;
+			results[4 + nWeeks + w] = revenueWeek;
+			results[4 + 2 * nWeeks + w] = capacityWeek;
+			results[4 + 3 * nWeeks + w] = relevanceScoreWeek;
+
+			/** Moving on to the next week */
+			if (w != nWeeks - 1) {
+				for (int k = 0; k < nProducts; k++) {
+					holdingCost += storage[k] * unitStorageCost[k] * 7; //Add holding cost for the goods that are held for more then a week
+				}
+			}
+		}
+
+		if (printSimulationResults) {
+			System.out.println("The revenue for this period is: " + revenue);
+			System.out.println("There are " + totalOrdered + " products ordered and " + totalThrewAway+ " products thown away");
+			System.out.println("The amount of products sold is: " + productsSold);
+			System.out.println("The amount of products demanded is: " + totalDemand);
+			System.out.println("The service level is: " + ((double)productsSold / totalDemand ));
+			System.out.println();
+		}
+
+		results[0] = revenue;
+		results[1] = productsSold;
+		results[2] = totalDemand;
+		results[3] = (double) productsSold / totalDemand;
+	}
+
+
+	/**
+	 * This method converts the results of a replication to the ArrayList of simulationMain
+	 * @param results
+	 * @return
+	 */
+	public static ArrayList<Double> toList(double[] results) {
+		ArrayList<Double> list = new ArrayList<Double>(results.length);
+		for (double d : results) {
+			list.add(d);
+		}
+		return list;
+	}
+}
@@ -0,0 +1,408 @@
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+/**
+ * The SimulationStatistics collect the results of the replications of the simulation, without keeping the
+ * results of each replication. For every number in the results of a replication (a metric, like the revenue or
+ * the service level of a week) it keeps the running mean and variance (with the method of Welford), the
+ * minimum, the maximum and a QuantileSketch for percentiles. So the memory does not grow with the number of
+ * replications.
+ *
+ * The metrics have the layout of the results of simulationMain: revenue, products sold, products demanded and
+ * service level, followed by the service level, revenue, capacity and relevance score of each week.
+ *
+ * Statistics of different groups of replications can be merged (with the formulas of Chan et al. for the
+ * variance). The result only depends on the order in which the groups are merged, so merging the groups in a
+ * fixed order gives exactly the same result every time.
+ *
+ * Two variance reduction techniques change the estimate of the mean and its confidence interval:
+ * - antithetic variates: addPair adds two replications with mirrored demand as one observation, their
+ *   average. The mean and variance are those of the observations, the percentiles, minimum and maximum those
+ *   of the replications.
+ * - a control variate: once the expected demand is set, the mean is corrected with the difference between
+ *   the average and the expected products demanded, times the regression coefficient of the metric on the
+ *   products demanded. The variance is then the variance that the products demanded do not explain.
+ */
+public class SimulationStatistics {
+	public static final int REVENUE = 0;
+	public static final int PRODUCTS_SOLD = 1;
+	public static final int PRODUCTS_DEMANDED = 2;
+	public static final int SERVICE_LEVEL = 3;
+	// The relative accuracy of the percentiles
+	public static final double QUANTILE_ACCURACY = 0.001;
+
+	private int firstWeek;
+	private int nWeeks;
+	private int nMetrics;
+	// The number of replications and observations (replications or antithetic pairs)
+	private long count = 0;
+	private long nObservations = 0;
+	// The mean and sum of squared differences from the mean of the observations
+	private double[] mean;
+	private double[] m2;
+	// The sum of the products of the differences from the mean with those of the products demanded
+	private double[] coMoment;
+	// The mean and sum of squared differences from the mean of the replications
+	private double[] replicationMean;
+	private double[] replicationM2;
+	// The known mean of the products demanded, NaN if there is no control variate
+	private double expectedDemand = Double.NaN;
+	private double[] pairAverage;
+	private double[] min;
+	private double[] max;
+	private QuantileSketch[] sketches;
+
+	/**
+	 * Constructor for the SimulationStatistics
+	 * @param T Array with start and end week of the period of the simulation
+	 */
+	public SimulationStatistics(int[] T) {
+		this.firstWeek = T[0];
+		this.nWeeks = T[1] - T[0];
+		this.nMetrics = 4 + 4 * nWeeks;
+		mean = new double[nMetrics];
+		m2 = new double[nMetrics];
+		coMoment = new double[nMetrics];
+		replicationMean = new double[nMetrics];
+		replicationM2 = new double[nMetrics];
+		pairAverage = new double[nMetrics];
+		min = new double[nMetrics];
+		max = new double[nMetrics];
+		java.util.Arrays.fill(min, Double.POSITIVE_INFINITY);
+		java.util.Arrays.fill(max, Double.NEGATIVE_INFINITY);
+		sketches = new QuantileSketch[nMetrics];
+		for(int m = 0; m < nMetrics; m++) {
+			sketches[m] = new QuantileSketch(QUANTILE_ACCURACY);
+		}
+	}
+
+
+	/**
+	 * This method adds the results of one replication. The array can be reused afterwards.
+	 * @param results the results of the replication, in the layout of simulationMain
+	 */
+	public void add(double[] results) {
+		addObservation(results);
+		addReplication(results);
+	}
+
+	/**
+	 * This method adds the results of two replications with antithetic demand, as one observation
+	 * @param first the results of the replication with the demand of the first sampler of the pair
+	 * @param second the results of the replication with the mirrored demand
+	 */
+	public void addPair(double[] first, double[] second) {
+		for(int m = 0; m < nMetrics; m++) {
+			pairAverage[m] = (first[m] + second[m]) / 2;
+		}
+		addObservation(pairAverage);
+		addReplication(first);
+		addReplication(second);
+	}
+
+	private void addObservation(double[] x) {
+		nObservations++;
+		double deltaDemand = x[PRODUCTS_DEMANDED] - mean[PRODUCTS_DEMANDED];
+		for(int m = 0; m < nMetrics; m++) {
+			double delta = x[m] - mean[m];
+			mean[m] += delta / nObservations;
+			m2[m] += delta * (x[m] - mean[m]);
+			coMoment[m] += deltaDemand * (x[m] - mean[m]);
+		}
+	}
+
+	private void addReplication(double[] x) {
+		count++;
+		for(int m = 0; m < nMetrics; m++) {
+			double delta = x[m] - replicationMean[m];
+			replicationMean[m] += delta / count;
+			replicationM2[m] += delta * (x[m] - replicationMean[m]);
+			min[m] = Math.min(min[m], x[m]);
+			max[m] = Math.max(max[m], x[m]);
+			sketches[m].add(x[m]);
+		}
+	}
+
+	/**
+	 * This method adds the statistics of other replications of the same simulation period
+	 * @param other
+	 */
+	public void merge(SimulationStatistics other) {
+		if(other.count == 0) {
+			return;
+		}
+		long total = count + other.count;
+		long totalObservations = nObservations + other.nObservations;
+		double weight = (double) nObservations * other.nObservations / totalObservations;
+		double deltaDemand = other.mean[PRODUCTS_DEMANDED] - mean[PRODUCTS_DEMANDED];
+		for(int m = 0; m < nMetrics; m++) {
+			double delta = other.mean[m] - mean[m];
+			mean[m] += delta * other.nObservations / totalObservations;
+			m2[m] += other.m2[m] + delta * delta * weight;
+			coMoment[m] += other.coMoment[m] + deltaDemand * delta * weight;
+			delta = other.replicationMean[m] - replicationMean[m];
+			replicationMean[m] += delta * other.count / total;
+			replicationM2[m] += other.replicationM2[m] + delta * delta * ((double) count * other.count / total);
+			min[m] = Math.min(min[m], other.min[m]);
+			max[m] = Math.max(max[m], other.max[m]);
+			sketches[m].merge(other.sketches[m]);
+		}
+		count = total;
+		nObservations = totalObservations;
+	}
+
+	/**
+	 * This method sets the known mean of the products demanded, so the products demanded are used as a
+	 * control variate for the mean of the other metrics
+	 * @param expectedDemand the expected products demanded, or NaN for no control variate
+	 */
+	public void setExpectedDemand(double expectedDemand) {
+		this.expectedDemand = expectedDemand;
+	}
+
+
+	/**
+	 * @return the number of replications
+	 */
+	public long getCount() {
+		return count;
+	}
+
+	/**
+	 * @return the number of observations, the number of antithetic pairs if they are used
+	 */
+	public long getNObservations() {
+		return nObservations;
+	}
+
+	public int getNMetrics() {
+		return nMetrics;
+	}
+
+	/**
+	 * @param metric
+	 * @return the estimate of the mean, with the control variate if the expected demand is set. If a
+	 * replication has an infinite value, the mean is infinite (or NaN if there are both signs), like the sum
+	 */
+	public double getMean(int metric) {
+		if(count > 0 && (Double.isInfinite(min[metric]) || Double.isInfinite(max[metric]))) {
+			return min[metric] + max[metric];
+		}
+		if(!usesControl()) {
+			return mean[metric];
+		}
+		double beta = coMoment[metric] / m2[PRODUCTS_DEMANDED];
+		return mean[metric] - beta * (mean[PRODUCTS_DEMANDED] - expectedDemand);
+	}
+
+	/**
+	 * @param metric
+	 * @return the variance of an observation, without the part that the control variate explains if the
+	 * expected demand is set
+	 */
+	public double getVariance(int metric) {
+		if(!usesControl()) {
+			return getSampleVariance(metric);
+		}
+		double residual = m2[metric] - coMoment[metric] * coMoment[metric] / m2[PRODUCTS_DEMANDED];
+		return Math.max(0.0, residual) / (nObservations - 2);
+	}
+
+	/**
+	 * @param metric
+	 * @return the average of the observations, without the control variate
+	 */
+	public double getSampleMean(int metric) {
+		return mean[metric];
+	}
+
+	/**
+	 * @param metric
+	 * @return the sample variance of the observations, without the control variate
+	 */
+	public double getSampleVariance(int metric) {
+		return nObservations > 1 ? m2[metric] / (nObservations - 1) : 0.0;
+	}
+
+	/**
+	 * This method calculates how many times more replications independent replications without a control
+	 * variate would need for the same confidence interval
+	 * @param metric
+	 * @return the variance of the mean of independent replications divided by the variance of the estimate
+	 */
+	public double getVarianceReductionFactor(int metric) {
+		double independent = count > 1 ? replicationM2[metric] / (count - 1) / count : 0.0;
+		return independent / (getVariance(metric) / nObservations);
+	}
+
+	private boolean usesControl() {
+		return !Double.isNaN(expectedDemand) && nObservations > 2 && m2[PRODUCTS_DEMANDED] > 0;
+	}
+
+	public double getStandardDeviation(int metric) {
+		return Math.sqrt(getVariance(metric));
+	}
+
+	public double getMin(int metric) {
+		return min[metric];
+	}
+
+	public double getMax(int metric) {
+		return max[metric];
+	}
+
+	/**
+	 * @param metric
+	 * @param q between 0 and 1, e.g. 0.05 for the 5th percentile
+	 * @return the estimated percentile of the metric over the replications
+	 */
+	public double getQuantile(int metric, double q) {
+		return sketches[metric].getQuantile(q);
+	}
+
+	/**
+	 * This method calculates a confidence interval for the mean of a metric, based on the normal
+	 * distribution. This is accurate for the usual numbers of observations (30 or more).
+	 * @param metric
+	 * @param level the confidence level, e.g. 0.95
+	 * @return the lower and upper bound of the interval
+	 */
+	public double[] getConfidenceInterval(int metric, double level) {
+		double halfWidth = normalQuantile(0.5 + level / 2) * getStandardDeviation(metric) / Math.sqrt(nObservations);
+		return new double[] {getMean(metric) - halfWidth, getMean(metric) + halfWidth};
+	}
+
+
+	/**
+	 * @param t the week, from T[0] till T[1]
+	 * @return the index of the service level of week t
+	 */
+	public int serviceLevelOfWeek(int t) {
+		return 4 + (t - firstWeek);
+	}
+
+	/**
+	 * @param t the week, from T[0] till T[1]
+	 * @return the index of the revenue of week t
+	 */
+	public int revenueOfWeek(int t) {
+		return 4 + nWeeks + (t - firstWeek);
+	}
+
+	/**
+	 * @param t the week, from T[0] till T[1]
+	 * @return the index of the capacity of week t
+	 */
+	public int capacityOfWeek(int t) {
+		return 4 + 2 * nWeeks + (t - firstWeek);
+	}
+
+	/**
+	 * @param t the week, from T[0] till T[1]
+	 * @return the index of the relevance score of week t
+	 */
+	public int relevanceScoreOfWeek(int t) {
+		return 4 + 3 * nWeeks + (t - firstWeek);
+	}
+
+	/**
+	 * This method gives the name of a metric, as used for the average results of getSimulationResults
+	 * @param metric
+	 * @return
+	 */
+	public String getName(int metric) {
+		switch(metric) {
+		case REVENUE:
+			return "Revenue";
+		case PRODUCTS_SOLD:
+			return "Products sold";
+		case PRODUCTS_DEMANDED:
+			return "Products demanded ";
+		case SERVICE_LEVEL:
+			return "Service level whole year";
+		}
+		String[] names = {"Service level", "Revenue", "Capacity", "Relevance Score"};
+		int week = (metric - 4) % nWeeks;
+		return names[(metric - 4) / nWeeks] + " for week " + (firstWeek + week + 1);
+	}
+
+
+	/**
+	 * This method writes the statistics to a stream, for a checkpoint of the ReplicationRunner
+	 * @param out
+	 * @throws IOException
+	 */
+	public void write(DataOutputStream out) throws IOException {
+		out.writeInt(firstWeek);
+		out.writeInt(nWeeks);
+		out.writeLong(count);
+		out.writeLong(nObservations);
+		out.writeDouble(expectedDemand);
+		for(double[] values : new double[][] {mean, m2, coMoment, replicationMean, replicationM2, min, max}) {
+			for(double value : values) {
+				out.writeDouble(value);
+			}
+		}
+		for(QuantileSketch sketch : sketches) {
+			sketch.write(out);
+		}
+	}
+
+	/**
+	 * This method reads statistics that are written by write. They are exactly the same as the statistics
+	 * that are written, so adding the next replications gives the same result as without writing and reading.
+	 * @param in
+	 * @return
+	 * @throws IOException
+	 */
+	public static SimulationStatistics read(DataInputStream in) throws IOException {
+		int firstWeek = in.readInt();
+		int nWeeks = in.readInt();
+		SimulationStatistics statistics = new SimulationStatistics(new int[] {firstWeek, firstWeek + nWeeks});
+		statistics.count = in.readLong();
+		statistics.nObservations = in.readLong();
+		statistics.expectedDemand = in.readDouble();
+		double[][] arrays = {statistics.mean, statistics.m2, statistics.coMoment, statistics.replicationMean,
+				statistics.replicationM2, statistics.min, statistics.max};
+		for(double[] values : arrays) {
+			for(int m = 0; m < values.length; m++) {
+				values[m] = in.readDouble();
+			}
+		}
+		for(int m = 0; m < statistics.nMetrics; m++) {
+			statistics.sketches[m] = QuantileSketch.read(in);
+		}
+		return statistics;
+	}
+
+
+	/**
+	 * This method calculates the quantile of the standard normal distribution with the rational approximation
+	 * of Acklam, which has a relative error below 1.2e-9
+	 * @param p between 0 and 1
+	 * @return
+	 */
+	static double normalQuantile(double p) {
+		double[] a = {-3.969683028665376e+01, 2.209460984245205e+02, -2.759285104469687e+02, 1.383577518672690e+02,
+				-3.066479806614716e+01, 2.506628277459239e+00};
+		double[] b = {-5.447609879822406e+01, 1.615858368580409e+02, -1.556989798598866e+02, 6.680131188771972e+01,
+				-1.328068155288572e+01};
+		double[] c = {-7.784894002430293e-03, -3.223964580411365e-01, -2.400758277161838e+00, -2.549732539343734e+00,
+				4.374664141464968e+00, 2.938163982698783e+00};
+		double[] d = {7.784695709041462e-03, 3.224671290700398e-01, 2.445134137142996e+00, 3.754408661907416e+00};
+		double pLow = 0.02425;
+		if(p < pLow) {
+			double q = Math.sqrt(-2 * Math.log(p));
+			return (((((c[0] * q + c[1]) * q + c[2]) * q + c[3]) * q + c[4]) * q + c[5])
+					/ ((((d[0] * q + d[1]) * q + d[2]) * q + d[3]) * q + 1);
+		}
+		if(p > 1 - pLow) {
+			return -normalQuantile(1 - p);
+		}
+		double q = p - 0.5;
+		double r = q * q;
+		return (((((a[0] * r + a[1]) * r + a[2]) * r + a[3]) * r + a[4]) * r + a[5]) * q
+				/ (((((b[0] * r + b[1]) * r + b[2]) * r + b[3]) * r + b[4]) * r + 1);
+	}
+}
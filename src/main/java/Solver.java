@@ -76,8 +76,7 @@ public class Solver {
 		ArrayList<HashMap<String, HashMap<String, Product>>> dt = new ArrayList<HashMap<String, HashMap<String, Product>>>();
 				
 		try {
-			CustomDataReader cdm = new CustomDataReader(data, relevanceScore, warehouseCost);
-			 return cdm.readData(years);
+			return CustomDataReader.readDataCached(data, relevanceScore, warehouseCost, years);
 		} catch (FileNotFoundException e) {
 			e.printStackTrace();
 		}
@@ -276,7 +275,7 @@ public class Solver {
 					HashMap<String, Product> chunk = data.get(chunkNames.get(i));
 					Product prod = chunk.get(sizes[s]);
 					if (prod != null) {
-						double criticalValue = prod.getProductGroup().equals("General Toys") ? criticalValue98 : criticalValue95;
+						double criticalValue = prod.belongsToGeneralToys() ? criticalValue98 : criticalValue95;
 						r[t][i][s]= cplex.intVar(0, (int) (Math.sqrt(Math.abs(prod.getSalesVarianceOfWeek(t)))*criticalValue), "r(" + (t+1) + "," + chunkNames.get(i) + "," + sizes[s] + ")");
 					}
 				}
@@ -294,7 +293,7 @@ public class Solver {
 					for (int t = 0; t < T; t++) {
 //						System.out.println(prod.getRelevanceScore());
 						objExpr = cplex.sum(objExpr, cplex.prod(prod.getRelevanceScore(), r[t][i][s]));
-//						double criticalValue = prod.getProductGroup().equals("General Toys") ? criticalValue98 : criticalValue95;
+//						double criticalValue = prod.belongsToGeneralToys() ? criticalValue98 : criticalValue95;
 //						cplex.addLe(r[t][i][s], Math.sqrt(Math.abs(prod.getSalesVarianceOfWeek(t)))*criticalValue);
 					}
 				}
@@ -710,7 +709,7 @@ public class Solver {
 				for (int s = 0; s < size; s++) {
 					Product prod = chunk.get(sizes[s]);
 					if (prod != null) {
-						if (prod.getProductGroup().equals("General Toys")) { 
+						if (prod.belongsToGeneralToys()) { 
 							totDemandGT += prod.getSales(t); 
 							serviceLevelGT = cplex.sum(serviceLevelGT, z[t][i][s]);
 
@@ -787,20 +786,18 @@ public class Solver {
 		double maxcap0 = 3000*15/100;
 		double maxcap1 = 15000*15/100;
 		
-		ArrayList<String> chunkNames = new ArrayList<String>(data.keySet());
-		int n = chunkNames.size();
-		int size = sizes.length;
+		ProductStore store = new ProductStore(data, sizes);
+		int n = store.getNChunks();
+		int size = store.getNSizes();
 		
 		for (int t = 0; t < T; t++)	{
 			IloNumExpr capacity0 = cplex.constant(0);
 			IloNumExpr capacity1 = cplex.constant(0);
 			for (int i = 0; i < n; i ++) {
-				HashMap<String, Product> chunk = data.get(chunkNames.get(i));
 				for (int s = 0; s < size; s++) {
-					Product prod = chunk.get(sizes[s]);
-					if (prod != null) {
-						capacity0 = cplex.sum(capacity0, cplex.prod(prod.getAverageM3(t), x[t][i][s][0]));
-						capacity1 = cplex.sum(capacity1, cplex.prod(prod.getAverageM3(t), x[t][i][s][1]));
+					if (store.isPresent(i, s)) {
+						capacity0 = cplex.sum(capacity0, cplex.prod(store.getAverageM3(i, s, t), x[t][i][s][0]));
+						capacity1 = cplex.sum(capacity1, cplex.prod(store.getAverageM3(i, s, t), x[t][i][s][1]));
 					}
 				}
 			}
@@ -853,7 +850,7 @@ public class Solver {
 						
 						serviceLevel = cplex.sum(serviceLevel, z[t][i][s]);
 
-						if (prod.getProductGroup().equals("General Toys")) { 
+						if (prod.belongsToGeneralToys()) { 
 							totDemandGT += prod.getSales(t); 
 							serviceLevelGT = cplex.sum(serviceLevelGT, z[t][i][s]);
 
@@ -905,7 +902,7 @@ public class Solver {
 						if (prod != null ) {
 							try {
 								revenue += Math.min(prod.getSales(t), cplex.getValue(z[t][i][s])) * prod.getAveragePrice(t);
-								if (prod.getProductGroup().equals("General Toys")) { 
+								if (prod.belongsToGeneralToys()) { 
 									totDemandGT += prod.getSales(t);
 									totSupplyGT += Math.min(prod.getSales(t), cplex.getValue(z[t][i][s]));
 									
@@ -965,7 +962,7 @@ public class Solver {
 					if (prod != null) {
 						serviceLevel = cplex.sum(serviceLevel, z[t][i][s]);
 
-						if (prod.getProductGroup().equals("General Toys")) { 
+						if (prod.belongsToGeneralToys()) { 
 							totDemandGT += prod.getSales(t); 
 							serviceLevelGT = cplex.sum(serviceLevelGT, z[t][i][s]);
 
@@ -1071,7 +1068,7 @@ public class Solver {
 
 						serviceLevel = cplex.sum(serviceLevel, z[t][i][s]);
 
-						if (prod.getProductGroup().equals("General Toys")) { 
+						if (prod.belongsToGeneralToys()) { 
 							totDemandGT += prod.getSales(t); 
 							serviceLevelGT = cplex.sum(serviceLevelGT, z[t][i][s]);
 
@@ -1296,20 +1293,18 @@ public class Solver {
 	 * @throws IloException 
 	 */
 	public static void capacityCheck(int[] T,String[] sizes, IloCplex cplex, IloNumVar[][][][] x, HashMap<String, HashMap<String, Product>> data ) throws IloException {
-		ArrayList<String> chunkNames = new ArrayList<String>(data.keySet());
-		int n = chunkNames.size();
-		int size = sizes.length;
+		ProductStore store = new ProductStore(data, sizes);
+		int n = store.getNChunks();
+		int size = store.getNSizes();
 		
 		for (int t = T[0]; t < T[1]; t++)	{
 			IloNumExpr capacity0 = cplex.constant(0);
 			IloNumExpr capacity1 = cplex.constant(0);
 			for (int i = 0; i < n; i ++) {
-				HashMap<String, Product> chunk = data.get(chunkNames.get(i));
 				for (int s = 0; s < size; s++) {
-					Product prod = chunk.get(sizes[s]);
-					if (prod != null) {
-						capacity0 = cplex.sum(capacity0, cplex.prod(prod.getAverageM3(t), x[t][i][s][0]));
-						capacity1 = cplex.sum(capacity1, cplex.prod(prod.getAverageM3(t), x[t][i][s][1]));
+					if (store.isPresent(i, s)) {
+						capacity0 = cplex.sum(capacity0, cplex.prod(store.getAverageM3(i, s, t), x[t][i][s][0]));
+						capacity1 = cplex.sum(capacity1, cplex.prod(store.getAverageM3(i, s, t), x[t][i][s][1]));
 					}
 				}
 			}
@@ -1350,7 +1345,7 @@ public class Solver {
 					if (prod != null) {
 						serviceLevel = cplex.sum(serviceLevel, z[t][i][s]);
 
-						if (prod.getProductGroup().equals("General Toys")) { 
+						if (prod.belongsToGeneralToys()) { 
 							totDemandGT += prod.getSales(t); 
 							serviceLevelGT = cplex.sum(serviceLevelGT, z[t][i][s]);
 
@@ -1403,7 +1398,7 @@ public class Solver {
 				for (int s = 0; s < size; s++) {
 					Product prod = chunk.get(sizes[s]);
 					if (prod != null) {
-						if (prod.getProductGroup().equals("General Toys")) { 
+						if (prod.belongsToGeneralToys()) { 
 							totDemandGT += prod.getSales(t); 
 							serviceLevelGT = cplex.sum(serviceLevelGT, z[t][i][s]);
 
@@ -1440,7 +1435,7 @@ public class Solver {
 				for (int s = 0; s < size; s++) {
 					Product prod = chunk.get(sizes[s]);
 					if (prod != null) {
-						if (prod.getProductGroup().equals("General Toys")) { 
+						if (prod.belongsToGeneralToys()) { 
 							serviceLevelGT = cplex.sum(serviceLevelGT, z[t][i][s]);
 
 						}else {
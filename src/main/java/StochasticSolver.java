@@ -64,8 +64,7 @@ public class StochasticSolver {
 		ArrayList<HashMap<String, HashMap<String, Product>>> dt = new ArrayList<HashMap<String, HashMap<String, Product>>>();
 				
 		try {
-			CustomDataReader cdm = new CustomDataReader(data, relevanceScore, warehouseCost);
-			 return cdm.readData(years);
+			return CustomDataReader.readDataCached(data, relevanceScore, warehouseCost, years);
 		} catch (FileNotFoundException e) {
 			e.printStackTrace();
 		}
@@ -196,9 +195,9 @@ public class StochasticSolver {
 						capacity0 = cplex.sum(capacity0, cplex.prod(prod.getAverageM3(t), x[t][i][s][0]));
 						capacity1 = cplex.sum(capacity1, cplex.prod(prod.getAverageM3(t), x[t][i][s][1]));
 					
-						//					double criticalValue = prod.getProductGroup().equals("General Toys") ? criticalValue98 : criticalValue95;
+						//					double criticalValue = prod.belongsToGeneralToys() ? criticalValue98 : criticalValue95;
 						//					cplex.addGe(cplex.sum(x[t][i][s][0], x[t][i][s][1]), prod.getSales(t) + prod.getSalesVarianceOfWeek(t)*criticalValue);
-						if (prod.getProductGroup().equals("General Toys")) {
+						if (prod.belongsToGeneralToys()) {
 							serviceGT = cplex.sum(serviceGT, cplex.sum(x[t][i][s][0], x[t][i][s][1]));
 							demandGT += prod.getSales(t);
 							stdGT += prod.getSalesVarianceOfWeek(t);
@@ -0,0 +1,192 @@
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.Iterator;
+
+import javax.xml.parsers.ParserConfigurationException;
+
+import org.apache.poi.openxml4j.exceptions.OpenXML4JException;
+import org.apache.poi.openxml4j.opc.OPCPackage;
+import org.apache.poi.openxml4j.opc.PackageAccess;
+import org.apache.poi.util.XMLHelper;
+import org.apache.poi.xssf.eventusermodel.ReadOnlySharedStringsTable;
+import org.apache.poi.xssf.eventusermodel.XSSFReader;
+import org.xml.sax.Attributes;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xml.sax.XMLReader;
+import org.xml.sax.helpers.DefaultHandler;
+
+/**
+ * This class reads the first sheet of an xlsx file row by row by means of the SAX based event model of POI.
+ * In contrast to WorkbookFactory.create, the sheet is never loaded into memory as a whole and no Row or Cell
+ * objects are created. Every row is handed to a RowHandler as an array with the raw cell values, in which
+ * index c holds the value of column c, or null if the cell is empty. The array is reused for every row, so
+ * a RowHandler should not keep a reference to it.
+ *
+ * Numeric cells are given in the way they are stored in the file, so 2018 instead of "2018.0".
+ */
+public class StreamingSheetReader {
+	private File file;
+	private int nColumns;
+
+	/**
+	 * A RowHandler receives the rows of the sheet in the order in which they are stored in the file.
+	 */
+	public interface RowHandler {
+		/**
+		 * @param rowNum the index of the row in the sheet, the header has index 0
+		 * @param values the raw cell values of the first nColumns columns
+		 */
+		void handleRow(int rowNum, String[] values);
+	}
+
+
+	/**
+	 * Constructor for the StreamingSheetReader
+	 * @param file the xlsx file to read
+	 * @param nColumns the number of columns (starting from column A) that are passed to the RowHandler.
+	 * Cells in other columns are skipped.
+	 */
+	public StreamingSheetReader(File file, int nColumns) {
+		this.file = file;
+		this.nColumns = nColumns;
+	}
+
+
+	/**
+	 * This method streams all rows of the first sheet to the given handler.
+	 * @param handler
+	 * @throws IOException whenever the file can not be opened or is not a valid xlsx file
+	 */
+	public void read(RowHandler handler) throws IOException {
+		try (OPCPackage pkg = OPCPackage.open(file, PackageAccess.READ)) {
+			XSSFReader reader = new XSSFReader(pkg);
+			// The read only table does not build a DOM of the shared strings either
+			ReadOnlySharedStringsTable sharedStrings = new ReadOnlySharedStringsTable(pkg);
+			Iterator<InputStream> sheets = reader.getSheetsData();
+			if(!sheets.hasNext()) {
+				throw new IOException("No sheets found in " + file.getName());
+			}
+			try (InputStream sheet = sheets.next()) {
+				XMLReader parser = XMLHelper.newXMLReader();
+				parser.setContentHandler(new SheetHandler(sharedStrings, handler));
+				parser.parse(new InputSource(sheet));
+			}
+		} catch (OpenXML4JException | SAXException | ParserConfigurationException e) {
+			throw new IOException("Could not stream " + file.getName(), e);
+		}
+	}
+
+
+	/**
+	 * This method converts the letters of a cell reference like "AB12" to a zero based column index.
+	 * @param ref
+	 * @return the column index, e.g. 27 for "AB12"
+	 */
+	private static int columnIndex(String ref) {
+		int column = 0;
+		for(int i = 0; i < ref.length(); i++) {
+			char c = ref.charAt(i);
+			if(c < 'A' || c > 'Z') {
+				break;
+			}
+			column = column * 26 + (c - 'A' + 1);
+		}
+		return column - 1;
+	}
+
+
+	/**
+	 * The SAX handler that collects the values of one row at a time. Only the elements that are needed to
+	 * find the values are handled: row, c (cell), v (value) and t (text of an inline string).
+	 */
+	private class SheetHandler extends DefaultHandler {
+		private ReadOnlySharedStringsTable sharedStrings;
+		// Shared strings are resolved once, so equal cells also share the same String object
+		private String[] resolvedStrings;
+		private RowHandler handler;
+
+		private String[] values = new String[nColumns];
+		private StringBuilder text = new StringBuilder();
+		private boolean readingText = false;
+		private int rowNum = -1;
+		private int column = -1;
+		private String cellType;
+
+		SheetHandler(ReadOnlySharedStringsTable sharedStrings, RowHandler handler) {
+			this.sharedStrings = sharedStrings;
+			this.resolvedStrings = new String[sharedStrings.getUniqueCount()];
+			this.handler = handler;
+		}
+
+		@Override
+		public void startElement(String uri, String localName, String qName, Attributes attributes) {
+			switch(localName) {
+			case "row":
+				Arrays.fill(values, null);
+				String r = attributes.getValue("r");
+				// The row number is optional in the file format, in that case the rows are consecutive
+				rowNum = r != null ? Integer.parseInt(r) - 1 : rowNum + 1;
+				column = -1;
+				break;
+			case "c":
+				String ref = attributes.getValue("r");
+				column = ref != null ? columnIndex(ref) : column + 1;
+				cellType = attributes.getValue("t");
+				break;
+			case "v":
+			case "t":
+				text.setLength(0);
+				readingText = true;
+				break;
+			default:
+				break;
+			}
+		}
+
+		@Override
+		public void characters(char[] ch, int start, int length) {
+			if(readingText) {
+				text.append(ch, start, length);
+			}
+		}
+
+		@Override
+		public void endElement(String uri, String localName, String qName) {
+			switch(localName) {
+			case "v":
+			case "t":
+				readingText = false;
+				if(column >= 0 && column < nColumns) {
+					values[column] = cellValue();
+				}
+				break;
+			case "row":
+				handler.handleRow(rowNum, values);
+				break;
+			default:
+				break;
+			}
+		}
+
+		/**
+		 * This method converts the collected text to the value of the cell based on the cell type
+		 * @return
+		 */
+		private String cellValue() {
+			if("s".equals(cellType)) {
+				int index = Integer.parseInt(text.toString());
+				if(resolvedStrings[index] == null) {
+					resolvedStrings[index] = sharedStrings.getItemAt(index).getString();
+				}
+				return resolvedStrings[index];
+			} else if("b".equals(cellType)) {
+				return text.charAt(0) == '1' ? "TRUE" : "FALSE";
+			}
+			// Numbers, inline strings and cached formula results are stored as plain text
+			return text.toString();
+		}
+	}
+}
@@ -0,0 +1,87 @@
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The SymbolTable gives each distinct name (like a chunk, product group, size group or shop) a small integer
+ * code. Products store these codes instead of their own copies of the names, so a name that occurs in
+ * thousands of lines of the data file is only kept in memory once, and two names can be compared by
+ * comparing their codes. The name belonging to a code is only looked up when it is needed, for example
+ * when writing results.
+ *
+ * Codes are handed out in the order in which names are first seen, so they can differ between runs when
+ * the data is read in parallel. They should therefore never be written to a file; write the names instead.
+ * The table can be used by multiple threads at the same time.
+ */
+public class SymbolTable {
+	// The code that is used for a missing name
+	public static final int NONE = -1;
+
+	private ConcurrentHashMap<String, Integer> codes = new ConcurrentHashMap<String, Integer>();
+	private volatile String[] names = new String[64];
+	private int size = 0;
+	// The keys of the chunk HashMaps, one for each combination of a chunk and a product group
+	private ConcurrentHashMap<Long, String> chunkKeys = new ConcurrentHashMap<Long, String>();
+
+	/**
+	 * This method returns the code of a name. If the name is new, it gets the next free code.
+	 * @param name
+	 * @return the code, or NONE if the name is null
+	 */
+	public int code(String name) {
+		if(name == null) {
+			return NONE;
+		}
+		Integer code = codes.get(name);
+		if(code == null) {
+			code = codes.computeIfAbsent(name, this::add);
+		}
+		return code;
+	}
+
+	/**
+	 * This method returns the name belonging to a code
+	 * @param code
+	 * @return the name, or null if the code is NONE
+	 */
+	public String name(int code) {
+		if(code == NONE) {
+			return null;
+		}
+		return names[code];
+	}
+
+	/**
+	 * This method returns the key under which a chunk is stored in the data. Since there are chunks that
+	 * are named the same, but belong to different product groups, the key is chunk + "_" + productGroup.
+	 * The key is only created once for each combination.
+	 * @param chunk the code of the chunk
+	 * @param productGroup the code of the product group
+	 * @return
+	 */
+	public String chunkKey(int chunk, int productGroup) {
+		Long combination = ((long) chunk << 32) | (productGroup & 0xffffffffL);
+		String key = chunkKeys.get(combination);
+		if(key == null) {
+			key = chunkKeys.computeIfAbsent(combination, c -> name(chunk) + "_" + name(productGroup));
+		}
+		return key;
+	}
+
+	/**
+	 * @return the number of names in the table
+	 */
+	public synchronized int size() {
+		return size;
+	}
+
+	private synchronized Integer add(String name) {
+		if(size == names.length) {
+			names = Arrays.copyOf(names, 2 * size);
+		}
+		String[] current = names;
+		current[size] = name;
+		// Writing the volatile field again makes the new name visible to all threads
+		names = current;
+		return size++;
+	}
+}
@@ -0,0 +1,63 @@
+import java.util.HashMap;
+import java.util.Random;
+
+/**
+ * The TestCatalog makes the catalog of random products that the tests of the kernels run on, so every test
+ * uses the same products. Each product has 104 weeks of seasonal sales with noise, and a random volume and
+ * price in every week.
+ */
+class TestCatalog {
+	private static final int nWeeks = 104;
+
+	/**
+	 * This method creates a ProductStore of random products, not every chunk has every size
+	 * @param nChunks
+	 * @param sizes
+	 * @param seed
+	 * @return
+	 */
+	static ProductStore randomStore(int nChunks, String[] sizes, long seed) {
+		Random r = new Random(seed);
+		HashMap<String, HashMap<String, Product>> data = new HashMap<String, HashMap<String, Product>>();
+		for (int i = 0; i < nChunks; i++) {
+			HashMap<String, Product> chunk = new HashMap<String, Product>();
+			for (String size : sizes) {
+				if (r.nextDouble() < 0.2) {
+					continue;
+				}
+				Product product = new Product("Shop", "Group", "Chunk" + i, size, 0.01, r.nextDouble(), nWeeks);
+				double level = 1 + 50 * r.nextDouble();
+				for (int week = 1; week <= nWeeks; week++) {
+					product.addSale(week, (int) Math.round(level * (1 + 0.5 * Math.sin(week * 2 * Math.PI / 52)) + 3 * r.nextGaussian()));
+					product.addAverageM3(week, 0.01 + 0.1 * r.nextDouble());
+					product.addAveragePrice(week, 5 + 20 * r.nextDouble());
+				}
+				product.cleanTimeSeriesData();
+				product.calculateDistributionProperties();
+				chunk.put(size, product);
+			}
+			data.put("Chunk" + i + "_Group", chunk);
+		}
+		return new ProductStore(data, sizes);
+	}
+
+	/**
+	 * This method gives the order up to levels that are the predicted demand of every product
+	 * @param T the first and last week of the simulation
+	 * @param store
+	 * @return the order up to levels z[t][i][s], 0 for the products that are not present
+	 */
+	static int[][][] predictedDemand(int[] T, ProductStore store) {
+		int[][][] z = new int[T[1]][store.getNChunks()][store.getNSizes()];
+		for (int t = 0; t < T[1]; t++) {
+			for (int i = 0; i < store.getNChunks(); i++) {
+				for (int s = 0; s < store.getNSizes(); s++) {
+					if (store.isPresent(i, s)) {
+						z[t][i][s] = store.product(i, s).getPredictedDemand(t);
+					}
+				}
+			}
+		}
+		return z;
+	}
+}
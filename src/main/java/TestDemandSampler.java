@@ -0,0 +1,75 @@
+import java.util.Random;
+
+/**
+ * This class tests the normal values of the DemandSampler. The values are counted in the ten deciles of the
+ * standard normal distribution for a chi-square test, and the number of values in the tails is compared
+ * with the expected number. It also compares the time per value with Random.nextGaussian.
+ */
+public class TestDemandSampler {
+	// The deciles of the standard normal distribution
+	private static final double[] DECILES = {-1.2815515655446004, -0.8416212335729143, -0.5244005127080407,
+			-0.2533471031357997, 0.0, 0.2533471031357997, 0.5244005127080407, 0.8416212335729143, 1.2815515655446004};
+	// P(X > 3.090232306167813) = 0.001 and P(X > 4.264890793922602) = 0.00001
+	private static final double[] TAILS = {3.090232306167813, 4.264890793922602};
+	private static final double[] TAIL_PROBABILITIES = {0.001, 0.00001};
+
+	public static void main(String[] args) {
+		int n = 10000000;
+		DemandSampler sampler = new DemandSampler(2022);
+		long[] counts = new long[DECILES.length + 1];
+		long[] tailCounts = new long[TAILS.length];
+		double sum = 0.0;
+		double sumSquares = 0.0;
+		long tic = System.nanoTime();
+		for(int i = 0; i < n; i++) {
+			double x = sampler.nextGaussian();
+			int bin = 0;
+			while(bin < DECILES.length && x > DECILES[bin]) {
+				bin++;
+			}
+			counts[bin]++;
+			for(int j = 0; j < TAILS.length; j++) {
+				if(Math.abs(x) > TAILS[j]) {
+					tailCounts[j]++;
+				}
+			}
+			sum += x;
+			sumSquares += x * x;
+		}
+		long toc = System.nanoTime();
+
+		boolean allPassed = true;
+		double chiSquare = 0.0;
+		for(long count : counts) {
+			chiSquare += (count - n / 10.0) * (count - n / 10.0) / (n / 10.0);
+		}
+		// The 99.9% quantile of the chi-square distribution with 9 degrees of freedom
+		allPassed &= report("chi-square of the deciles " + String.format("%.1f", chiSquare) + " (df 9)", chiSquare < 27.88);
+		for(int j = 0; j < TAILS.length; j++) {
+			double expected = 2 * TAIL_PROBABILITIES[j] * n;
+			double z = (tailCounts[j] - expected) / Math.sqrt(expected);
+			allPassed &= report("values beyond +/-" + TAILS[j] + ": " + tailCounts[j] + ", expected " + expected, Math.abs(z) < 3.5);
+		}
+		double mean = sum / n;
+		double variance = sumSquares / n - mean * mean;
+		allPassed &= report("mean " + String.format("%.5f", mean), Math.abs(mean) < 3.5 / Math.sqrt(n));
+		allPassed &= report("variance " + String.format("%.5f", variance), Math.abs(variance - 1) < 3.5 * Math.sqrt(2.0 / n));
+		System.out.printf("ziggurat: %.1f ns per value%n", (double) (toc - tic) / n);
+
+		// Time of java.util.Random for comparison
+		Random r = new Random(2022);
+		double check = 0.0;
+		tic = System.nanoTime();
+		for(int i = 0; i < n; i++) {
+			check += r.nextGaussian();
+		}
+		toc = System.nanoTime();
+		System.out.printf("Random.nextGaussian: %.1f ns per value (%.1f)%n", (double) (toc - tic) / n, check);
+		System.out.println(allPassed ? "All tests passed" : "Some tests failed");
+	}
+
+	private static boolean report(String test, boolean passed) {
+		System.out.println(test + (passed ? "" : " FAILED"));
+		return passed;
+	}
+}
@@ -0,0 +1,78 @@
+import java.util.SplittableRandom;
+
+/**
+ * This class tests the PoissonSampler with a chi-square goodness-of-fit test for a range of means, and
+ * shows the time per drawn value. The statistic is converted to a standard normal z-score with the
+ * Wilson-Hilferty approximation, so a |z| above 3 means the values do not follow the Poisson distribution.
+ * The inverse of the distribution (used for antithetic variates) is tested in the same way, and it is checked
+ * that a larger uniform number never gives a smaller value.
+ */
+public class TestPoissonSampler {
+
+	public static void main(String[] args) {
+		double[] means = {0.5, 3, 9.9, 10, 25, 100, 745, 1000, 1e5, 1e7};
+		SplittableRandom r = new SplittableRandom(2022);
+		boolean allPassed = true;
+		for(int method = 0; method < 2; method++) {
+			boolean inverse = method == 1;
+			// The inverse takes about 10 times the square root of the mean steps, so it is tested with fewer values
+			int n = inverse ? 200000 : 1000000;
+			System.out.println(inverse ? "PoissonSampler.inverse" : "PoissonSampler.sample");
+			for(double mean : means) {
+				if(inverse && mean > 1e5) {
+					continue;
+				}
+				// Count the drawn values in the range mean +/- 8 standard deviations
+				int lb = (int) Math.max(0, Math.floor(mean - 8 * Math.sqrt(mean)));
+				int ub = (int) Math.ceil(mean + 8 * Math.sqrt(mean) + 10);
+				long[] observed = new long[ub - lb + 1];
+				long tic = System.nanoTime();
+				for(int i = 0; i < n; i++) {
+					int k = inverse ? PoissonSampler.inverse(mean, r.nextDouble()) : PoissonSampler.sample(mean, r::nextDouble);
+					observed[Math.min(Math.max(k, lb), ub) - lb]++;
+				}
+				long toc = System.nanoTime();
+
+				// Merge neighbouring values until each bin is expected to have at least 5 values
+				double chiSquare = 0.0;
+				int bins = 0;
+				double expectedBin = 0.0;
+				long observedBin = 0;
+				for(int k = lb; k <= ub; k++) {
+					double p = Math.exp(-mean + k * Math.log(mean) - PoissonSampler.logGamma(k + 1));
+					expectedBin += n * p;
+					observedBin += observed[k - lb];
+					if(expectedBin >= 5 && k < ub) {
+						chiSquare += (observedBin - expectedBin) * (observedBin - expectedBin) / expectedBin;
+						bins++;
+						expectedBin = 0.0;
+						observedBin = 0;
+					}
+				}
+				// The values outside the range are very unlikely, so they are added to the last bin
+				if(expectedBin > 0) {
+					chiSquare += (observedBin - expectedBin) * (observedBin - expectedBin) / expectedBin;
+					bins++;
+				}
+				int df = bins - 1;
+				double z = (Math.cbrt(chiSquare / df) - (1 - 2.0 / (9 * df))) / Math.sqrt(2.0 / (9 * df));
+				boolean passed = Math.abs(z) < 3;
+				allPassed &= passed;
+				System.out.printf("mean %10.1f: chi-square %9.1f, df %5d, z %6.2f, %5.1f ns per value %s%n", mean, chiSquare, df, z,
+						(double) (toc - tic) / n, passed ? "" : "FAILED");
+				if(inverse) {
+					boolean monotone = true;
+					int previous = 0;
+					for(int i = 0; i <= 10000; i++) {
+						int k = PoissonSampler.inverse(mean, i / 10000.0);
+						monotone &= k >= previous;
+						previous = k;
+					}
+					allPassed &= monotone;
+					System.out.println(monotone ? "  the values increase with u" : "  the values do not increase with u FAILED");
+				}
+			}
+		}
+		System.out.println(allPassed ? "All tests passed" : "Some tests failed");
+	}
+}
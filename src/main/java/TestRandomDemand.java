@@ -288,25 +288,32 @@ public class TestRandomDemand {
 		int baseYear = 2018;
 		int nWeeks = 104;
 		data = new HashMap<String,HashMap<String,Product>>();
+		CellDecoder decoder = new CellDecoder(9);
 		i = 0;
 		for(Row row : dataSheet) {
 			if(i != 0) {
 				try {
+					if(!decoder.hasValues(row, 0, 1, 2, 3, 5, 6, 7)) {
+						// In this case, a cell is empty. We just skip the line in the database
+						System.err.println("In line " + (i + 1) + " is a missing value. Did not insert this line in the data set.");
+						i++;
+						continue;
+					}
 					// Find all primary necessary data to find out whether we need to add a new
 					// product or that we just need to add time series data.
-					// Since all values in the xlsx file are of type text, we need to convert them
-					int year = Integer.parseInt(getCellValueAsString(row.getCell(0)));
-					int week = Integer.parseInt(getCellValueAsString(row.getCell(1)));
+					// Numbers can be stored as text or as numeric cells, the decoder reads both
+					int year = decoder.getInt(row, 0);
+					int week = decoder.getInt(row, 1);
 					week = (year - baseYear) * 52 + week;
-					int qtySales = (int) Math.max(Double.parseDouble(getCellValueAsString(row.getCell(2))),0);
-					String productGroup = getCellValueAsString(row.getCell(3));
-					String chunk = getCellValueAsString(row.getCell(5));
-					String sizeGroup = getCellValueAsString(row.getCell(6));
+					int qtySales = (int) Math.max(decoder.getDouble(row, 2),0);
+					String productGroup = decoder.getString(row, 3);
+					String chunk = decoder.getString(row, 5);
+					String sizeGroup = decoder.getString(row, 6);
 					sizeGroup = convertSizeFormat(sizeGroup);
-					double averageM3 = Math.max(Double.parseDouble(getCellValueAsString(row.getCell(7))),0);
+					double averageM3 = Math.max(decoder.getDouble(row, 7),0);
 					double averagePrice;
-					if (row.getCell(8) != null) {
-						averagePrice = Math.max(Double.parseDouble(getCellValueAsString(row.getCell(8))),0);
+					if (decoder.hasValues(row, 8)) {
+						averagePrice = Math.max(decoder.getDouble(row, 8),0);
 					}else {
 						averagePrice = 0; 
 					}
@@ -330,7 +337,7 @@ public class TestRandomDemand {
 							} else {
 								// In this case, we only need to add the product to the chunk HashMap
 								// Find secondary data in order to create a new product
-								String shop = getCellValueAsString(row.getCell(4));
+								String shop = decoder.getString(row, 4);
 								double storageCost = sizeGroupCost.get(sizeGroup);
 								double relevance = relevanceData.get(chunk);
 								Product product = new Product(shop, productGroup, chunk, sizeGroup, storageCost, relevance, nWeeks);
@@ -345,7 +352,7 @@ public class TestRandomDemand {
 							// In this case, we need to add the chunk to the big HashMap and the product
 							// to a new chunk HashMap
 							// Find secondary data in order to create a new product
-							String shop = getCellValueAsString(row.getCell(4));
+							String shop = decoder.getString(row, 4);
 							double storageCost = sizeGroupCost.get(sizeGroup);
 							double relevance = relevanceData.get(chunk);
 							Product product = new Product(shop, productGroup, chunk, sizeGroup, storageCost, relevance, nWeeks);
@@ -361,13 +368,8 @@ public class TestRandomDemand {
 					}
 
 				} catch (NullPointerException n) {
-					if(n.getMessage().contentEquals("Cannot invoke \"org.apache.poi.ss.usermodel.Cell.getCellType()\" because \"cell\" is null")) {
-						// In this case, probably a cell is empty. We just skip the line in the database
-						System.err.println("In line " + (i + 1) + " is a missing value. Did not insert this line in the data set.");
-					} else {
-						// In this case something else is wrong
-						n.printStackTrace();
-					}
+					// In this case something else is missing, like the relevance score of the chunk
+					n.printStackTrace();
 				} catch (Exception e) {
 					e.printStackTrace();
 					throw new IllegalStateException("Something went wrong reading the big data file in line " + (i + 1));
@@ -413,28 +415,6 @@ public class TestRandomDemand {
 	}
 	
 	
-	/**
-	 * Since not all values in the data set are of the expected type, this method converts them all to String
-	 * @param cell
-	 * @return String representation of the cell
-	 */
-	private static String getCellValueAsString(Cell cell) {
-		String result;
-		switch (cell.getCellType()) {
-		case STRING:
-			result = cell.getStringCellValue();
-			break;
-		case NUMERIC:
-			result = String.valueOf(cell.getNumericCellValue());
-			break;
-		default:
-			result = cell.getStringCellValue();
-			break;
-		}
-		return result;
-	}
-	
-	
 	/**
 	 * Since sometimes the size is denoted as 2XS and sometimes as XXS, we convert everything to XXS format
 	 * @param size
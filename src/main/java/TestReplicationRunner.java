@@ -0,0 +1,116 @@
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * This class tests that the results of the ReplicationRunner only depend on the seed and the number of
+ * replications. It creates a catalog of random products with TestCatalog and runs the predicted demand with
+ * normal demand:
+ * - on a pool of 1 thread and on a pool of several threads, which must give the same results as a reference
+ *   run of the replications one after the other on one BatchSimulationKernel
+ * - 64 replications with a checkpoint, continued to 160 replications by a new runner that reads the
+ *   checkpoint, which must give the same results as 160 replications at once
+ * - runUntil with a tolerance that is not reached before 160 replications, which must give the same results
+ *   as run with 160 replications
+ */
+public class TestReplicationRunner {
+	private static final long seed = 1234;
+	private static final int n = 160;
+
+	public static void main(String[] args) throws IOException, InterruptedException, ExecutionException {
+		String[] sizes = {"XS", "S", "M", "L", "XL"};
+		int nChunks = 200;
+		ProductStore store = TestCatalog.randomStore(nChunks, sizes, 2022);
+
+		int[] T = {0, 52};
+		ArrayList<int[][][]> policies = new ArrayList<int[][][]>();
+		policies.add(TestCatalog.predictedDemand(T, store));
+
+		HashMap<String, Object> parameters = new HashMap<String, Object>();
+		parameters.put("usePlusXInSales", false);
+		parameters.put("usePoisson", false);
+		parameters.put("printSimulationResults", false);
+		parameters.put("nbrSimulations", 64);
+		parameters.put("checkpointInterval", 0);
+		SimulationConfig config = SimulationConfig.fromParameters(parameters);
+
+		// The reference: the replications one after the other, in blocks that are merged in order
+		BatchSimulationKernel kernel = new BatchSimulationKernel(T, store, policies, config);
+		DemandSampler root = new DemandSampler(seed);
+		double[][] result = new double[1][kernel.getResultSize()];
+		ArrayList<ArrayList<Double>> expectedReplications = new ArrayList<ArrayList<Double>>();
+		SimulationStatistics expected = new SimulationStatistics(T);
+		SimulationStatistics block = new SimulationStatistics(T);
+		for (int k = 0; k < n; k++) {
+			kernel.run(root.split(), result);
+			expectedReplications.add(SimulationKernel.toList(result[0]));
+			block.add(result[0]);
+			if (block.getCount() == ReplicationRunner.REPLICATIONS_PER_BLOCK || k == n - 1) {
+				expected.merge(block);
+				block = new SimulationStatistics(T);
+			}
+		}
+
+		boolean allPassed = true;
+		int parallelism = Math.max(2, Runtime.getRuntime().availableProcessors());
+		for (int threads : new int[] {1, parallelism}) {
+			ReplicationRunner runner = new ReplicationRunner(T, store, policies, seed, config);
+			ArrayList<ArrayList<Double>> replications = new ArrayList<ArrayList<Double>>();
+			long tic = System.currentTimeMillis();
+			// The parallel streams of the runner run on the pool of the task that calls them
+			ForkJoinPool pool = new ForkJoinPool(threads);
+			pool.submit(() -> runner.run(n, replications)).get();
+			pool.shutdown();
+			allPassed &= report(threads + " threads: " + runner.getNbrSimulations() + " replications in "
+					+ (System.currentTimeMillis() - tic) + " ms", same(expected, runner.getStatistics())
+					&& replications.equals(expectedReplications));
+		}
+
+		// A run that is stopped after 64 replications and continued from its checkpoint
+		File directory = Files.createTempDirectory("checkpoints").toFile();
+		ReplicationRunner stopped = new ReplicationRunner(T, store, policies, seed, config);
+		ArrayList<ArrayList<Double>> replications = new ArrayList<ArrayList<Double>>();
+		stopped.setCheckpoint(directory, config, replications);
+		stopped.run(64, replications);
+		ReplicationRunner continued = new ReplicationRunner(T, store, policies, seed, config);
+		replications = new ArrayList<ArrayList<Double>>();
+		boolean resumed = continued.setCheckpoint(directory, config, replications);
+		continued.run(n - continued.getNbrSimulations(), replications);
+		continued.deleteCheckpoint();
+		allPassed &= report("continued from a checkpoint of " + stopped.getNbrSimulations() + " replications to "
+				+ continued.getNbrSimulations() + " replications", resumed && same(expected, continued.getStatistics())
+				&& replications.equals(expectedReplications) && directory.list().length == 0);
+		directory.delete();
+
+		// runUntil with a tolerance that is too small stops at the maximum number of replications
+		ReplicationRunner adaptive = new ReplicationRunner(T, store, policies, seed, config);
+		replications = new ArrayList<ArrayList<Double>>();
+		boolean reached = adaptive.runUntil(64, 1e-9, n, replications);
+		allPassed &= report("runUntil: " + adaptive.getNbrSimulations() + " replications", !reached
+				&& same(expected, adaptive.getStatistics()) && replications.equals(expectedReplications));
+		System.out.println(allPassed ? "All tests passed" : "Some tests failed");
+	}
+
+	/**
+	 * @return whether the statistics have the same count, means, variances and percentiles of every metric
+	 */
+	private static boolean same(SimulationStatistics a, SimulationStatistics b) {
+		boolean same = a.getCount() == b.getCount();
+		for (int m = 0; m < a.getNMetrics(); m++) {
+			same &= Double.compare(a.getMean(m), b.getMean(m)) == 0 && Double.compare(a.getVariance(m), b.getVariance(m)) == 0;
+			for (double q : new double[] {0.05, 0.5, 0.95}) {
+				same &= Double.compare(a.getQuantile(m, q), b.getQuantile(m, q)) == 0;
+			}
+		}
+		return same;
+	}
+
+	private static boolean report(String test, boolean passed) {
+		System.out.println(test + (passed ? "" : " FAILED"));
+		return passed;
+	}
+}
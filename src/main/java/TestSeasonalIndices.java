@@ -0,0 +1,150 @@
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * This class tests that the seasonal indices, level and trend of calculateDistributionProperties are the same
+ * as those of the old version of findSeasonalIndices, which summed the weeks of every moving window with
+ * mean(int[], lb, ub). The old version is kept below as the reference. The products are random, with 2 to 10
+ * years of history and about 20% of the weeks without data, and the results must be exactly the same.
+ */
+public class TestSeasonalIndices {
+	private static final int nSeasons = 52;
+
+	public static void main(String[] args) {
+		int nProducts = 3000;
+		Random r = new Random(2022);
+		int failed = 0;
+		for (int p = 0; p < nProducts; p++) {
+			int nWeeks = nSeasons * (2 + r.nextInt(9));
+			Product product = new Product("Shop", "Group", "Chunk" + p, "M", 0.01, r.nextDouble(), nWeeks);
+			boolean[] dataPresent = new boolean[nWeeks];
+			double level = 1 + 100 * r.nextDouble();
+			double trend = 0.1 * r.nextGaussian();
+			for (int week = 1; week <= nWeeks; week++) {
+				if (r.nextDouble() < 0.2) {
+					continue;
+				}
+				double mean = (level + trend * week) * (1 + 0.5 * Math.sin(week * 2 * Math.PI / nSeasons));
+				product.addSale(week, (int) Math.max(0, Math.round(mean + 3 * r.nextGaussian())));
+				dataPresent[week - 1] = true;
+			}
+			int[] weeklySales = product.getWeeklySales().clone();
+			product.calculateDistributionProperties();
+
+			double[] seasonalIndices = findSeasonalIndices(weeklySales, dataPresent);
+			double[] beta = findLevelAndTrend(deseasonalizeData(weeklySales, seasonalIndices));
+			boolean same = Arrays.equals(seasonalIndices, product.getSeasonalIndices())
+					&& Double.compare(beta[0], product.getLevel()) == 0 && Double.compare(beta[1], product.getTrend()) == 0;
+			if (!same) {
+				failed++;
+				System.out.println("Product " + p + " with " + nWeeks + " weeks: level " + product.getLevel() + " instead of "
+						+ beta[0] + ", trend " + product.getTrend() + " instead of " + beta[1] + " FAILED");
+			}
+		}
+		System.out.println((nProducts - failed) + " of " + nProducts + " products have the same seasonal indices, level and trend");
+		System.out.println(failed == 0 ? "All tests passed" : "Some tests failed");
+	}
+
+	/**
+	 * The old version of Product.findSeasonalIndices, which calculates the mean of every window again
+	 * @param weeklySales
+	 * @param dataPresent
+	 * @return
+	 */
+	private static double[] findSeasonalIndices(int[] weeklySales, boolean[] dataPresent) {
+		int nWeeks = weeklySales.length;
+		double[] seasonalIndices = new double[nSeasons];
+		double[] SI = new double[nWeeks];
+		for (int i = 0; i < nWeeks; i++) {
+			int lb = Math.max(i - (nSeasons/2), 0);
+			int ub = (int) Math.min(i + Math.ceil((double) nSeasons/2), nWeeks);
+			if (ub - lb < nSeasons) {
+				if (lb == 0) {
+					ub = nSeasons;
+				} else {
+					lb = nWeeks - nSeasons;
+				}
+			}
+			double mean = mean(weeklySales, dataPresent, lb, ub);
+			SI[i] = weeklySales[i] / mean;
+		}
+		double sum2 = 0.0;
+		for (int i = 0; i < nSeasons; i++) {
+			int n = 0;
+			double sum = 0.0;
+			for (int j = i; j < nWeeks; j += nSeasons) {
+				sum += SI[j];
+				n++;
+			}
+			seasonalIndices[i] = sum / n;
+			sum2 += seasonalIndices[i];
+		}
+		double c = nSeasons / sum2;
+		for (int i = 0; i < nSeasons; i++) {
+			seasonalIndices[i] *= c;
+		}
+		return seasonalIndices;
+	}
+
+	/**
+	 * The old mean of a partial array, over the weeks with data
+	 * @param arr
+	 * @param dataPresent
+	 * @param lb
+	 * @param ub
+	 * @return
+	 */
+	private static double mean(int[] arr, boolean[] dataPresent, int lb, int ub) {
+		double mean = 0.0;
+		int n = 0;
+		for (int i = lb; i < ub; i++) {
+			if (dataPresent[i]) {
+				mean += arr[i];
+				n++;
+			}
+		}
+		return mean/n;
+	}
+
+	/**
+	 * The deseasonalized data, like Product.deseasonalizeData
+	 * @param weeklySales
+	 * @param seasonalIndices
+	 * @return
+	 */
+	private static double[] deseasonalizeData(int[] weeklySales, double[] seasonalIndices) {
+		int nWeeks = weeklySales.length;
+		double[] result = new double[nWeeks];
+		for (int i = 0; i < nSeasons; i++) {
+			for (int j = i; j < nWeeks; j += nSeasons) {
+				result[j] = weeklySales[j] / seasonalIndices[i];
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * The level and trend of the deseasonalized data with OLS, like Product.findLevelAndTrend
+	 * @param deseasonalizedData
+	 * @return
+	 */
+	private static double[] findLevelAndTrend(double[] deseasonalizedData) {
+		int nWeeks = deseasonalizedData.length;
+		double sumx = 0.0;
+		double sumy = 0.0;
+		for (int i = 0; i < nWeeks; i++) {
+			sumx += i;
+			sumy += deseasonalizedData[i];
+		}
+		double xbar = sumx / nWeeks;
+		double ybar = sumy / nWeeks;
+		double xxbar = 0.0;
+		double xybar = 0.0;
+		for (int i = 0; i < nWeeks; i++) {
+			xxbar += (i - xbar) * (i - xbar);
+			xybar += (i - xbar) * (deseasonalizedData[i] - ybar);
+		}
+		double slope = xybar / xxbar;
+		return new double[] {ybar - slope * xbar, slope};
+	}
+}
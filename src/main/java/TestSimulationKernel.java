@@ -0,0 +1,71 @@
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.HashMap;
+
+/**
+ * This class tests that the SimulationKernel and the BatchSimulationKernel of the ReplicationRunner do not
+ * allocate memory once they are running. It creates a catalog of random products, runs a number of
+ * replications to warm up, and then counts the bytes that this thread allocates during the next
+ * replications. This needs a JVM that can count the allocated bytes of a thread (like HotSpot).
+ */
+public class TestSimulationKernel {
+
+	public static void main(String[] args) {
+		String[] sizes = {"XS", "S", "M", "L", "XL"};
+		int nChunks = 200;
+		ProductStore store = TestCatalog.randomStore(nChunks, sizes, 2022);
+
+		int[] T = {0, 52};
+		int[][][] z = TestCatalog.predictedDemand(T, store);
+		ArrayList<int[][][]> policies = new ArrayList<int[][][]>();
+		policies.add(z);
+
+		com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+		long thread = Thread.currentThread().getId();
+		boolean allPassed = true;
+		boolean[][] models = {{false, false}, {true, false}, {false, true}};
+		String[] names = {"normal", "plus x", "Poisson"};
+		for (int m = 0; m < models.length; m++) {
+			HashMap<String, Object> parameters = new HashMap<String, Object>();
+			parameters.put("usePlusXInSales", models[m][0]);
+			parameters.put("usePoisson", models[m][1]);
+			parameters.put("printSimulationResults", false);
+			SimulationKernel kernel = new SimulationKernel(T, store, z, parameters);
+			double[] results = new double[kernel.getResultSize()];
+			DemandSampler sampler = new DemandSampler(1234);
+
+			// Warm up, so the methods are compiled
+			for (int k = 0; k < 2000; k++) {
+				kernel.run(sampler, results);
+			}
+			int replications = 200;
+			long before = threads.getThreadAllocatedBytes(thread);
+			for (int k = 0; k < replications; k++) {
+				kernel.run(sampler, results);
+			}
+			long allocated = threads.getThreadAllocatedBytes(thread) - before;
+			// Allow for a few bytes of the measurement itself
+			boolean passed = allocated / replications < 8;
+			allPassed &= passed;
+			System.out.println(names[m] + " demand: " + allocated + " bytes allocated in " + replications + " replications"
+					+ (passed ? "" : " FAILED"));
+
+			// The same for the BatchSimulationKernel, which the ReplicationRunner runs
+			BatchSimulationKernel batch = new BatchSimulationKernel(T, store, policies, parameters);
+			double[][] batchResults = new double[1][batch.getResultSize()];
+			for (int k = 0; k < 2000; k++) {
+				batch.run(sampler, batchResults);
+			}
+			before = threads.getThreadAllocatedBytes(thread);
+			for (int k = 0; k < replications; k++) {
+				batch.run(sampler, batchResults);
+			}
+			allocated = threads.getThreadAllocatedBytes(thread) - before;
+			passed = allocated / replications < 8;
+			allPassed &= passed;
+			System.out.println(names[m] + " demand, batch kernel: " + allocated + " bytes allocated in " + replications
+					+ " replications" + (passed ? "" : " FAILED"));
+		}
+		System.out.println(allPassed ? "All tests passed" : "Some tests failed");
+	}
+}
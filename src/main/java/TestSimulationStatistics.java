@@ -0,0 +1,138 @@
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * This class tests the SimulationStatistics. It adds random results to the statistics, in one go and in
+ * blocks that are merged afterwards, and compares the means, variances and percentiles with the values
+ * calculated from all results. It also writes the statistics to a stream and reads them again, as in a
+ * checkpoint of the ReplicationRunner. Last it adds infinite values, like the service level of a week with
+ * negative sales and no demand.
+ */
+public class TestSimulationStatistics {
+
+	public static void main(String[] args) throws IOException {
+		int[] T = {0, 10};
+		int n = 20000;
+		int blockSize = 16;
+		Random r = new Random(2022);
+		SimulationStatistics statistics = new SimulationStatistics(T);
+		SimulationStatistics merged = new SimulationStatistics(T);
+		SimulationStatistics block = new SimulationStatistics(T);
+		int nMetrics = statistics.getNMetrics();
+		double[][] values = new double[nMetrics][n];
+		double[] results = new double[nMetrics];
+		for (int k = 0; k < n; k++) {
+			for (int m = 0; m < nMetrics; m++) {
+				// Metrics with a different scale and skewness, some of them negative
+				results[m] = m % 3 == 0 ? 1e8 * (1 + 0.1 * r.nextGaussian()) : m % 3 == 1 ? Math.exp(r.nextGaussian()) : r.nextGaussian();
+				values[m][k] = results[m];
+			}
+			statistics.add(results);
+			block.add(results);
+			if (block.getCount() == blockSize || k == n - 1) {
+				merged.merge(block);
+				block = new SimulationStatistics(T);
+			}
+		}
+
+		boolean allPassed = true;
+		double maxMeanError = 0.0;
+		double maxVarianceError = 0.0;
+		double maxQuantileError = 0.0;
+		for (int m = 0; m < nMetrics; m++) {
+			double sum = 0.0;
+			for (double x : values[m]) {
+				sum += x;
+			}
+			double mean = sum / n;
+			double squares = 0.0;
+			for (double x : values[m]) {
+				squares += (x - mean) * (x - mean);
+			}
+			double variance = squares / (n - 1);
+			for (SimulationStatistics s : new SimulationStatistics[] {statistics, merged}) {
+				maxMeanError = Math.max(maxMeanError, Math.abs(s.getMean(m) - mean) / Math.sqrt(variance));
+				maxVarianceError = Math.max(maxVarianceError, Math.abs(s.getVariance(m) - variance) / variance);
+			}
+			Arrays.sort(values[m]);
+			allPassed &= merged.getMin(m) == values[m][0] && merged.getMax(m) == values[m][n - 1];
+			for (double q : new double[] {0.01, 0.05, 0.5, 0.95, 0.99}) {
+				double exact = values[m][(int) Math.floor(q * (n - 1))];
+				double estimate = merged.getQuantile(m, q);
+				allPassed &= estimate == statistics.getQuantile(m, q);
+				maxQuantileError = Math.max(maxQuantileError, Math.abs(estimate - exact) / Math.abs(exact));
+			}
+		}
+		allPassed &= report("largest error of the mean " + maxMeanError + " standard deviations", maxMeanError < 1e-9);
+		allPassed &= report("largest relative error of the variance " + maxVarianceError, maxVarianceError < 1e-9);
+		allPassed &= report("largest relative error of the percentiles " + maxQuantileError,
+				maxQuantileError <= SimulationStatistics.QUANTILE_ACCURACY + 1e-12);
+
+		// The confidence interval of the mean of a standard normal metric
+		double[] interval = merged.getConfidenceInterval(2, 0.95);
+		allPassed &= report("95% confidence interval [" + interval[0] + ", " + interval[1] + "]",
+				Math.abs(interval[1] - interval[0] - 2 * 1.959963984540054 / Math.sqrt(n)) < 0.01 / Math.sqrt(n));
+		allPassed &= report("names " + merged.getName(SimulationStatistics.SERVICE_LEVEL) + ", " + merged.getName(merged.capacityOfWeek(9)),
+				merged.getName(merged.capacityOfWeek(9)).equals("Capacity for week 10"));
+
+		// Writing and reading the statistics gives exactly the same statistics
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		merged.write(new DataOutputStream(bytes));
+		SimulationStatistics read = SimulationStatistics.read(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+		boolean same = read.getCount() == merged.getCount();
+		for (int m = 0; m < nMetrics; m++) {
+			same &= read.getMean(m) == merged.getMean(m) && read.getVariance(m) == merged.getVariance(m)
+					&& read.getMin(m) == merged.getMin(m) && read.getQuantile(m, 0.05) == merged.getQuantile(m, 0.05);
+		}
+		allPassed &= report("statistics read from " + bytes.size() + " bytes are the same", same);
+
+		// Infinite values are counted apart in the percentiles, merged blocks give the same statistics
+		SimulationStatistics infinite = new SimulationStatistics(T);
+		SimulationStatistics infiniteMerged = new SimulationStatistics(T);
+		block = new SimulationStatistics(T);
+		for (int k = 0; k < 1000; k++) {
+			Arrays.fill(results, r.nextGaussian());
+			results[SimulationStatistics.SERVICE_LEVEL] = k % 100 == 7 ? Double.NEGATIVE_INFINITY : results[0];
+			results[SimulationStatistics.REVENUE] = k % 100 == 7 ? Double.POSITIVE_INFINITY : results[0];
+			infinite.add(results);
+			block.add(results);
+			if (block.getCount() == blockSize || k == 999) {
+				infiniteMerged.merge(block);
+				block = new SimulationStatistics(T);
+			}
+		}
+		int serviceLevel = SimulationStatistics.SERVICE_LEVEL;
+		int revenue = SimulationStatistics.REVENUE;
+		bytes = new ByteArrayOutputStream();
+		infiniteMerged.write(new DataOutputStream(bytes));
+		read = SimulationStatistics.read(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+		same = true;
+		for (SimulationStatistics s : new SimulationStatistics[] {infiniteMerged, read}) {
+			for (int m : new int[] {revenue, serviceLevel}) {
+				for (double q : new double[] {0.0, 0.005, 0.5, 0.995, 1.0}) {
+					same &= Double.compare(s.getQuantile(m, q), infinite.getQuantile(m, q)) == 0;
+				}
+			}
+		}
+		allPassed &= report("infinite values: mean " + infinite.getMean(serviceLevel) + ", 0.5th percentile "
+				+ infinite.getQuantile(serviceLevel, 0.005) + ", median " + infinite.getQuantile(serviceLevel, 0.5)
+				+ ", 99.5th percentile of the revenue " + infinite.getQuantile(revenue, 0.995),
+				same && infinite.getMean(serviceLevel) == Double.NEGATIVE_INFINITY
+				&& infinite.getMean(revenue) == Double.POSITIVE_INFINITY
+				&& infinite.getQuantile(serviceLevel, 0.005) == Double.NEGATIVE_INFINITY
+				&& Math.abs(infinite.getQuantile(serviceLevel, 0.5)) < 1
+				&& infinite.getQuantile(revenue, 0.995) == Double.POSITIVE_INFINITY
+				&& Math.abs(infinite.getQuantile(revenue, 0.5)) < 1);
+		System.out.println(allPassed ? "All tests passed" : "Some tests failed");
+	}
+
+	private static boolean report(String test, boolean passed) {
+		System.out.println(test + (passed ? "" : " FAILED"));
+		return passed;
+	}
+}
@@ -0,0 +1,124 @@
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+
+/**
+ * This class tests the vectorizedKernel setting of the SimulationKernel. It creates a large catalog of random
+ * products with TestCatalog, checks that the kernel gives exactly the same results with and without the
+ * setting, and measures the time of a replication with the demand drawn during the simulation and with the
+ * demand read from a ScenarioStore. The second shows the speed of the ordering and selling loops themselves,
+ * since drawing the demand takes most of the time of a replication. The BatchSimulationKernel of the
+ * ReplicationRunner does not use the setting; it is checked against the SimulationKernel and timed as well.
+ *
+ * Run it with -XX:UseAVX=2 or -XX:UseAVX=3 to compare AVX2 and AVX-512 on a host that has both, and with
+ * -XX:-UseSuperWord to see the gain of splitting the loops alone, without any vector instructions.
+ */
+public class TestVectorizedKernel {
+
+	public static void main(String[] args) throws IOException {
+		String[] sizes = {"XS", "S", "M", "L", "XL"};
+		int nChunks = args.length > 0 ? Integer.parseInt(args[0]) : 2000;
+		ProductStore store = TestCatalog.randomStore(nChunks, sizes, 2022);
+
+		int[] T = {0, 52};
+		int[][][] z = TestCatalog.predictedDemand(T, store);
+
+		HashMap<String, Object> parameters = new HashMap<String, Object>();
+		parameters.put("usePlusXInSales", false);
+		parameters.put("usePoisson", true);
+		parameters.put("printSimulationResults", false);
+		SimulationKernel scalar = new SimulationKernel(T, store, z, parameters);
+		parameters.put("vectorizedKernel", true);
+		SimulationKernel vectorized = new SimulationKernel(T, store, z, parameters);
+		System.out.println(scalar.getNProducts() + " products, " + (T[1] - T[0]) + " weeks");
+
+		int replications = 32;
+		File directory = Files.createTempDirectory("scenarios").toFile();
+		ScenarioStore scenarios = ScenarioStore.openOrCreate(directory, T, store, 1234, replications, parameters);
+
+		boolean allPassed = true;
+		double[] expected = new double[scalar.getResultSize()];
+		double[] results = new double[vectorized.getResultSize()];
+		for (int k = 0; k < replications; k++) {
+			scalar.run(scenarios, k, expected);
+			vectorized.run(scenarios, k, results);
+			allPassed &= Arrays.equals(expected, results);
+		}
+		scalar.run(new DemandSampler(1), expected);
+		vectorized.run(new DemandSampler(1), results);
+		allPassed &= Arrays.equals(expected, results);
+		System.out.println("The results of both kernels are " + (allPassed ? "the same" : "different FAILED"));
+
+		// The ReplicationRunner runs a BatchSimulationKernel, which ignores the setting, its time is shown for reference
+		ArrayList<int[][][]> policies = new ArrayList<int[][][]>();
+		policies.add(z);
+		BatchSimulationKernel batch = new BatchSimulationKernel(T, store, policies, parameters);
+		double[][] batchResults = new double[1][batch.getResultSize()];
+		boolean batchPassed = true;
+		for (int k = 0; k < replications; k++) {
+			scalar.run(scenarios, k, expected);
+			batch.run(scenarios, k, batchResults);
+			batchPassed &= Arrays.equals(expected, batchResults[0]);
+		}
+		scalar.run(new DemandSampler(1), expected);
+		batch.run(new DemandSampler(1), batchResults);
+		batchPassed &= Arrays.equals(expected, batchResults[0]);
+		allPassed &= batchPassed;
+		System.out.println("The results of the batch kernel are " + (batchPassed ? "the same" : "different FAILED"));
+
+		// Warm up, so the methods are compiled
+		for (int round = 0; round < 3; round++) {
+			time(scalar, scenarios, replications, results);
+			time(vectorized, scenarios, replications, results);
+			time(batch, scenarios, replications, batchResults);
+		}
+		double scalarTime = time(scalar, scenarios, replications, results);
+		double vectorizedTime = time(vectorized, scenarios, replications, results);
+		System.out.println("Demand of the scenarios: scalar " + scalarTime + " ms, vectorized " + vectorizedTime
+				+ " ms per replication, " + scalarTime / vectorizedTime + " times faster");
+		System.out.println("Demand of the scenarios, batch kernel: " + time(batch, scenarios, replications, batchResults)
+				+ " ms per replication");
+		scalarTime = time(scalar, null, replications / 4, results);
+		vectorizedTime = time(vectorized, null, replications / 4, results);
+		System.out.println("Drawing the demand: scalar " + scalarTime + " ms, vectorized " + vectorizedTime
+				+ " ms per replication, " + scalarTime / vectorizedTime + " times faster");
+
+		for (File file : directory.listFiles()) {
+			file.delete();
+		}
+		directory.delete();
+		System.out.println(allPassed ? "All tests passed" : "Some tests failed");
+	}
+
+	/**
+	 * @return the average time of a replication in milliseconds, with the demand of the scenarios or, if
+	 * scenarios is null, drawn during the simulation
+	 */
+	private static double time(SimulationKernel kernel, ScenarioStore scenarios, int replications, double[] results) {
+		DemandSampler sampler = new DemandSampler(1234);
+		long tic = System.nanoTime();
+		for (int k = 0; k < replications; k++) {
+			if (scenarios != null) {
+				kernel.run(scenarios, k, results);
+			} else {
+				kernel.run(sampler, results);
+			}
+		}
+		return (System.nanoTime() - tic) / 1e6 / replications;
+	}
+
+	/**
+	 * @return the average time of a replication of the batch kernel in milliseconds, with the demand of the
+	 * scenarios
+	 */
+	private static double time(BatchSimulationKernel kernel, ScenarioStore scenarios, int replications, double[][] results) {
+		long tic = System.nanoTime();
+		for (int k = 0; k < replications; k++) {
+			kernel.run(scenarios, k, results);
+		}
+		return (System.nanoTime() - tic) / 1e6 / replications;
+	}
+}